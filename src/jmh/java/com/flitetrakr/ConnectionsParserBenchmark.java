@@ -0,0 +1,92 @@
+package com.flitetrakr;
+
+import com.flitetrakr.model.Airport;
+import com.flitetrakr.model.ConnectionGraph;
+import com.flitetrakr.model.FlightSegment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks parsing a connections line with {@link ConnectionsParser}, against splitting the line and
+ * matching every connection with a regular expression. The line has about 13 bytes per connection,
+ * so throughput in MB/s is {@code 13 * connections / time per operation}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionsParserBenchmark {
+
+    /**
+     * Number of connections in the line.
+     */
+    @Param({"10000", "100000"})
+    public int connections;
+
+    private String line;
+
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < connections; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(code(random)).append('-').append(code(random)).append('-').append(10 + random.nextInt(990));
+        }
+        line = builder.toString();
+        final byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        // a direct buffer, as a mapped file is
+        buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+    }
+
+    private static String code(final Random random) {
+        // 1000 different airports
+        final int airport = random.nextInt(1000);
+        return new String(new char[] {'A', (char) ('A' + airport / 26 % 26), (char) ('A' + airport % 26)});
+    }
+
+    @Benchmark
+    public ConnectionGraph parse() {
+        final ConnectionGraph graph = new ConnectionGraph();
+        ConnectionsParser.parse(graph, buffer, 0, buffer.limit());
+        return graph;
+    }
+
+    @Benchmark
+    public ConnectionGraph splitAndMatch() {
+        final ConnectionGraph graph = new ConnectionGraph();
+        final Pattern pattern = Pattern.compile("([A-Z]{3})-([A-Z]{3})-(\\d+)");
+        for (final String connection : line.split(",")) {
+            final Matcher m = pattern.matcher(connection.trim());
+            if (m.find()) {
+                graph.addEdge(new FlightSegment(Airport.valueOf(m.group(1)), Airport.valueOf(m.group(2)),
+                        Integer.valueOf(m.group(3))));
+            }
+        }
+        return graph;
+    }
+}
@@ -0,0 +1,87 @@
+package com.flitetrakr.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the depth first search of {@link ConnectionGraph} on a random multigraph.
+ * Since the number of airports is small, the number of segments is what makes the graph grow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionGraphBenchmark {
+
+    /**
+     * Number of flight segments in the graph.
+     */
+    @Param({"64", "512", "4096"})
+    public int segments;
+
+    private ConnectionGraph graph;
+
+    private ConnectionGraph precomputedGraph;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final Airport[] airports = Airport.values();
+        graph = new ConnectionGraph();
+        for (int i = 0; i < segments; i++) {
+            final Airport src = airports[random.nextInt(airports.length)];
+            Airport dst = airports[random.nextInt(airports.length)];
+            while (dst == src) {
+                dst = airports[random.nextInt(airports.length)];
+            }
+            graph.addEdge(new FlightSegment(src, dst, 10 + random.nextInt(990)));
+        }
+        final ConnectionGraph copy = new ConnectionGraph();
+        for (final FlightSegment segment : graph.getEdges()) {
+            copy.addEdge(segment);
+        }
+        copy.precomputeCheapestTrips();
+        precomputedGraph = copy.freeze();
+    }
+
+    @Benchmark
+    public List<Trip> allTripsWithOneStop() {
+        return graph.getAllTrips(Airport.NUE, Airport.LHR, true, (Trip trip) -> trip.getStopsNumber() <= 1);
+    }
+
+    @Benchmark
+    public Optional<Trip> cheapestTrip() {
+        return graph.getCheapestTrip(Airport.NUE, Airport.LHR);
+    }
+
+    @Benchmark
+    public Optional<Trip> cheapestRoundTrip() {
+        return graph.getCheapestTrip(Airport.NUE, Airport.NUE);
+    }
+
+    @Benchmark
+    public Optional<Trip> cheapestTripPrecomputed() {
+        return precomputedGraph.getCheapestTrip(Airport.NUE, Airport.LHR);
+    }
+
+    @Benchmark
+    public void precomputeCheapestTrips() {
+        graph.precomputeCheapestTrips();
+    }
+}
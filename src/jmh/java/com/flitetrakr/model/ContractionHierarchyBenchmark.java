@@ -0,0 +1,111 @@
+package com.flitetrakr.model;
+
+import com.flitetrakr.model.GraphGenerator.PriceDistribution;
+import com.flitetrakr.model.GraphGenerator.Topology;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the preprocessing time of {@link ConnectionGraph#buildContractionHierarchy()} against the query time
+ * of cheapest trips with the hierarchy, from the source only and from both ends, on graphs made by
+ * {@link GraphGenerator}. Queries go between {@link #QUERIES} pairs of random airports, and their time is per query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContractionHierarchyBenchmark {
+
+    private static final int QUERIES = 100;
+
+    /**
+     * Number of airports in the graph.
+     */
+    @Param({"1000", "10000"})
+    public int airports;
+
+    /**
+     * How airports are connected.
+     */
+    @Param({"RANDOM", "SCALE_FREE", "HUB_AND_SPOKE"})
+    public Topology topology;
+
+    private ConnectionGraph graph;
+
+    private ConnectionGraph bidirectionalGraph;
+
+    private ConnectionGraph contractedGraph;
+
+    private Airport[] sources;
+
+    private Airport[] destinations;
+
+    @Setup
+    public void setUp() {
+        final ConnectionGraph generated = new GraphGenerator(airports, 4, PriceDistribution.UNIFORM, topology, 42).generate();
+        // frozen copies sharing the same index
+        graph = generated.freeze();
+        bidirectionalGraph = generated.freeze();
+        bidirectionalGraph.setBidirectionalSearch(true);
+        contractedGraph = generated.freeze();
+        contractedGraph.buildContractionHierarchy();
+        final Random random = new Random(42);
+        sources = new Airport[QUERIES];
+        destinations = new Airport[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            sources[i] = GraphGenerator.airport(random.nextInt(airports));
+            destinations[i] = GraphGenerator.airport(random.nextInt(airports));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public ConnectionGraph buildHierarchy() {
+        contractedGraph.buildContractionHierarchy();
+        return contractedGraph;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public long cheapestTrips() {
+        return sumOfPrices(graph);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public long cheapestTripsBidirectional() {
+        return sumOfPrices(bidirectionalGraph);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public long cheapestTripsHierarchy() {
+        return sumOfPrices(contractedGraph);
+    }
+
+    private long sumOfPrices(final ConnectionGraph searched) {
+        long sum = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            sum += searched.getCheapestTrip(sources[i], destinations[i]).map(Trip::getPrice).orElse(0);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,148 @@
+package com.flitetrakr.model;
+
+import com.flitetrakr.model.GraphGenerator.PriceDistribution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the searches of {@link ConnectionGraph}, and building the graph, on graphs made by
+ * {@link GraphGenerator}. Searches go between the ends of a random trip of three segments, and
+ * are bounded by twice its price. The {@link #CHEAPEST_COUNT} cheapest trips between them are searched
+ * in order of price, and by sorting the trips below that price. Cheapest trips are also searched between
+ * two random airports, which are usually far apart, from the source only and from both ends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratedGraphBenchmark {
+
+    private static final int CHEAPEST_COUNT = 10;
+
+    /**
+     * Number of airports in the graph.
+     */
+    @Param({"100", "1000", "10000"})
+    public int airports;
+
+    /**
+     * Average number of segments leaving an airport.
+     */
+    @Param({"2", "8"})
+    public double outDegree;
+
+    /**
+     * Distribution of the prices of segments.
+     */
+    @Param({"UNIFORM", "EXPONENTIAL"})
+    public PriceDistribution prices;
+
+    private List<FlightSegment> segments;
+
+    private ConnectionGraph graph;
+
+    private Airport source;
+
+    private Airport destination;
+
+    private int priceLimit;
+
+    private ConnectionGraph bidirectionalGraph;
+
+    private Airport farSource;
+
+    private Airport farDestination;
+
+    @Setup
+    public void setUp() {
+        final GraphGenerator generator = new GraphGenerator(airports, outDegree, prices, 42);
+        segments = generator.generateSegments();
+        graph = generator.generate();
+        final Trip trip = GraphGenerator.randomTrip(graph, 3, new Random(42));
+        source = trip.getSource().get();
+        destination = trip.getDestination().get();
+        priceLimit = 2 * trip.getPrice();
+        bidirectionalGraph = generator.generate();
+        bidirectionalGraph.setBidirectionalSearch(true);
+        final Random random = new Random(42);
+        farSource = GraphGenerator.airport(random.nextInt(airports));
+        farDestination = GraphGenerator.airport(random.nextInt(airports));
+    }
+
+    @Benchmark
+    public ConnectionGraph buildGraph() {
+        final ConnectionGraph built = new ConnectionGraph();
+        for (final FlightSegment segment : segments) {
+            built.addEdge(segment);
+        }
+        return built;
+    }
+
+    @Benchmark
+    public List<Trip> allTripsBelowPrice() {
+        return graph.getAllTrips(source, destination, true, priceLimit, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<Trip> allTripsBelowPriceWithValidator() {
+        return graph.getAllTrips(source, destination, true, (Trip trip) -> trip.getPrice() >= priceLimit);
+    }
+
+    @Benchmark
+    public List<Trip> cheapestTripsBySorting() {
+        final List<Trip> trips = graph.getAllTrips(source, destination, true, priceLimit, Integer.MAX_VALUE);
+        trips.sort((first, second) -> Integer.compare(first.getPrice(), second.getPrice()));
+        return trips.subList(0, Math.min(CHEAPEST_COUNT, trips.size()));
+    }
+
+    @Benchmark
+    public List<Trip> cheapestTrips() {
+        return graph.getCheapestTrips(source, destination, CHEAPEST_COUNT, true);
+    }
+
+    @Benchmark
+    public List<Trip> cheapestTripsWithoutLoops() {
+        return graph.getCheapestTrips(source, destination, CHEAPEST_COUNT, false);
+    }
+
+    @Benchmark
+    public long countTripsWithThreeStops() {
+        return graph.countTrips(source, destination, 1, 4);
+    }
+
+    @Benchmark
+    public Optional<Trip> cheapestTrip() {
+        return graph.getCheapestTrip(source, destination);
+    }
+
+    @Benchmark
+    public Optional<Trip> cheapestTripBidirectional() {
+        return bidirectionalGraph.getCheapestTrip(source, destination);
+    }
+
+    @Benchmark
+    public Optional<Trip> cheapestTripFar() {
+        return graph.getCheapestTrip(farSource, farDestination);
+    }
+
+    @Benchmark
+    public Optional<Trip> cheapestTripFarBidirectional() {
+        return bidirectionalGraph.getCheapestTrip(farSource, farDestination);
+    }
+}
@@ -0,0 +1,79 @@
+package com.flitetrakr.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the operations of {@link Trip} that searches and questions use on every trip they find,
+ * on a trip of a graph made by {@link GraphGenerator}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TripBenchmark {
+
+    /**
+     * Number of segments of the trip.
+     */
+    @Param({"4", "16"})
+    public int segments;
+
+    private Trip trip;
+
+    private FlightSegment next;
+
+    @Setup
+    public void setUp() {
+        final ConnectionGraph graph = new GraphGenerator(1000, 4, GraphGenerator.PriceDistribution.UNIFORM, 42).generate();
+        final Random random = new Random(42);
+        Trip longest = GraphGenerator.randomTrip(graph, segments + 1, random);
+        while (longest.getSegments().size() < segments + 1) {
+            longest = GraphGenerator.randomTrip(graph, segments + 1, random);
+        }
+        // the last segment is added and removed
+        next = longest.removeLastSegment().get();
+        trip = longest;
+    }
+
+    @Benchmark
+    public Optional<FlightSegment> addAndRemoveSegment() {
+        trip.addSegment(next);
+        return trip.removeLastSegment();
+    }
+
+    @Benchmark
+    public boolean containsLoops() {
+        return trip.containsLoops();
+    }
+
+    @Benchmark
+    public int price() {
+        return trip.getPrice();
+    }
+
+    @Benchmark
+    public String tripToString() {
+        return trip.toString();
+    }
+
+    @Benchmark
+    public Trip cloneTrip() {
+        return trip.clone();
+    }
+}
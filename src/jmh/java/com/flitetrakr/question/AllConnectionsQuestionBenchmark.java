@@ -0,0 +1,81 @@
+package com.flitetrakr.question;
+
+import com.flitetrakr.model.Airport;
+import com.flitetrakr.model.ConnectionGraph;
+import com.flitetrakr.model.FlightSegment;
+import com.flitetrakr.model.Trip;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link AllConnectionsQuestion} on a random multigraph. Run with {@code -prof gc}
+ * to see how much is allocated per question.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllConnectionsQuestionBenchmark {
+
+    /**
+     * Number of flight segments in the graph.
+     */
+    @Param({"32", "64"})
+    public int segments;
+
+    /**
+     * Upper bound of the price of the connections.
+     */
+    @Param({"1500"})
+    public int price;
+
+    /**
+     * Number of segments up to which searches are split in parallel tasks, 0 for a sequential search.
+     */
+    @Param({"0", "2"})
+    public int splitDepth;
+
+    private ConnectionGraph graph;
+
+    private Question question;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final Airport[] airports = Airport.values();
+        graph = new ConnectionGraph();
+        for (int i = 0; i < segments; i++) {
+            final Airport src = airports[random.nextInt(airports.length)];
+            Airport dst = airports[random.nextInt(airports.length)];
+            while (dst == src) {
+                dst = airports[random.nextInt(airports.length)];
+            }
+            graph.addEdge(new FlightSegment(src, dst, 10 + random.nextInt(990)));
+        }
+        if (splitDepth > 0) {
+            graph.setParallelSearch(ForkJoinPool.commonPool(), splitDepth);
+        }
+        question = QuestionFactory.getQuestion(String.format("#1: Find all connections from NUE to LHR below %d Euros!", price)).get();
+    }
+
+    @Benchmark
+    public List<Trip> allConnections() {
+        return question.processQuestion(graph);
+    }
+}
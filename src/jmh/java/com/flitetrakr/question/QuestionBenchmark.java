@@ -0,0 +1,125 @@
+package com.flitetrakr.question;
+
+import com.flitetrakr.model.Airport;
+import com.flitetrakr.model.ConnectionGraph;
+import com.flitetrakr.model.GraphGenerator;
+import com.flitetrakr.model.GraphGenerator.PriceDistribution;
+import com.flitetrakr.model.Trip;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks every type of {@link Question} on a graph made by {@link GraphGenerator}, from parsing the question
+ * to printing its answer. The airports of the questions are those of a random trip of {@code stops + 1} segments,
+ * so that every question has an answer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuestionBenchmark {
+
+    /**
+     * Number of airports in the graph.
+     */
+    @Param({"100", "1000"})
+    public int airports;
+
+    /**
+     * Average number of segments leaving an airport.
+     */
+    @Param({"4"})
+    public double outDegree;
+
+    /**
+     * Distribution of the prices of segments.
+     */
+    @Param({"UNIFORM", "EXPONENTIAL"})
+    public PriceDistribution prices;
+
+    /**
+     * Number of stops of the trip the questions are about.
+     */
+    @Param({"2"})
+    public int stops;
+
+    private ConnectionGraph graph;
+
+    private String priceQuestion;
+
+    private String cheapestQuestion;
+
+    private String cheapestConnectionsQuestion;
+
+    private String allConnectionsQuestion;
+
+    private String differentConnectionsQuestion;
+
+    private final ByteArrayOutputStream answer = new ByteArrayOutputStream();
+
+    private final PrintStream out = new PrintStream(answer);
+
+    @Setup
+    public void setUp() {
+        graph = new GraphGenerator(airports, outDegree, prices, 42).generate();
+        final Trip trip = GraphGenerator.randomTrip(graph, stops + 1, new Random(42));
+        final Airport source = trip.getSource().get();
+        final Airport destination = trip.getDestination().get();
+        priceQuestion = String.format("#1: What is the price of the connection %s?",
+                trip.toString().substring(0, trip.toString().lastIndexOf('-')));
+        cheapestQuestion = String.format("#2: What is the cheapest connection from %s to %s?", source, destination);
+        cheapestConnectionsQuestion = String.format("#5: What are the 10 cheapest connections from %s to %s?", source, destination);
+        // the trip and the cheaper ones, and a few more expensive ones
+        allConnectionsQuestion = String.format("#3: Find all connections from %s to %s below %d Euros!",
+                source, destination, trip.getPrice() + GraphGenerator.MIN_PRICE);
+        differentConnectionsQuestion = String.format("#4: How many different connections with maximum %d stops exist between %s and %s?",
+                stops + 1, source, destination);
+    }
+
+    private String answer(final String line) {
+        answer.reset();
+        QuestionFactory.getQuestion(line).get().printAnswer(graph, out);
+        return answer.toString();
+    }
+
+    @Benchmark
+    public String connectionPrice() {
+        return answer(priceQuestion);
+    }
+
+    @Benchmark
+    public String cheapest() {
+        return answer(cheapestQuestion);
+    }
+
+    @Benchmark
+    public String cheapestConnections() {
+        return answer(cheapestConnectionsQuestion);
+    }
+
+    @Benchmark
+    public String allConnections() {
+        return answer(allConnectionsQuestion);
+    }
+
+    @Benchmark
+    public String differentConnections() {
+        return answer(differentConnectionsQuestion);
+    }
+}
@@ -0,0 +1,55 @@
+package com.flitetrakr.question;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link QuestionFactory#getQuestion(String)} against matching every pattern in order,
+ * in lines per second, with the same number of lines of every type of question.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuestionFactoryBenchmark {
+
+    private static final String[] LINES = {
+            "#1: What is the price of the connection NUE-FRA-LHR?",
+            "#2: What is the price of the connection NUE-AMS-PDX-FRA-HKG-LHR?",
+            "#3: What is the cheapest connection from AMS to HKG?",
+            "#4: What is the cheapest connection from HKG to HKG?",
+            "#5: How many different connections with maximum 3 stops exist between NUE and LHR?",
+            "#6: How many different connections with exactly 2 stops exist between DXB and DXB?",
+            "#7: Find all connections from AMS to LHR below 2500 Euros!",
+            "#8: Find all connections from NUE to LHR below 170 Euros!",
+    };
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void getQuestion(final Blackhole blackhole) {
+        for (final String line : LINES) {
+            blackhole.consume(QuestionFactory.getQuestion(line));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void getQuestionWithPatterns(final Blackhole blackhole) {
+        for (final String line : LINES) {
+            blackhole.consume(QuestionFactory.getQuestionWithPatterns(line, System.out));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.flitetrakr;
+
+import com.flitetrakr.model.Airport;
+import com.flitetrakr.model.ConnectionGraph;
+import com.flitetrakr.model.FlightSegment;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the connections of a {@code Connections:} line, of the form {@code NUE-FRA-43, NUE-AMS-67, FRA-AMS-17},
+ * directly from the bytes of the input file, so that lists of millions of connections are read in a single
+ * pass without creating strings or matchers. Connections that do not have exactly this form (e.g. they are
+ * surrounded by other characters, or their price does not fit in an int) are parsed with a regular expression,
+ * which reports the errors.
+ */
+/* package */ final class ConnectionsParser {
+    /**
+     * Pattern of a connection, used when a connection does not have the expected form.
+     */
+    private static final Pattern connectionPattern = Pattern.compile("([A-Z]{3})-([A-Z]{3})-(\\d+)");
+
+    /**
+     * Length of the shortest connection, e.g. {@code NUE-FRA-4}.
+     */
+    private static final int MIN_CONNECTION_LENGTH = 9;
+
+    private ConnectionsParser() {
+    }
+
+    /**
+     * Adds the connections found between two positions of a buffer to the graph.
+     * Connections are separated by commas and optional whitespace, and errors are printed on the console.
+     * @param graph the graph connections are added to
+     * @param input a buffer with the connections, in ASCII or UTF-8
+     * @param start position of the first character of the connections
+     * @param end position after the last character of the connections
+     * @return the number of connections rejected because they are not valid
+     */
+    static int parse(@NotNull final ConnectionGraph graph, @NotNull final ByteBuffer input, final int start, final int end) {
+        return parse(graph, input, start, end, System.out);
+    }
+
+    /**
+     * Adds the connections found between two positions of a buffer to the graph, printing errors on a stream.
+     * @param errors stream the connections that are not valid are reported on
+     * @return the number of connections rejected because they are not valid
+     * @see #parse(ConnectionGraph, ByteBuffer, int, int)
+     */
+    static int parse(@NotNull final ConnectionGraph graph,
+                     @NotNull final ByteBuffer input,
+                     final int start,
+                     final int end,
+                     @NotNull final PrintStream errors) {
+        int rejected = 0;
+        int connectionStart = start;
+        while (true) {
+            int connectionEnd = connectionStart;
+            while (connectionEnd < end && input.get(connectionEnd) != ',') {
+                connectionEnd++;
+            }
+            if (connectionEnd == connectionStart && connectionStart > start && onlyCommas(input, connectionStart, end)) {
+                return rejected; // empty connections at the end are ignored, as String.split does
+            }
+            if (!parseConnection(graph, input, connectionStart, connectionEnd)
+                    && !parseWithPattern(graph, input, start, end, connectionStart, connectionEnd, errors)) {
+                rejected++;
+            }
+            if (connectionEnd == end) {
+                return rejected;
+            }
+            connectionStart = connectionEnd + 1;
+        }
+    }
+
+    /**
+     * Parses a connection that has exactly the form {@code XXX-YYY-99}, surrounded by optional whitespace.
+     * @return false if the connection does not have this form, and nothing was added to the graph
+     */
+    private static boolean parseConnection(@NotNull final ConnectionGraph graph,
+                                           @NotNull final ByteBuffer input,
+                                           final int start,
+                                           final int end) {
+        int first = start;
+        int last = end;
+        // trim as String.trim does
+        while (first < last && (input.get(first) & 0xff) <= ' ') {
+            first++;
+        }
+        while (last > first && (input.get(last - 1) & 0xff) <= ' ') {
+            last--;
+        }
+        if (last - first < MIN_CONNECTION_LENGTH || input.get(first + 3) != '-' || input.get(first + 7) != '-') {
+            return false;
+        }
+        long price = 0;
+        for (int i = first + 8; i < last; i++) {
+            final int digit = input.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            price = price * 10 + digit;
+            if (price > Integer.MAX_VALUE) {
+                return false;
+            }
+        }
+        final Airport source = airport(input, first);
+        final Airport destination = airport(input, first + 4);
+        if (source == null || destination == null) {
+            return false;
+        }
+        graph.addEdge(new FlightSegment(source, destination, (int) price));
+        return true;
+    }
+
+    /**
+     * @return the airport whose code starts at {@code position}, or null if there is no airport code there
+     */
+    private static Airport airport(@NotNull final ByteBuffer input, final int position) {
+        final char first = (char) input.get(position);
+        final char second = (char) input.get(position + 1);
+        final char third = (char) input.get(position + 2);
+        if (first < 'A' || first > 'Z' || second < 'A' || second > 'Z' || third < 'A' || third > 'Z') {
+            return null;
+        }
+        return Airport.valueOf(first, second, third);
+    }
+
+    /**
+     * Parses a connection with {@link #connectionPattern}, printing an error if it is not valid.
+     * @return false if the connection is not valid, and nothing was added to the graph
+     */
+    private static boolean parseWithPattern(@NotNull final ConnectionGraph graph,
+                                         @NotNull final ByteBuffer input,
+                                         final int lineStart,
+                                         final int lineEnd,
+                                         final int start,
+                                         final int end,
+                                         @NotNull final PrintStream errors) {
+        final Matcher m = connectionPattern.matcher(decode(input, start, end).trim());
+        if (m.find()) {
+            try {
+                final Airport src = Airport.valueOf(m.group(1));
+                final Airport dst = Airport.valueOf(m.group(2));
+                // addEdge adds both nodes and edges.
+                graph.addEdge(new FlightSegment(src, dst, Integer.valueOf(m.group(3))));
+                return true;
+            } catch (IllegalArgumentException ex) {
+                errors.println("Wrong input " + m.group(0) + ": " + ex.getMessage());
+            }
+        } else {
+            errors.println(String.format("String %s should be a string separated concatenation of connections as follow XXX-YYY-99",
+                    decode(input, lineStart, lineEnd).trim()));
+        }
+        return false;
+    }
+
+    private static boolean onlyCommas(@NotNull final ByteBuffer input, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (input.get(i) != ',') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the UTF-8 characters between two positions of a buffer.
+     */
+    @NotNull
+    static String decode(@NotNull final ByteBuffer input, final int start, final int end) {
+        final byte[] bytes = new byte[end - start];
+        final ByteBuffer slice = input.duplicate();
+        slice.position(start);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,255 @@
+package com.flitetrakr;
+
+import com.flitetrakr.metrics.LatencyHistogram;
+import com.flitetrakr.model.ConnectionGraph;
+import com.flitetrakr.model.FlightSegment;
+import com.flitetrakr.model.GraphGenerator;
+import com.flitetrakr.model.GraphGenerator.PriceDistribution;
+import com.flitetrakr.model.GraphGenerator.Topology;
+import com.flitetrakr.question.QuestionWorkload;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates an input file with a synthetic network and questions, and runs it through {@link Main}
+ * several times, reporting for every run its throughput, the latency percentiles of the answers and the
+ * peak heap usage. Answers are not printed.
+ * <p>
+ * Options of the generated input go first, followed by options of {@link Main}, e.g.
+ * {@code --airports=5000 --topology=scale-free --questions=100000 --cache --threads=4}.
+ */
+public final class LoadTest {
+    private int airports = 1000;
+    private double outDegree = 4;
+    private Topology topology = Topology.RANDOM;
+    private PriceDistribution prices = PriceDistribution.UNIFORM;
+    private int questions = 10000;
+    private final Map<QuestionWorkload.Type, Integer> mix = new EnumMap<>(QuestionWorkload.Type.class);
+    private long seed = 42;
+    private int runs = 3;
+    private File inputFile;
+    private boolean generateOnly = false;
+    private final List<String> mainArgs = new ArrayList<>();
+
+    private LoadTest() {
+        // answers are not printed, and neither are the lines of the input
+        mainArgs.add("--quiet");
+        mix.put(QuestionWorkload.Type.PRICE, 4);
+        mix.put(QuestionWorkload.Type.CHEAPEST, 3);
+        mix.put(QuestionWorkload.Type.ALL_CONNECTIONS, 1);
+        mix.put(QuestionWorkload.Type.DIFFERENT_CONNECTIONS, 2);
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final LoadTest loadTest;
+        final Options options;
+        try {
+            loadTest = parse(args);
+            if (loadTest.inputFile == null) {
+                loadTest.inputFile = File.createTempFile("flitetrakr", ".txt");
+                loadTest.inputFile.deleteOnExit();
+            }
+            loadTest.mainArgs.add(loadTest.inputFile.getPath());
+            options = Options.parse(loadTest.mainArgs.toArray(new String[0]));
+            if (options.servePort > 0) {
+                throw new IllegalArgumentException("Questions cannot be served during a load test");
+            }
+        } catch (final IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+            printUsage();
+            return;
+        }
+        loadTest.generate();
+        if (!loadTest.generateOnly) {
+            for (int run = 1; run <= loadTest.runs; run++) {
+                loadTest.run(run, options);
+            }
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java -cp <jar> com.flitetrakr.LoadTest [load test options] [flitetrakr options]");
+        System.out.println("Load test options:");
+        System.out.println("   --airports=<n>         number of airports (default 1000)");
+        System.out.println("   --out-degree=<d>       average number of connections leaving an airport (default 4)");
+        System.out.println("   --topology=<t>         random (default), scale-free or hub-and-spoke");
+        System.out.println("   --prices=<p>           uniform (default) or exponential");
+        System.out.println("   --questions=<n>        number of questions (default 10000)");
+        System.out.println("   --mix=<type>=<weight>,... weights of price, cheapest, all-connections, different-connections and cheapest-connections questions (default 4,3,1,2,0)");
+        System.out.println("   --seed=<n>             seed of the generated network and questions (default 42)");
+        System.out.println("   --runs=<n>             number of runs (default 3), the first ones warm the JVM up");
+        System.out.println("   --input=<file>         keep the generated input in <file>");
+        System.out.println("   --generate-only        only generate the input, with --input");
+        System.out.println("Other options are passed to flitetrakr, see its usage.");
+    }
+
+    @NotNull
+    private static LoadTest parse(@NotNull final String[] args) {
+        final LoadTest loadTest = new LoadTest();
+        for (final String arg : args) {
+            final int equals = arg.indexOf('=');
+            final String name = equals < 0 ? arg : arg.substring(0, equals);
+            final String value = equals < 0 ? "" : arg.substring(equals + 1);
+            switch (name) {
+                case "--airports":
+                    loadTest.airports = parseNumber(name, value);
+                    break;
+                case "--out-degree":
+                    try {
+                        loadTest.outDegree = Double.parseDouble(value);
+                    } catch (final NumberFormatException ex) {
+                        throw new IllegalArgumentException(String.format("Option %s expects a number, not %s", name, value));
+                    }
+                    break;
+                case "--topology":
+                    loadTest.topology = parseEnum(Topology.class, name, value);
+                    break;
+                case "--prices":
+                    loadTest.prices = parseEnum(PriceDistribution.class, name, value);
+                    break;
+                case "--questions":
+                    loadTest.questions = parseNumber(name, value);
+                    break;
+                case "--mix":
+                    loadTest.mix.clear();
+                    for (final String weight : value.split(",")) {
+                        final String[] parts = weight.split("=");
+                        if (parts.length != 2) {
+                            throw new IllegalArgumentException(String.format("Option %s expects <type>=<weight>, not %s", name, weight));
+                        }
+                        loadTest.mix.put(parseEnum(QuestionWorkload.Type.class, name, parts[0]), parseNumber(name, parts[1]));
+                    }
+                    break;
+                case "--seed":
+                    loadTest.seed = parseNumber(name, value);
+                    break;
+                case "--runs":
+                    loadTest.runs = parseNumber(name, value);
+                    break;
+                case "--input":
+                    loadTest.inputFile = new File(value);
+                    break;
+                case "--generate-only":
+                    loadTest.generateOnly = true;
+                    break;
+                default:
+                    loadTest.mainArgs.add(arg);
+            }
+        }
+        if (loadTest.generateOnly && loadTest.inputFile == null) {
+            throw new IllegalArgumentException("Option --generate-only needs --input");
+        }
+        return loadTest;
+    }
+
+    private static int parseNumber(@NotNull final String name, @NotNull final String value) {
+        try {
+            final int result = Integer.parseInt(value);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (final NumberFormatException ex) {
+            // reported below
+        }
+        throw new IllegalArgumentException(String.format("Option %s expects a number, not %s", name, value));
+    }
+
+    @NotNull
+    private static <E extends Enum<E>> E parseEnum(@NotNull final Class<E> type, @NotNull final String name, @NotNull final String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase().replace('-', '_'));
+        } catch (final IllegalArgumentException ex) {
+            throw new IllegalArgumentException(String.format("Option %s does not accept %s", name, value));
+        }
+    }
+
+    /**
+     * Writes the input file: a connections line with the generated network, then the questions.
+     */
+    private void generate() throws IOException {
+        final long start = System.nanoTime();
+        final GraphGenerator generator = new GraphGenerator(airports, outDegree, prices, topology, seed);
+        final List<FlightSegment> segments = generator.generateSegments();
+        final ConnectionGraph graph = new ConnectionGraph();
+        for (final FlightSegment segment : segments) {
+            graph.addEdge(segment);
+        }
+        final QuestionWorkload workload = new QuestionWorkload(graph, mix, seed);
+        try (Writer writer = Files.newBufferedWriter(inputFile.toPath(), StandardCharsets.US_ASCII)) {
+            writer.write("Connections: ");
+            for (int i = 0; i < segments.size(); i++) {
+                final FlightSegment segment = segments.get(i);
+                if (i > 0) {
+                    writer.write(", ");
+                }
+                writer.write(segment.getSource() + "-" + segment.getDestination() + "-" + segment.getPrice());
+            }
+            writer.write('\n');
+            for (int i = 1; i <= questions; i++) {
+                writer.write(workload.nextQuestion(i));
+                writer.write('\n');
+            }
+        }
+        System.out.println(String.format("Generated %s: %d airports, %d connections (%s, %s prices), %d questions, %.1f MB in %d ms",
+                inputFile.getPath(), airports, segments.size(), topology.name().toLowerCase(), prices.name().toLowerCase(),
+                questions, inputFile.length() / 1e6, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    /**
+     * Runs {@link Main} on the input file, without printing its output.
+     */
+    private void run(final int run, @NotNull final Options options) {
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        final PrintStream console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(final int b) {
+            }
+
+            @Override
+            public void write(@NotNull final byte[] b, final int off, final int len) {
+            }
+        }));
+        final long start = System.nanoTime();
+        try {
+            Main.processInputFile(inputFile, options, latencies);
+        } finally {
+            System.setOut(console);
+        }
+        final long elapsed = System.nanoTime() - start;
+        long peakHeap = 0;
+        for (final MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        System.out.println(String.format("Run %d: %d questions in %d ms (%.0f questions/s), latency p50 %d us, p99 %d us, max %d us, peak heap %d MB",
+                run, latencies.getCount(), TimeUnit.NANOSECONDS.toMillis(elapsed), latencies.getCount() * 1e9 / elapsed,
+                toMicros(latencies.getPercentile(50)), toMicros(latencies.getPercentile(99)), toMicros(latencies.getMax()),
+                peakHeap >> 20));
+    }
+
+    private static long toMicros(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
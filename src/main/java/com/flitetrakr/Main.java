@@ -1,21 +1,31 @@
 package com.flitetrakr;
 
-import com.flitetrakr.model.Airport;
+import com.flitetrakr.metrics.LatencyHistogram;
+import com.flitetrakr.metrics.Metrics;
+import com.flitetrakr.metrics.MetricsRegistry;
 import com.flitetrakr.model.ConnectionGraph;
-import com.flitetrakr.model.FlightSegment;
+import com.flitetrakr.question.CheapestQuestionPlanner;
 import com.flitetrakr.question.Question;
+import com.flitetrakr.question.QuestionCache;
 import com.flitetrakr.question.QuestionFactory;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class Main {
 
@@ -23,70 +33,121 @@ public class Main {
 
     public static void main(final String[] args) {
         // Check if input file was passed
-       if (args.length != 1) {
-            System.out.println("Usage: java flitetrakr <input>");
-            System.out.println("   where <input> follows the specifications in the README file");
+        final Options options;
+        try {
+            options = Options.parse(args);
+        } catch (final IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+            Options.printUsage();
             System.exit(0);
+            return;
         }
 
         // check if argument passed is a file
-        final File inputFile = new File(args[0]);
+        final File inputFile = options.inputFile;
         if (!inputFile.exists() || !inputFile.isFile()) {
             System.out.println(inputFile.getName() + " is not a valid file");
             System.exit(0);
         }
 
-        processInputFile(inputFile);
+        if (options.metrics) {
+            Metrics.registerMBean();
+        }
+        processInputFile(inputFile, options, null);
+        if (options.metrics) {
+            Metrics.print(System.out);
+        }
 
 
     }
 
     /**
-     * creates a new connection graph
-     * @param connections a string with connections, of the form NUE-FRA-43, NUE-AMS-67, FRA-AMS-17, FRA-LHR-27, LHR-NUE-23
+     * Maps a file in memory, so that huge connection lists are read without copying them.
+     * @param file a file of at most 2 GB
+     * @return a read only buffer with the content of the file
+     * @throws IOException if the file cannot be read, or it is larger than 2 GB
      */
-    private static void populateConnectionGraph(@NotNull final ConnectionGraph graph,
-                                                @NotNull final String connections) {
-        final Pattern pattern = Pattern.compile("([A-Z]{3})-([A-Z]{3})-(\\d+)");
+    @NotNull
+    private static ByteBuffer map(@NotNull final File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                // a buffer cannot be larger
+                throw new IOException(file.getName() + " is larger than 2 GB (" + channel.size() + " bytes)");
+            }
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
 
-        for (final String connection : connections.split(",")) {
-            final Matcher m = pattern.matcher(connection.trim());
-            if (m.find()) {
-                try {
-                    final Airport src = Airport.valueOf(m.group(1));
-                    final Airport dst = Airport.valueOf(m.group(2));
-                    // addEdge adds both nodes and edges.
-                    graph.addEdge(new FlightSegment(src, dst, Integer.valueOf(m.group(3))));
-                } catch (IllegalArgumentException ex) {
-                    System.out.println("Wrong input " + m.group(0) + ": " + ex.getMessage());
-                }
-            } else {
-                System.out.println(String.format("String %s should be a string separated concatenation of connections as follow XXX-YYY-99", connections));
+    /**
+     * @return true if the line between {@code start} and {@code end} is a connections line
+     */
+    private static boolean isConnections(@NotNull final ByteBuffer input, final int start, final int end) {
+        if (end - start < ConnectionsPrefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < ConnectionsPrefix.length(); i++) {
+            if (input.get(start + i) != ConnectionsPrefix.charAt(i)) {
+                return false;
             }
         }
+        return true;
     }
 
 
     /**
      * Process all lines in an input file and then runs all questions in order.
      * @param file a file containing a graph with connections and one or more questions on the graph
+     * @param options command line options
+     * @param latencies where the time taken to answer every question is recorded, in nanoseconds, or null
      */
-    private static void processInputFile(@NotNull final File file) {
+    /* package */ static void processInputFile(@NotNull final File file,
+                                               @NotNull final Options options,
+                                               @Nullable final LatencyHistogram latencies) {
 
-        final ConnectionGraph connections = new ConnectionGraph();
+        final ConnectionGraph connections;
+        try {
+            connections = options.snapshotFile == null ? new ConnectionGraph() : ConnectionGraph.readSnapshot(options.snapshotFile);
+        } catch (final IOException ex) {
+            System.out.println("Cannot read snapshot: " + ex.getMessage());
+            System.exit(0);
+            return;
+        }
+        if (options.splitDepth > 0) {
+            connections.setParallelSearch(ForkJoinPool.commonPool(), options.splitDepth);
+        }
+        connections.setBidirectionalSearch(options.bidirectional);
+        connections.setSearchLimits(options.maxDepth, options.maxExpanded);
         final List<Question> questions = new ArrayList<>();
         try {
-            final FileReader fileReader = new FileReader(file);
-            final BufferedReader bufferedReader = new BufferedReader(fileReader);
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                System.out.println("Processing line " + line);
+            final ByteBuffer input = map(file);
+            final int length = input.limit();
+            int lineStart = 0;
+            while (lineStart < length) {
+                // lines end with \n, \r or \r\n, as in BufferedReader.readLine
+                int lineEnd = lineStart;
+                while (lineEnd < length && input.get(lineEnd) != '\n' && input.get(lineEnd) != '\r') {
+                    lineEnd++;
+                }
+                if (!options.quiet) {
+                    System.out.println("Processing line " + ConnectionsParser.decode(input, lineStart, lineEnd));
+                }
                 // check if line is a connection
-                if (line.startsWith(ConnectionsPrefix)) {
-                    populateConnectionGraph(connections, line.substring(ConnectionsPrefix.length()+1).trim());
+                if (isConnections(input, lineStart, lineEnd)) {
+                    if (connections.isFrozen()) {
+                        System.out.println("Connections are read from the snapshot, connections line ignored");
+                    } else {
+                        // connections are parsed from the buffer, without decoding the line
+                        final long start = System.nanoTime();
+                        ConnectionsParser.parse(connections, input, Math.min(lineStart + ConnectionsPrefix.length() + 1, lineEnd), lineEnd);
+                        Metrics.registry().timer("input.connections").record(System.nanoTime() - start);
+                    }
                 } else {
                     // assume line is a question. If not a question, then it will be discarded
+                    final long start = System.nanoTime();
+                    final String line = ConnectionsParser.decode(input, lineStart, lineEnd);
                     final Optional<Question> question = QuestionFactory.getQuestion(line);
+                    Metrics.registry().timer("input.question").record(System.nanoTime() - start);
                     if (question.isPresent()) {
                         questions.add(question.get());
                     } else {
@@ -94,10 +155,13 @@ public class Main {
                         System.out.println(line + " is not a valid question");
                     }
                 }
+                lineStart = lineEnd < length && input.get(lineEnd) == '\r' && lineEnd + 1 < length && input.get(lineEnd + 1) == '\n'
+                        ? lineEnd + 2 : lineEnd + 1;
             }
-            fileReader.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            System.out.println("Cannot read input file: " + e.getMessage());
+            System.exit(0);
+            return;
         }
 
         if (connections.getNodes().isEmpty()) {
@@ -105,9 +169,152 @@ public class Main {
             System.out.println("Missing connections line in input file");
             System.exit(0);
         }
-        for (final Question question : questions) {
-            System.out.println(question.toString(question.processQuestion(connections)));
+        if (options.contract && !connections.hasContractionHierarchy()) {
+            connections.buildContractionHierarchy();
+        }
+        if (options.writeSnapshotFile != null) {
+            try {
+                connections.writeSnapshot(options.writeSnapshotFile);
+            } catch (final IOException ex) {
+                System.out.println("Cannot write snapshot: " + ex.getMessage());
+            }
+        }
+        CheapestQuestionPlanner.prepare(connections, questions, options.precomputation);
+        final QuestionCache cache = options.cacheEntries == 0 ? null : new QuestionCache(options.cacheEntries);
+        if (options.threads == 0) {
+            for (final Question question : questions) {
+                printAnswer(question, connections, cache, System.out, latencies);
+            }
+        } else {
+            answerConcurrently(connections.freeze(), questions, cache, options, latencies);
+        }
+        if (cache != null) {
+            System.out.println(String.format("Cache: %d hits, %d misses", cache.getHits(), cache.getMisses()));
+        }
+        if (options.servePort > 0) {
+            serve(connections, cache, options);
+        }
+    }
+
+    /**
+     * Answers questions sent to a local port, until the application is stopped.
+     * @param graph the graph read from the input file, which keeps its indexes between questions
+     * @param cache cache of answers, null to answer every question
+     * @param options command line options, with the port
+     */
+    private static void serve(@NotNull final ConnectionGraph graph, @Nullable final QuestionCache cache, @NotNull final Options options) {
+        final int port = options.servePort;
+        final QueryServer server;
+        try {
+            server = new QueryServer(graph, cache, port);
+        } catch (final IOException ex) {
+            System.out.println("Cannot serve questions on port " + port + ": " + ex.getMessage());
+            return;
+        }
+        System.out.println("Serving questions on port " + server.getPort());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            server.printStats(System.out);
+            if (options.metrics) {
+                Metrics.print(System.out);
+            }
+        }));
+        try {
+            server.run();
+        } catch (final IOException ex) {
+            System.out.println("Stopped serving questions: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Answers a question, using the cache if there is one, and records the time it took and the memory it
+     * allocated in the {@link Metrics} of its type of question.
+     * @param latencies where the time taken is also recorded, or null
+     */
+    /* package */ static void printAnswer(@NotNull final Question question,
+                                          @NotNull final ConnectionGraph graph,
+                                          @Nullable final QuestionCache cache,
+                                          @NotNull final PrintStream out,
+                                          @Nullable final LatencyHistogram latencies) {
+        final long allocatedBefore = Metrics.allocatedBytes();
+        final long start = System.nanoTime();
+        if (cache == null) {
+            question.printAnswer(graph, out);
+        } else {
+            cache.printAnswer(question, graph, out);
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long allocatedAfter = Metrics.allocatedBytes();
+        if (latencies != null) {
+            latencies.record(elapsed);
+        }
+        final MetricsRegistry metrics = Metrics.registry();
+        final String type = question.getClass().getSimpleName();
+        metrics.timer("question." + type).record(elapsed);
+        if (allocatedBefore >= 0) {
+            metrics.histogram("question." + type + ".allocated").record(allocatedAfter - allocatedBefore);
+        }
+    }
+
+    /**
+     * Answers all questions concurrently on an executor, and prints their answers in the order of the questions.
+     * A question that fails is answered with an {@code ERROR:} line, and the answers of the next questions are
+     * still printed.
+     * @param graph a frozen graph, shared by all questions
+     * @param questions questions to answer
+     * @param cache cache of answers, null to answer every question
+     * @param options command line options, with the number and type of threads to use
+     * @param latencies where the time taken to answer every question is recorded, or null
+     */
+    private static void answerConcurrently(@NotNull final ConnectionGraph graph,
+                                           @NotNull final List<Question> questions,
+                                           @Nullable final QuestionCache cache,
+                                           @NotNull final Options options,
+                                           @Nullable final LatencyHistogram latencies) {
+        final ExecutorService executor = createExecutor(options);
+        try {
+            final List<Future<String>> answers = new ArrayList<>();
+            for (final Question question : questions) {
+                answers.add(executor.submit(() -> {
+                    final ByteArrayOutputStream answer = new ByteArrayOutputStream();
+                    final PrintStream out = new PrintStream(answer, true);
+                    printAnswer(question, graph, cache, out, latencies);
+                    return answer.toString();
+                }));
+            }
+            for (int i = 0; i < answers.size(); i++) {
+                try {
+                    System.out.print(answers.get(i).get());
+                } catch (final ExecutionException ex) {
+                    // errors, e.g. running out of memory, are not recovered from, while the other answers
+                    // are printed when a question fails
+                    if (ex.getCause() instanceof Error) {
+                        throw (Error) ex.getCause();
+                    }
+                    System.out.println("ERROR: #" + questions.get(i).getQuestionNumber() + " cannot be answered: " + ex.getCause());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates the executor for answering questions concurrently. Virtual threads are only available from
+     * Java 21, so they are created by reflection, and platform threads are used when they are not available.
+     */
+    @NotNull
+    private static ExecutorService createExecutor(@NotNull final Options options) {
+        if (options.virtualThreads) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (final ReflectiveOperationException ex) {
+                System.out.println("Virtual threads are not supported by this Java version, using platform threads");
+            }
         }
+        return Executors.newFixedThreadPool(options.threads);
     }
 
 }
@@ -0,0 +1,223 @@
+package com.flitetrakr;
+
+import com.flitetrakr.question.CheapestQuestionPlanner.Precomputation;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+
+/**
+ * Command line options of {@link Main}. Options go before the input file, and have the form
+ * {@code --name} or {@code --name=value}.
+ */
+/* package */ final class Options {
+    /**
+     * Default number of segments up to which parallel searches are split.
+     */
+    private static final int DEFAULT_SPLIT_DEPTH = 2;
+    /**
+     * Default number of answers kept in the cache.
+     */
+    private static final int DEFAULT_CACHE_ENTRIES = 1024;
+
+    /**
+     * File with connections and questions.
+     */
+    File inputFile;
+    /**
+     * Number of segments up to which searches are split in parallel tasks, 0 to search sequentially.
+     */
+    int splitDepth = 0;
+    /**
+     * True to search cheapest connections from both ends at once.
+     */
+    boolean bidirectional = false;
+    /**
+     * Maximum number of segments of the trips searched by all connections questions.
+     */
+    int maxDepth = Integer.MAX_VALUE;
+    /**
+     * Maximum number of segments flown by the search of an all connections question.
+     */
+    long maxExpanded = Long.MAX_VALUE;
+    /**
+     * True to build a contraction hierarchy of the connection graph, to answer cheapest connection questions.
+     */
+    boolean contract = false;
+    /**
+     * Number of threads answering questions concurrently, 0 to answer them one after the other.
+     */
+    int threads = 0;
+    /**
+     * True to answer every question on its own virtual thread.
+     */
+    boolean virtualThreads = false;
+    /**
+     * Maximum number of answers kept in the cache, 0 to answer every question without cache.
+     */
+    int cacheEntries = 0;
+    /**
+     * When the cheapest trips between every pair of airports, or from the sources of several questions, are precomputed.
+     */
+    Precomputation precomputation = Precomputation.SOURCES;
+    /**
+     * True to not print the lines of the input file as they are processed.
+     */
+    boolean quiet = false;
+    /**
+     * Snapshot the connection graph is read from, null to read it from the input file.
+     */
+    File snapshotFile;
+    /**
+     * File the snapshot of the connection graph is written to, null to not write it.
+     */
+    File writeSnapshotFile;
+    /**
+     * Local port questions are served on after the input file is processed, 0 to not serve questions.
+     */
+    int servePort = 0;
+    /**
+     * True to print the metrics at the end, and expose them through JMX.
+     */
+    boolean metrics = false;
+
+    /**
+     * Prints the usage of the application on the console.
+     */
+    static void printUsage() {
+        System.out.println("Usage: java flitetrakr [options] <input>");
+        System.out.println("   where <input> follows the specifications in the README file");
+        System.out.println("Options:");
+        System.out.println("   --parallel[=<depth>]  search connections in parallel, splitting searches up to <depth> segments (default " + DEFAULT_SPLIT_DEPTH + ")");
+        System.out.println("   --bidirectional       search cheapest connections from both airports at once");
+        System.out.println("   --max-depth=<n>       do not search connections of more than <n> segments, reporting truncated answers");
+        System.out.println("   --max-expanded=<n>    stop searching all connections after flying <n> segments, reporting truncated answers");
+        System.out.println("   --contract            preprocess the connections into a contraction hierarchy to search cheapest connections");
+        System.out.println("   --threads[=<n>]       answer questions concurrently on <n> threads (default: number of processors)");
+        System.out.println("   --cache[=<n>]         keep the last <n> answers, to answer repeated questions only once (default " + DEFAULT_CACHE_ENTRIES + ")");
+        System.out.println("   --precompute[=<when>] precompute the cheapest connections between all airports: auto, always, sources or never;");
+        System.out.println("                         sources (default without this option) only searches once from the sources of several questions,");
+        System.out.println("                         auto (default when <when> is omitted) precomputes them for many cheapest connection questions");
+        System.out.println("   --quiet               do not print the lines of the input file");
+        System.out.println("   --snapshot=<file>     read the connections from a snapshot instead of the input file");
+        System.out.println("   --write-snapshot=<file> write a snapshot of the connections");
+        System.out.println("   --serve=<port>        then answer questions sent to <port> of the local host, until stopped");
+        System.out.println("   --metrics             print the metrics at the end, and expose them through JMX while running");
+        System.out.println("   --virtual-threads     answer questions concurrently, every question on its own virtual thread (Java 21+)");
+    }
+
+    /**
+     * Parses the command line arguments.
+     * @param args command line arguments
+     * @return the options
+     * @throws IllegalArgumentException if the arguments are not valid
+     */
+    @NotNull
+    static Options parse(@NotNull final String[] args) {
+        final Options options = new Options();
+        for (final String arg : args) {
+            if (!arg.startsWith("--")) {
+                if (options.inputFile != null) {
+                    throw new IllegalArgumentException("Only one input file is allowed");
+                }
+                options.inputFile = new File(arg);
+                continue;
+            }
+            final int equals = arg.indexOf('=');
+            final String name = equals < 0 ? arg.substring(2) : arg.substring(2, equals);
+            final String value = equals < 0 ? null : arg.substring(equals + 1);
+            switch (name) {
+                case "parallel":
+                    options.splitDepth = value == null ? DEFAULT_SPLIT_DEPTH : parsePositive(name, value);
+                    break;
+                case "bidirectional":
+                    options.bidirectional = true;
+                    break;
+                case "max-depth":
+                    options.maxDepth = parsePositive(name, value);
+                    break;
+                case "max-expanded":
+                    options.maxExpanded = parsePositiveLong(name, value);
+                    break;
+                case "contract":
+                    options.contract = true;
+                    break;
+                case "threads":
+                    options.threads = value == null ? Runtime.getRuntime().availableProcessors() : parsePositive(name, value);
+                    break;
+                case "virtual-threads":
+                    options.virtualThreads = true;
+                    if (options.threads == 0) {
+                        options.threads = Runtime.getRuntime().availableProcessors();
+                    }
+                    break;
+                case "cache":
+                    options.cacheEntries = value == null ? DEFAULT_CACHE_ENTRIES : parsePositive(name, value);
+                    break;
+                case "precompute":
+                    try {
+                        options.precomputation = value == null ? Precomputation.AUTO : Precomputation.valueOf(value.toUpperCase());
+                    } catch (final IllegalArgumentException ex) {
+                        throw new IllegalArgumentException(String.format("Option %s expects auto, always, sources or never, not %s", name, value));
+                    }
+                    break;
+                case "quiet":
+                    options.quiet = true;
+                    break;
+                case "snapshot":
+                    options.snapshotFile = parseFile(name, value);
+                    break;
+                case "write-snapshot":
+                    options.writeSnapshotFile = parseFile(name, value);
+                    break;
+                case "metrics":
+                    options.metrics = true;
+                    break;
+                case "serve":
+                    options.servePort = value == null ? 0 : parsePositive(name, value);
+                    if (options.servePort == 0 || options.servePort > 0xffff) {
+                        throw new IllegalArgumentException(String.format("Option %s expects a port, not %s", name, value));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (options.inputFile == null) {
+            throw new IllegalArgumentException("Missing input file");
+        }
+        return options;
+    }
+
+    private static int parsePositive(@NotNull final String name, @NotNull final String value) {
+        try {
+            final int result = Integer.parseInt(value);
+            if (result > 0) {
+                return result;
+            }
+        } catch (final NumberFormatException ex) {
+            // reported below
+        }
+        throw new IllegalArgumentException(String.format("Option %s expects a positive number, not %s", name, value));
+    }
+
+    private static long parsePositiveLong(@NotNull final String name, @NotNull final String value) {
+        try {
+            final long result = Long.parseLong(value);
+            if (result > 0) {
+                return result;
+            }
+        } catch (final NumberFormatException ex) {
+            // reported below
+        }
+        throw new IllegalArgumentException(String.format("Option %s expects a positive number, not %s", name, value));
+    }
+
+    @NotNull
+    private static File parseFile(@NotNull final String name, @Nullable final String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Option %s expects a file", name));
+        }
+        return new File(value);
+    }
+}
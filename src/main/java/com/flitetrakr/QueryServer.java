@@ -0,0 +1,332 @@
+package com.flitetrakr;
+
+import com.flitetrakr.metrics.LatencyHistogram;
+import com.flitetrakr.model.ConnectionGraph;
+import com.flitetrakr.question.Question;
+import com.flitetrakr.question.QuestionCache;
+import com.flitetrakr.question.QuestionFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers questions on a connection graph kept in memory, for clients connected to a local TCP port,
+ * so that questions are answered without starting the application and reading the graph every time.
+ * <p>
+ * Clients send lines, which are the questions of the input file, e.g. {@code #1: What is the cheapest connection
+ * from NUE to AMS?}, and may send many lines without waiting for their answers. Every line is answered in order,
+ * with the lines the question prints followed by an empty line. Besides questions, a line can be
+ * <ul>
+ *     <li>a {@code Connections:} line, whose connections are added to the graph, answered with {@code OK}, or with
+ *     an {@code ERROR:} line followed by the connections rejected</li>
+ *     <li>{@code STATS}, answered with the number of lines answered and their latency percentiles</li>
+ * </ul>
+ * Any other line, or a line that fails to be answered, is answered with an {@code ERROR:} line. Empty lines are ignored.
+ * When a client closes its output, its last line is answered even if it does not end with an end of line.
+ * <p>
+ * All clients are served by a single thread with a selector, so the graph is only used by this thread.
+ * Lines are answered one at a time, so while an expensive question is answered, e.g. all the connections below
+ * a high price, the lines of every other client wait: the search limits of the graph, see
+ * {@link ConnectionGraph#setSearchLimits(int, long)}, bound the time a line can take.
+ * The latency of a line is measured from the time it was read to the time its answer is ready to be written.
+ */
+/* package */ final class QueryServer implements Closeable {
+    private static final String ConnectionsPrefix = "Connections:";
+    private static final String StatsCommand = "STATS";
+
+    /**
+     * Size of the buffers of a client, which grow for longer lines.
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+    /**
+     * Longest line accepted, clients sending longer lines are disconnected.
+     */
+    private static final int MAX_LINE_LENGTH = 64 * 1024 * 1024;
+
+    /**
+     * The lines read from and answers written to a client.
+     */
+    private static final class Client {
+        private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+        private ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+        /**
+         * True once the client closed its output: its last answers are written, then it is disconnected.
+         */
+        private boolean inputClosed = false;
+    }
+
+    private final ConnectionGraph graph;
+    private final QuestionCache cache;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private volatile boolean closed = false;
+
+    /**
+     * Opens the server on a port of the loopback address. Clients are only served by {@link #run()}.
+     * @param graph the graph questions are asked on
+     * @param cache cache of answers, null to answer every question
+     * @param port a port, 0 for any free port
+     * @throws IOException if the port cannot be opened
+     */
+    QueryServer(@NotNull final ConnectionGraph graph, @Nullable final QuestionCache cache, final int port) throws IOException {
+        this.graph = graph;
+        this.cache = cache;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (final IOException ex) {
+            serverChannel.close();
+            selector.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return the port clients connect to
+     */
+    int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return the latencies of the lines answered, in nanoseconds
+     */
+    @NotNull
+    LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Serves clients until this server is closed.
+     * @throws IOException if the server cannot accept clients anymore
+     */
+    void run() throws IOException {
+        try {
+            while (!closed) {
+                selector.select();
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    try {
+                        if (key.isWritable()) {
+                            write(key);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(key);
+                        }
+                    } catch (final IOException ex) {
+                        // the client is gone, others are still served
+                        disconnect(key);
+                    }
+                }
+            }
+        } finally {
+            for (final SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        }
+    }
+
+    /**
+     * Stops serving clients, and disconnects them. {@link #run()} returns once it has done so.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Prints the number of lines answered and their latency percentiles.
+     */
+    void printStats(@NotNull final PrintStream out) {
+        out.println(String.format("Answered %d lines, latency p50 %d us, p99 %d us, max %d us", latencies.getCount(),
+                toMicros(latencies.getPercentile(50)), toMicros(latencies.getPercentile(99)), toMicros(latencies.getMax())));
+    }
+
+    private static long toMicros(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Client());
+    }
+
+    private static void disconnect(@NotNull final SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (final IOException ex) {
+            // already closed
+        }
+    }
+
+    /**
+     * Reads what a client sent, and answers every complete line.
+     */
+    private void read(@NotNull final SelectionKey key) throws IOException {
+        final Client client = (Client) key.attachment();
+        if (!client.input.hasRemaining()) {
+            if (client.input.capacity() >= MAX_LINE_LENGTH) {
+                disconnect(key);
+                return;
+            }
+            client.input = grow(client.input, client.input.capacity() * 2);
+        }
+        final int read = ((SocketChannel) key.channel()).read(client.input);
+        final long readTime = System.nanoTime();
+        final ByteBuffer input = client.input;
+        input.flip();
+        int lineStart = 0;
+        for (int i = 0; i < input.limit(); i++) {
+            if (input.get(i) == '\n') {
+                answerLine(client, input, lineStart, i, readTime);
+                lineStart = i + 1;
+            }
+        }
+        if (read < 0) {
+            // the last line has no end of line
+            answerLine(client, input, lineStart, input.limit(), readTime);
+            lineStart = input.limit();
+            client.inputClosed = true;
+        }
+        input.position(lineStart);
+        input.compact();
+        write(key);
+    }
+
+    /**
+     * Answers a line that ends before {@code end}, without its carriage return, unless it is empty.
+     */
+    private void answerLine(@NotNull final Client client,
+                            @NotNull final ByteBuffer input,
+                            final int start,
+                            final int end,
+                            final long readTime) {
+        final int lineEnd = end > start && input.get(end - 1) == '\r' ? end - 1 : end;
+        if (lineEnd > start) {
+            answer(client, input, start, lineEnd);
+            latencies.record(System.nanoTime() - readTime);
+        }
+    }
+
+    /**
+     * Answers a line, appending the answer to the output of the client.
+     * A line that cannot be answered is answered with an error, and the server keeps serving clients.
+     */
+    private void answer(@NotNull final Client client, @NotNull final ByteBuffer input, final int start, final int end) {
+        final ByteArrayOutputStream answer = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(answer, true);
+        final String line = ConnectionsParser.decode(input, start, end);
+        try {
+            printAnswer(line, input, start, end, out);
+        } catch (final RuntimeException ex) {
+            // drop what was printed before the failure
+            answer.reset();
+            out.println("ERROR: " + line + " cannot be answered: " + ex);
+        }
+        out.println();
+        final byte[] bytes = answer.toString().getBytes(StandardCharsets.UTF_8);
+        if (client.output.remaining() < bytes.length) {
+            client.output = grow(client.output, Math.max(client.output.capacity() * 2, client.output.position() + bytes.length));
+        }
+        client.output.put(bytes);
+    }
+
+    /**
+     * Prints the answer of a line, which is between two positions of the input.
+     * Why connections or a question are not valid is printed after the {@code ERROR:} line of the answer.
+     */
+    private void printAnswer(@NotNull final String line,
+                             @NotNull final ByteBuffer input,
+                             final int start,
+                             final int end,
+                             @NotNull final PrintStream out) {
+        final ByteArrayOutputStream errorLines = new ByteArrayOutputStream();
+        final PrintStream errors = new PrintStream(errorLines, true);
+        if (line.startsWith(ConnectionsPrefix)) {
+            if (graph.isFrozen()) {
+                out.println("ERROR: connections are read from a snapshot");
+            } else {
+                final int rejected = ConnectionsParser.parse(graph, input, Math.min(start + ConnectionsPrefix.length() + 1, end), end, errors);
+                if (rejected == 0) {
+                    out.println("OK");
+                } else {
+                    out.println("ERROR: " + rejected + " connections rejected, the other connections are added");
+                    out.print(errorLines.toString());
+                }
+            }
+        } else if (line.equals(StatsCommand)) {
+            printStats(out);
+        } else {
+            final Optional<Question> question = QuestionFactory.getQuestion(line, errors);
+            if (question.isPresent()) {
+                // e.g. a wrong airport in a connection, whose price is then not found
+                out.print(errorLines.toString());
+                Main.printAnswer(question.get(), graph, cache, out, null);
+            } else {
+                out.println("ERROR: " + line + " is not a valid question");
+                out.print(errorLines.toString());
+            }
+        }
+    }
+
+    /**
+     * Writes the answers of a client. While answers are left, the client is not read, so that
+     * clients that do not read their answers do not fill the memory of the server.
+     */
+    private void write(@NotNull final SelectionKey key) throws IOException {
+        final Client client = (Client) key.attachment();
+        client.output.flip();
+        ((SocketChannel) key.channel()).write(client.output);
+        client.output.compact();
+        if (client.output.position() > 0) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else if (client.inputClosed) {
+            disconnect(key);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    @NotNull
+    private static ByteBuffer grow(@NotNull final ByteBuffer buffer, final int capacity) {
+        final ByteBuffer grown = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+}
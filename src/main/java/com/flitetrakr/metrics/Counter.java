@@ -0,0 +1,32 @@
+package com.flitetrakr.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter of events, which threads can increment concurrently without contention.
+ */
+public final class Counter {
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Adds events to this counter.
+     * @param events number of events
+     */
+    public void add(final long events) {
+        count.add(events);
+    }
+
+    /**
+     * Adds one event to this counter.
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * @return the number of events counted
+     */
+    public long get() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,53 @@
+package com.flitetrakr.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A {@link MetricsRegistry} keeping its metrics in memory.
+ */
+public final class DefaultMetricsRegistry implements MetricsRegistry {
+    private final ConcurrentNavigableMap<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<String, LatencyHistogram> timers = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    @NotNull
+    @Override
+    public Counter counter(@NotNull final String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    @NotNull
+    @Override
+    public LatencyHistogram timer(@NotNull final String name) {
+        return timers.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    @NotNull
+    @Override
+    public LatencyHistogram histogram(@NotNull final String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    @NotNull
+    @Override
+    public Map<String, Counter> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    @NotNull
+    @Override
+    public Map<String, LatencyHistogram> getTimers() {
+        return Collections.unmodifiableMap(timers);
+    }
+
+    @NotNull
+    @Override
+    public Map<String, LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+}
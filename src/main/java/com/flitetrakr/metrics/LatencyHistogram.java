@@ -0,0 +1,108 @@
+package com.flitetrakr.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, or of any other non negative values, with a fixed memory footprint.
+ * Values are counted in buckets whose width grows with the values: every power of two is split in
+ * {@link #SUB_BUCKETS} buckets, so percentiles are accurate to within 12.5% of the value, from nanoseconds to days.
+ * Values are recorded without locking, so this class can be shared by threads.
+ */
+public final class LatencyHistogram {
+    /**
+     * Number of bits of a value, after its highest bit, that select its bucket.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    /**
+     * Number of buckets for every power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Number of buckets: values below {@link #SUB_BUCKETS} have their own bucket, and every power of two above
+     * has {@link #SUB_BUCKETS} buckets.
+     */
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     * @param value a value, negative values are recorded as 0
+     */
+    public void record(final long value) {
+        final long recorded = Math.max(value, 0);
+        counts.incrementAndGet(bucketOf(recorded));
+        count.incrementAndGet();
+        long current = max.get();
+        while (recorded > current && !max.compareAndSet(current, recorded)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the highest value recorded, 0 if none was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets a percentile of the values recorded, e.g. the median for 50.
+     * @param percentile a percentile between 0 and 100
+     * @return the highest value of the bucket of the value at this percentile (but at most {@link #getMax()}),
+     * or 0 if no value was recorded
+     */
+    public long getPercentile(final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Not a percentile: " + percentile);
+        }
+        final long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(bucket), max.get());
+            }
+        }
+        // values recorded while counting
+        return max.get();
+    }
+
+    /**
+     * @return the bucket of a non negative value
+     */
+    /* package */ static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value counted in a bucket
+     */
+    /* package */ static long highestValueOf(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
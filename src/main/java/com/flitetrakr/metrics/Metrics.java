@@ -0,0 +1,165 @@
+package com.flitetrakr.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics of the application: where they are registered, how they are printed and exposed through JMX.
+ * Metrics are always collected, so hot paths only update them once per operation (e.g. once per search,
+ * not once per airport visited).
+ */
+public final class Metrics {
+    /**
+     * Name of the MBean registered by {@link #registerMBean()}.
+     */
+    public static final String MBEAN_NAME = "com.flitetrakr:type=Metrics";
+
+    private static volatile MetricsRegistry registry = new DefaultMetricsRegistry();
+
+    /**
+     * Memory bean of the threads, if it can measure the memory they allocate.
+     */
+    private static final com.sun.management.ThreadMXBean allocations = allocationsBean();
+
+    private Metrics() {
+    }
+
+    /**
+     * @return the registry where metrics are registered
+     */
+    @NotNull
+    public static MetricsRegistry registry() {
+        return registry;
+    }
+
+    /**
+     * Replaces the registry where metrics are registered. Metrics already registered are not copied.
+     * @param newRegistry the new registry
+     */
+    public static void setRegistry(@NotNull final MetricsRegistry newRegistry) {
+        registry = newRegistry;
+    }
+
+    /**
+     * Gets the number of bytes the current thread allocated since it started, to measure the memory allocated
+     * by an operation. This is only available on JVMs supporting it, such as HotSpot.
+     * @return the number of bytes allocated by the current thread, or -1 if this is not available
+     */
+    public static long allocatedBytes() {
+        return allocations == null ? -1 : allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean allocationsBean() {
+        try {
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+                ((com.sun.management.ThreadMXBean) threads).setThreadAllocatedMemoryEnabled(true);
+                return (com.sun.management.ThreadMXBean) threads;
+            }
+        } catch (final LinkageError | UnsupportedOperationException ex) {
+            // not a HotSpot JVM
+        }
+        return null;
+    }
+
+    /**
+     * Prints every metric of the registry on a line, counters first, then timers (in microseconds) and histograms.
+     * @param out where the metrics are printed
+     */
+    public static void print(@NotNull final PrintStream out) {
+        final MetricsRegistry metrics = registry;
+        out.println("Metrics:");
+        for (final Map.Entry<String, Counter> counter : metrics.getCounters().entrySet()) {
+            out.println(String.format("  %s: %d", counter.getKey(), counter.getValue().get()));
+        }
+        for (final Map.Entry<String, LatencyHistogram> timer : metrics.getTimers().entrySet()) {
+            final LatencyHistogram histogram = timer.getValue();
+            out.println(String.format("  %s: count %d, p50 %d us, p99 %d us, max %d us", timer.getKey(), histogram.getCount(),
+                    toMicros(histogram.getPercentile(50)), toMicros(histogram.getPercentile(99)), toMicros(histogram.getMax())));
+        }
+        for (final Map.Entry<String, LatencyHistogram> entry : metrics.getHistograms().entrySet()) {
+            final LatencyHistogram histogram = entry.getValue();
+            out.println(String.format("  %s: count %d, p50 %d, p99 %d, max %d", entry.getKey(), histogram.getCount(),
+                    histogram.getPercentile(50), histogram.getPercentile(99), histogram.getMax()));
+        }
+    }
+
+    /**
+     * Registers an MBean named {@link #MBEAN_NAME} in the platform MBean server, exposing the metrics of
+     * the registry in use when they are read. Registering it again has no effect.
+     * @throws IllegalStateException if the MBean cannot be registered
+     */
+    public static synchronized void registerMBean() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MBean(), name);
+            }
+        } catch (final JMException ex) {
+            throw new IllegalStateException("Cannot register the metrics MBean: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static long toMicros(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * The MBean of the metrics, reading the registry in use every time.
+     */
+    private static final class MBean implements MetricsMXBean {
+        @Override
+        public Map<String, Long> getCounters() {
+            final Map<String, Long> result = new TreeMap<>();
+            for (final Map.Entry<String, Counter> counter : registry.getCounters().entrySet()) {
+                result.put(counter.getKey(), counter.getValue().get());
+            }
+            return result;
+        }
+
+        @Override
+        public Map<String, Long> getTimers() {
+            final Map<String, Long> result = new TreeMap<>();
+            for (final Map.Entry<String, LatencyHistogram> timer : registry.getTimers().entrySet()) {
+                final LatencyHistogram histogram = timer.getValue();
+                result.put(timer.getKey() + ".count", histogram.getCount());
+                result.put(timer.getKey() + ".p50", toMicros(histogram.getPercentile(50)));
+                result.put(timer.getKey() + ".p99", toMicros(histogram.getPercentile(99)));
+                result.put(timer.getKey() + ".max", toMicros(histogram.getMax()));
+            }
+            return result;
+        }
+
+        @Override
+        public Map<String, Long> getHistograms() {
+            final Map<String, Long> result = new TreeMap<>();
+            for (final Map.Entry<String, LatencyHistogram> entry : registry.getHistograms().entrySet()) {
+                final LatencyHistogram histogram = entry.getValue();
+                result.put(entry.getKey() + ".count", histogram.getCount());
+                result.put(entry.getKey() + ".p50", histogram.getPercentile(50));
+                result.put(entry.getKey() + ".p99", histogram.getPercentile(99));
+                result.put(entry.getKey() + ".max", histogram.getMax());
+            }
+            return result;
+        }
+
+        @Override
+        public String getReport() {
+            final ByteArrayOutputStream report = new ByteArrayOutputStream();
+            print(new PrintStream(report, true));
+            return report.toString();
+        }
+    }
+}
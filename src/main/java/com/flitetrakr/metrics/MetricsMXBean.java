@@ -0,0 +1,30 @@
+package com.flitetrakr.metrics;
+
+import java.util.Map;
+
+/**
+ * Exposes the metrics of {@link Metrics#registry()} through JMX, see {@link Metrics#registerMBean()}.
+ */
+public interface MetricsMXBean {
+    /**
+     * @return the value of every counter, by name
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return the number of values, median, 99th percentile and maximum of every timer, in microseconds,
+     * by the name of the timer followed by {@code .count}, {@code .p50}, {@code .p99} and {@code .max}
+     */
+    Map<String, Long> getTimers();
+
+    /**
+     * @return the number of values, median, 99th percentile and maximum of every histogram, by the name of
+     * the histogram followed by {@code .count}, {@code .p50}, {@code .p99} and {@code .max}
+     */
+    Map<String, Long> getHistograms();
+
+    /**
+     * @return the metrics, as printed by {@link Metrics#print(java.io.PrintStream)}
+     */
+    String getReport();
+}
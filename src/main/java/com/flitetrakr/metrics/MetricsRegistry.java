@@ -0,0 +1,55 @@
+package com.flitetrakr.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+/**
+ * Creates and keeps the metrics of the application by name. Names are dot separated, from the most
+ * general part to the most specific one, e.g. {@code search.trips.found}.
+ * The registry in use is the one of {@link Metrics#registry()}, which can be replaced, e.g. by one
+ * forwarding the metrics to a monitoring system. Implementations must be thread safe.
+ */
+public interface MetricsRegistry {
+    /**
+     * Gets a counter, creating it the first time it is asked.
+     * @param name name of the counter
+     * @return the counter with this name
+     */
+    @NotNull
+    Counter counter(@NotNull String name);
+
+    /**
+     * Gets a timer, creating it the first time it is asked. A timer is a histogram of durations, in nanoseconds.
+     * @param name name of the timer
+     * @return the timer with this name
+     */
+    @NotNull
+    LatencyHistogram timer(@NotNull String name);
+
+    /**
+     * Gets a histogram of values other than durations, creating it the first time it is asked.
+     * @param name name of the histogram
+     * @return the histogram with this name
+     */
+    @NotNull
+    LatencyHistogram histogram(@NotNull String name);
+
+    /**
+     * @return the counters created, by name, in the order of their names
+     */
+    @NotNull
+    Map<String, Counter> getCounters();
+
+    /**
+     * @return the timers created, by name, in the order of their names
+     */
+    @NotNull
+    Map<String, LatencyHistogram> getTimers();
+
+    /**
+     * @return the histograms created, by name, in the order of their names
+     */
+    @NotNull
+    Map<String, LatencyHistogram> getHistograms();
+}
@@ -2,31 +2,175 @@ package com.flitetrakr.model;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
+
 /**
- * This enum list all airports known in the domain.
- * It also provides friendly names for the cities where the airport are located.
+ * An airport, identified by its three letter IATA code.
+ * Airports are interned: there is a single instance per code, created the first time the code is seen,
+ * so they can be compared by identity. Every airport gets a dense id on creation (0 for the first one,
+ * 1 for the next one, and so on), which graphs use to keep their data in arrays indexed by airport.
+ * Airports known in the domain are constants of this class, and provide friendly names for the cities
+ * where they are located.
  */
-public enum Airport {
-    NUE ("Herzogenaurach"),
-    BOS ("Canton, MA"),
-    AMS ("Amsterdam"),
-    FRA ("Frankfurt"),
-    DXB ("Dubai"),
-    HKG ("Hong Kong"),
-    PDX ("Portland, OR"),
-    LHR ("London-Heathrow");
+public final class Airport {
+    /**
+     * Number of possible three letter codes.
+     */
+    private static final int CODES = 26 * 26 * 26;
+
+    /**
+     * Airports by their packed code, see {@link #packCode(char, char, char)}.
+     * Elements are written while holding the lock of this class, but read without it: airports are
+     * immutable, so a thread either sees a complete airport or null, and then looks again holding the lock.
+     */
+    private static final Airport[] byCode = new Airport[CODES];
+
+    /**
+     * Airports by id. Guarded by the lock of this class.
+     */
+    private static Airport[] byId = new Airport[16];
+
+    /**
+     * Number of airports created. Guarded by the lock of this class.
+     */
+    private static int count = 0;
+
+    public static final Airport NUE = register("NUE", "Herzogenaurach");
+    public static final Airport BOS = register("BOS", "Canton, MA");
+    public static final Airport AMS = register("AMS", "Amsterdam");
+    public static final Airport FRA = register("FRA", "Frankfurt");
+    public static final Airport DXB = register("DXB", "Dubai");
+    public static final Airport HKG = register("HKG", "Hong Kong");
+    public static final Airport PDX = register("PDX", "Portland, OR");
+    public static final Airport LHR = register("LHR", "London-Heathrow");
+
+    /**
+     * IATA code of this airport
+     */
+    private final String code;
 
     /**
      * City name for this airport
      */
-    final String city;
+    private final String city;
 
-    Airport(@NotNull  final String city) {
+    /**
+     * Dense id of this airport
+     */
+    private final int id;
+
+    private Airport(@NotNull final String code, @NotNull final String city, final int id) {
+        this.code = code;
         this.city = city;
+        this.id = id;
+    }
+
+    /**
+     * Gets the airport with the given code, creating it the first time the code is seen.
+     * Airports not known in the domain use their code as city name.
+     *
+     * @param code a three letter code, in upper case
+     * @return the airport with this code
+     * @throws IllegalArgumentException if {@code code} is not a three letter code
+     */
+    @NotNull
+    public static Airport valueOf(@NotNull final String code) {
+        if (code.length() != 3) {
+            throw new IllegalArgumentException("Not an airport code: " + code);
+        }
+        return valueOf(code.charAt(0), code.charAt(1), code.charAt(2));
+    }
+
+    /**
+     * Gets the airport with the code made of the given letters, like {@link #valueOf(String)}.
+     * No string is created unless the airport has to be created, so parsers can read codes
+     * directly from their buffers.
+     *
+     * @return the airport with this code
+     * @throws IllegalArgumentException if the letters are not upper case letters
+     */
+    @NotNull
+    public static Airport valueOf(final char first, final char second, final char third) {
+        final int packed = packCode(first, second, third);
+        final Airport airport = byCode[packed];
+        if (airport != null) {
+            return airport;
+        }
+        final String code = new String(new char[] {first, second, third});
+        return register(packed, code, code);
+    }
+
+    /**
+     * @return the number of airports created so far, which is also the id the next airport will get.
+     */
+    public static synchronized int count() {
+        return count;
+    }
+
+    /**
+     * @return all airports created so far, by id.
+     */
+    @NotNull
+    public static synchronized Airport[] values() {
+        return Arrays.copyOf(byId, count);
+    }
+
+    /**
+     * Creates an airport known in the domain.
+     */
+    @NotNull
+    private static Airport register(@NotNull final String code, @NotNull final String city) {
+        return register(packCode(code.charAt(0), code.charAt(1), code.charAt(2)), code, city);
+    }
+
+    /**
+     * Creates the airport with the given code, unless another thread created it first.
+     */
+    @NotNull
+    private static synchronized Airport register(final int packed, @NotNull final String code, @NotNull final String city) {
+        if (byCode[packed] == null) {
+            if (count == byId.length) {
+                byId = Arrays.copyOf(byId, count * 2);
+            }
+            final Airport airport = new Airport(code, city, count);
+            byId[count++] = airport;
+            byCode[packed] = airport;
+        }
+        return byCode[packed];
+    }
+
+    /**
+     * Packs a three letter code in an int between 0 and 26<sup>3</sup> - 1, one base 26 digit per letter.
+     */
+    private static int packCode(final char first, final char second, final char third) {
+        if (first < 'A' || first > 'Z' || second < 'A' || second > 'Z' || third < 'A' || third > 'Z') {
+            throw new IllegalArgumentException("Not an airport code: " + first + second + third);
+        }
+        return ((first - 'A') * 26 + (second - 'A')) * 26 + (third - 'A');
+    }
+
+    /**
+     * @return the three letter code of this airport
+     */
+    @NotNull
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * @return the dense id of this airport, between 0 and {@link #count()} - 1.
+     */
+    public int getId() {
+        return id;
     }
 
     @NotNull
     public String getCity() {
         return city;
     }
+
+    @Override
+    public String toString() {
+        return code;
+    }
 }
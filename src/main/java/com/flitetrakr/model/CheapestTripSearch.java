@@ -0,0 +1,305 @@
+package com.flitetrakr.model;
+
+import com.flitetrakr.metrics.Metrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Optional;
+import java.util.PriorityQueue;
+
+/**
+ * Searches the cheapest trips from an airport of an {@link IndexedGraph}, using Dijkstra's algorithm
+ * on the prices of the segments, which are never negative.
+ * The source airport is not reached until a trip flies back to it, so the cheapest trip from an airport
+ * to itself is its cheapest round trip, i.e., a trip with at least one segment.
+ */
+/* package */ final class CheapestTripSearch {
+
+    private CheapestTripSearch() {
+    }
+
+    /**
+     * Searches the cheapest trip between two airports.
+     * If {@code source} and {@code destination} are the same airport, the cheapest round trip is searched.
+     * @param graph the graph to search
+     * @param source id of the source airport
+     * @param destination id of the destination airport
+     * @return the cheapest trip, or an empty optional if {@code destination} cannot be reached from {@code source}.
+     */
+    @NotNull
+    static Optional<Trip> search(@NotNull final IndexedGraph graph, final int source, final int destination) {
+        return search(graph, source, destination, null, new CheapestTripTree(graph, source)).getTrip(destination);
+    }
+
+    /**
+     * Searches the cheapest trip between two airports with a bidirectional search: a search forwards from
+     * {@code source} and a search backwards from {@code destination} (on the segments arriving at every airport,
+     * see {@link IndexedGraph#reverse()}) take turns, expanding the side whose next airport is cheaper, until
+     * no trip through an airport reached by both can be cheaper than the cheapest one found where they meet.
+     * Both searches together usually settle far fewer airports than a search from {@code source} only, since
+     * each one stops about halfway. The trip found costs the same as the one of
+     * {@link #search(IndexedGraph, int, int)}, but among trips of the same price it may find another one.
+     * Round trips are searched by {@link #search(IndexedGraph, int, int)}.
+     * @param graph the graph to search
+     * @param source id of the source airport
+     * @param destination id of the destination airport
+     * @return the cheapest trip, or an empty optional if {@code destination} cannot be reached from {@code source}.
+     */
+    @NotNull
+    static Optional<Trip> searchBidirectional(@NotNull final IndexedGraph graph, final int source, final int destination) {
+        if (source == destination) {
+            return search(graph, source, destination);
+        }
+        final IndexedGraph.ReverseIndex reverse = graph.reverse();
+        final int airports = graph.airports.length;
+        // price and last segment of the cheapest trip from the source to every airport
+        final long[] forwardPrice = new long[airports];
+        final int[] previousSegment = new int[airports];
+        // price and first segment of the cheapest trip from every airport to the destination
+        final long[] backwardPrice = new long[airports];
+        final int[] nextSegment = new int[airports];
+        Arrays.fill(forwardPrice, Long.MAX_VALUE);
+        Arrays.fill(backwardPrice, Long.MAX_VALUE);
+        final boolean[] forwardSettled = new boolean[airports];
+        final boolean[] backwardSettled = new boolean[airports];
+        final PriorityQueue<PricedAirport> forward = new PriorityQueue<>();
+        final PriorityQueue<PricedAirport> backward = new PriorityQueue<>();
+        forwardPrice[source] = 0;
+        forward.add(new PricedAirport(source, 0));
+        backwardPrice[destination] = 0;
+        backward.add(new PricedAirport(destination, 0));
+
+        // cheapest trip found so far: the segment where both searches meet, and the price of the whole trip
+        long bestPrice = Long.MAX_VALUE;
+        int meetingSegment = -1;
+        long settledCount = 0;
+        // once a queue is empty, its search reached every airport it can, and the trips through them were checked
+        while (!forward.isEmpty() && !backward.isEmpty()) {
+            final long forwardNext = forward.peek().price;
+            final long backwardNext = backward.peek().price;
+            if (forwardNext + backwardNext >= bestPrice) {
+                break; // any other trip goes through unsettled airports on both sides, so it costs as much at least
+            }
+            if (forwardNext <= backwardNext) {
+                final PricedAirport current = forward.poll();
+                if (forwardSettled[current.airport]) {
+                    continue;
+                }
+                forwardSettled[current.airport] = true;
+                settledCount++;
+                for (int segment = graph.firstSegment[current.airport]; segment < graph.firstSegment[current.airport + 1]; segment++) {
+                    final int airport = graph.destinations[segment];
+                    final long price = current.price + graph.prices[segment];
+                    if (price < forwardPrice[airport]) {
+                        forwardPrice[airport] = price;
+                        previousSegment[airport] = segment;
+                        forward.add(new PricedAirport(airport, price));
+                    }
+                    if (backwardPrice[airport] != Long.MAX_VALUE && price + backwardPrice[airport] < bestPrice) {
+                        bestPrice = price + backwardPrice[airport];
+                        meetingSegment = segment;
+                    }
+                }
+            } else {
+                final PricedAirport current = backward.poll();
+                if (backwardSettled[current.airport]) {
+                    continue;
+                }
+                backwardSettled[current.airport] = true;
+                settledCount++;
+                for (int i = reverse.firstIncoming[current.airport]; i < reverse.firstIncoming[current.airport + 1]; i++) {
+                    final int segment = reverse.incomingSegments[i];
+                    final int airport = reverse.sources[i];
+                    final long price = current.price + graph.prices[segment];
+                    if (price < backwardPrice[airport]) {
+                        backwardPrice[airport] = price;
+                        nextSegment[airport] = segment;
+                        backward.add(new PricedAirport(airport, price));
+                    }
+                    if (forwardPrice[airport] != Long.MAX_VALUE && forwardPrice[airport] + price < bestPrice) {
+                        bestPrice = forwardPrice[airport] + price;
+                        meetingSegment = segment;
+                    }
+                }
+            }
+        }
+        Metrics.registry().counter("search.bidirectional.searches").increment();
+        Metrics.registry().counter("search.bidirectional.settled").add(settledCount);
+        if (meetingSegment < 0) {
+            return Optional.empty();
+        }
+
+        // the trip is the forward one to the meeting segment, which goes on with the backward one from there
+        int[] segments = new int[8];
+        int count = 0;
+        for (int airport = graph.sourceOf(meetingSegment); airport != source; airport = graph.sourceOf(previousSegment[airport])) {
+            if (count == segments.length) {
+                segments = Arrays.copyOf(segments, count * 2);
+            }
+            segments[count++] = previousSegment[airport];
+        }
+        for (int i = 0; i < count / 2; i++) {
+            final int swap = segments[i];
+            segments[i] = segments[count - 1 - i];
+            segments[count - 1 - i] = swap;
+        }
+        int segment = meetingSegment;
+        while (true) {
+            if (count == segments.length) {
+                segments = Arrays.copyOf(segments, count * 2);
+            }
+            segments[count++] = segment;
+            final int airport = graph.destinations[segment];
+            if (airport == destination) {
+                break;
+            }
+            segment = nextSegment[airport];
+        }
+        return Optional.of(graph.toTrip(source, segments, count));
+    }
+
+    /**
+     * Searches the cheapest trips from an airport to every airport.
+     * @param graph the graph to search
+     * @param source id of the source airport
+     * @return the cheapest trips from {@code source}
+     */
+    @NotNull
+    static CheapestTripTree searchAll(@NotNull final IndexedGraph graph, final int source) {
+        return search(graph, source, -1, null, new CheapestTripTree(graph, source));
+    }
+
+    /**
+     * Searches the cheapest trips from an airport to some airports, stopping once the trips to all of them are found.
+     * @param graph the graph to search
+     * @param source id of the source airport
+     * @param destinations ids of the destination airports
+     * @return the cheapest trips from {@code source}, which are only complete for {@code destinations}:
+     * trips to other airports may be more expensive than the cheapest ones, or missing
+     */
+    @NotNull
+    static CheapestTripTree searchAll(@NotNull final IndexedGraph graph, final int source, @NotNull final BitSet destinations) {
+        return search(graph, source, -1, destinations, new CheapestTripTree(graph, source));
+    }
+
+    /**
+     * Searches the price of the cheapest trip from every airport to an airport, walking the segments backwards
+     * from {@code destination}. These are lower bounds of the price left to reach {@code destination}, used to
+     * prune trips that cannot reach it below a price (see {@link TripSearch}).
+     * The price from {@code destination} to itself is 0, as a trip reaching it does not need to fly further.
+     * Airports whose cheapest trip costs {@code priceLimit} or more are not searched.
+     * @param graph the graph to search
+     * @param destination id of the destination airport
+     * @param priceLimit price from which airports are not searched
+     * @return the price of the cheapest trip to {@code destination} from every airport by id,
+     * {@link Long#MAX_VALUE} if it cannot be reached below {@code priceLimit}
+     */
+    @NotNull
+    static long[] searchPricesTo(@NotNull final IndexedGraph graph, final int destination, final long priceLimit) {
+        final IndexedGraph.ReverseIndex reverse = graph.reverse();
+        final long[] prices = new long[graph.airports.length];
+        Arrays.fill(prices, Long.MAX_VALUE);
+        final boolean[] settled = new boolean[graph.airports.length];
+        final PriorityQueue<PricedAirport> queue = new PriorityQueue<>();
+        prices[destination] = 0;
+        queue.add(new PricedAirport(destination, 0));
+
+        long settledCount = 0;
+        while (!queue.isEmpty()) {
+            final PricedAirport current = queue.poll();
+            if (settled[current.airport]) {
+                continue; // a cheaper price was already found for this airport
+            }
+            settled[current.airport] = true;
+            settledCount++;
+            for (int i = reverse.firstIncoming[current.airport]; i < reverse.firstIncoming[current.airport + 1]; i++) {
+                final long newPrice = current.price + graph.prices[reverse.incomingSegments[i]];
+                final int airport = reverse.sources[i];
+                if (newPrice < prices[airport] && newPrice < priceLimit) {
+                    prices[airport] = newPrice;
+                    queue.add(new PricedAirport(airport, newPrice));
+                }
+            }
+        }
+        Metrics.registry().counter("search.bounds.searches").increment();
+        Metrics.registry().counter("search.bounds.settled").add(settledCount);
+        return prices;
+    }
+
+    /**
+     * Runs the search until {@code destination} is reached, or every airport of {@code destinations} if it is -1,
+     * or every airport if {@code destinations} is null too.
+     */
+    @NotNull
+    private static CheapestTripTree search(@NotNull final IndexedGraph graph,
+                                           final int source,
+                                           final int destination,
+                                           @Nullable final BitSet destinations,
+                                           @NotNull final CheapestTripTree tree) {
+        final boolean[] settled = new boolean[graph.airports.length];
+        final PriorityQueue<PricedAirport> queue = new PriorityQueue<>();
+
+        // source is not reached until we fly back to it, so we start from its segments
+        for (int segment = graph.firstSegment[source]; segment < graph.firstSegment[source + 1]; segment++) {
+            relax(graph, segment, 0, tree, queue);
+        }
+
+        long settledCount = 0;
+        int destinationsLeft = destinations == null ? -1 : destinations.cardinality();
+        while (!queue.isEmpty() && destinationsLeft != 0) {
+            final PricedAirport current = queue.poll();
+            if (settled[current.airport]) {
+                continue; // a cheaper price was already found for this airport
+            }
+            settled[current.airport] = true;
+            settledCount++;
+            if (current.airport == destination
+                    || (destinations != null && destinations.get(current.airport) && --destinationsLeft == 0)) {
+                break;
+            }
+            if (current.airport == source) {
+                continue; // trips through the source are never cheaper than the ones starting there
+            }
+            for (int segment = graph.firstSegment[current.airport]; segment < graph.firstSegment[current.airport + 1]; segment++) {
+                relax(graph, segment, current.price, tree, queue);
+            }
+        }
+        Metrics.registry().counter("search.cheapest.searches").increment();
+        Metrics.registry().counter("search.cheapest.settled").add(settledCount);
+        return tree;
+    }
+
+    private static void relax(@NotNull final IndexedGraph graph,
+                              final int segment,
+                              final long price,
+                              @NotNull final CheapestTripTree tree,
+                              @NotNull final PriorityQueue<PricedAirport> queue) {
+        final long newPrice = price + graph.prices[segment];
+        final int airport = graph.destinations[segment];
+        if (newPrice < tree.cheapestPrice[airport]) {
+            tree.cheapestPrice[airport] = newPrice;
+            tree.previousSegment[airport] = segment;
+            queue.add(new PricedAirport(airport, newPrice));
+        }
+    }
+
+    /**
+     * An entry in the priority queue used to search cheapest trips.
+     */
+    private static final class PricedAirport implements Comparable<PricedAirport> {
+        private final int airport;
+        private final long price;
+
+        PricedAirport(final int airport, final long price) {
+            this.airport = airport;
+            this.price = price;
+        }
+
+        @Override
+        public int compareTo(@NotNull final PricedAirport other) {
+            return Long.compare(price, other.price);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.flitetrakr.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * The cheapest trips from a source airport to every airport of an {@link IndexedGraph}, as found by
+ * {@link CheapestTripSearch#searchAll(IndexedGraph, int)}. For every airport, it keeps the price of the
+ * cheapest trip and the last segment of that trip, so a trip is rebuilt walking back its segments.
+ * The trip to the source airport itself is the cheapest round trip.
+ */
+/* package */ final class CheapestTripTree {
+    /**
+     * Price of the cheapest trip to every airport, {@link Long#MAX_VALUE} if it cannot be reached.
+     */
+    final long[] cheapestPrice;
+    /**
+     * Last segment of the cheapest trip to every airport.
+     */
+    final int[] previousSegment;
+    private final IndexedGraph graph;
+    private final int source;
+
+    CheapestTripTree(@NotNull final IndexedGraph graph, final int source) {
+        this.graph = graph;
+        this.source = source;
+        this.cheapestPrice = new long[graph.airports.length];
+        this.previousSegment = new int[graph.airports.length];
+        Arrays.fill(cheapestPrice, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param destination id of an airport
+     * @return true if there is a trip from the source to {@code destination}
+     */
+    boolean isReachable(final int destination) {
+        // airports created after the search cannot be reached
+        return destination < cheapestPrice.length && cheapestPrice[destination] != Long.MAX_VALUE;
+    }
+
+    /**
+     * Checks if the cheapest trips may change when a segment changes. This happens when the segment
+     * is the last one of the cheapest trip to its destination, and it is removed or repriced,
+     * or when the trip to its source and the segment cost as much as the cheapest trip to its destination
+     * or less, and it is added or repriced.
+     * @param source id of the source airport of the segment
+     * @param destination id of the destination airport of the segment
+     * @param removedPrice price of the segment before the change, -1 if it was added
+     * @param addedPrice price of the segment after the change, -1 if it was removed
+     * @return false if the cheapest trips are the same after the change
+     */
+    boolean isChangedBy(final int source, final int destination, final int removedPrice, final int addedPrice) {
+        if (removedPrice >= 0 && isReachable(destination)) {
+            final int segment = previousSegment[destination];
+            if (graph.sourceOf(segment) == source && graph.prices[segment] == removedPrice) {
+                return true;
+            }
+        }
+        if (addedPrice >= 0) {
+            final long sourcePrice = source == this.source ? 0 : isReachable(source) ? cheapestPrice[source] : Long.MAX_VALUE;
+            final long destinationPrice = isReachable(destination) ? cheapestPrice[destination] : Long.MAX_VALUE;
+            // ties are changes too, since a new search could find the other trip
+            return sourcePrice != Long.MAX_VALUE && sourcePrice + addedPrice <= destinationPrice;
+        }
+        return false;
+    }
+
+    /**
+     * Rebuilds the cheapest trip to the given airport.
+     * @param destination id of an airport
+     * @return the cheapest trip, or an empty optional if {@code destination} cannot be reached.
+     */
+    @NotNull
+    Optional<Trip> getTrip(final int destination) {
+        if (!isReachable(destination)) {
+            return Optional.empty();
+        }
+        int count = 0;
+        int[] segments = new int[8];
+        int airport = destination;
+        do {
+            if (count == segments.length) {
+                segments = Arrays.copyOf(segments, count * 2);
+            }
+            final int segment = previousSegment[airport];
+            segments[count++] = segment;
+            airport = graph.sourceOf(segment);
+        } while (airport != source);
+
+        // segments were found from the destination backwards
+        for (int i = 0; i < count / 2; i++) {
+            final int swap = segments[i];
+            segments[i] = segments[count - 1 - i];
+            segments[count - 1 - i] = swap;
+        }
+        return Optional.of(graph.toTrip(source, segments, count));
+    }
+}
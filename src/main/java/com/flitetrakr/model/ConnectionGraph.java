@@ -1,12 +1,26 @@
 package com.flitetrakr.model;
 
 
+import com.flitetrakr.metrics.Metrics;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class represents a graph of flight connections.
@@ -15,14 +29,82 @@ import java.util.Set;
 public final class ConnectionGraph {
 
     /**
-     * Nodes for this graph. We use a set since nodes cannot be duplicated.
+     * Source of version stamps, shared by all graphs so that a stamp identifies the content of a single graph.
      */
-    private Set<Airport> nodes = new HashSet<>();
+    private static final AtomicLong versions = new AtomicLong();
+
+    /**
+     * Nodes for this graph, in the order they were added. Nodes cannot be duplicated,
+     * which is checked with {@link #nodeIds}.
+     */
+    private List<Airport> nodes = new ArrayList<>();
+    /**
+     * Ids of the nodes of this graph.
+     */
+    private BitSet nodeIds = new BitSet();
     /**
      * Edges for this graph. We allow multigraphs, so multiple segments between the same pair of
-     * airports (with different prices) are allowed.
+     * airports (with different prices) are allowed. Null once the graph is frozen.
      */
     private List<FlightSegment> edges = new ArrayList<>();
+    /**
+     * Outgoing edges indexed by the id of their source airport, so that expanding an airport during a search
+     * does not require scanning every edge of the graph. Segments keep the order in which they were added,
+     * and airports without outgoing edges have a null list, or no list if their id is past the end.
+     * This index is kept consistent by {@link #addEdge(FlightSegment)}. Null once the graph is frozen.
+     */
+    private List<List<FlightSegment>> outgoingEdges = new ArrayList<>();
+    /**
+     * Int indexed view of this graph, built when first needed, and discarded when an edge is added.
+     * Once the graph is frozen, this is the only representation of its edges.
+     */
+    private IndexedGraph index;
+    /**
+     * True if {@link #index} is shared with a frozen copy, so it cannot be updated in place.
+     */
+    private boolean indexShared = false;
+    /**
+     * Cheapest trips from every airport to every airport, by source airport id, null for airports whose
+     * trips are not computed (yet). Null unless precomputed. When a segment changes, only the trips of the
+     * airports affected by the change are discarded, see {@link CheapestTripTree#isChangedBy(int, int, int, int)}.
+     */
+    private CheapestTripTree[] cheapestTrips;
+    /**
+     * Pool used to search trips in parallel, null to search them sequentially.
+     */
+    private ForkJoinPool searchPool;
+    /**
+     * Number of segments up to which parallel searches are split in subtasks.
+     */
+    private int splitDepth;
+    /**
+     * True to search cheapest trips from both ends at once, see {@link #setBidirectionalSearch(boolean)}.
+     */
+    private boolean bidirectionalSearch = false;
+    /**
+     * Number of segments past which searches of all trips do not extend trips, see {@link #setSearchLimits(int, long)}.
+     */
+    private int searchDepthLimit = Integer.MAX_VALUE;
+    /**
+     * Number of segments after which searches of all trips stop, see {@link #setSearchLimits(int, long)}.
+     */
+    private long searchMaxExpanded = Long.MAX_VALUE;
+    /**
+     * Contraction hierarchy of {@link #index}, null unless built, see {@link #buildContractionHierarchy()}.
+     */
+    private ContractionHierarchy contractionHierarchy;
+    /**
+     * True if this graph cannot be modified anymore, see {@link #freeze()}.
+     */
+    private boolean frozen = false;
+    /**
+     * Version stamp of the content of this graph, changed every time the graph is modified.
+     */
+    private long version = versions.incrementAndGet();
+    /**
+     * Last changes of this graph, to tell which results computed on previous versions are still valid.
+     */
+    private GraphChanges changes = new GraphChanges(version);
 
     /**
      * Constructor.
@@ -31,23 +113,223 @@ public final class ConnectionGraph {
     }
 
     /**
-     * Gets all the nodes (airports) in this graph.
+     * Creates an immutable copy of this graph, which can be safely shared by several threads once published
+     * (e.g. by submitting tasks to an executor). Every index needed by the searches is built in advance,
+     * so reading the frozen graph never modifies it. The search settings are kept.
+     * The frozen graph only keeps the int indexed representation of its segments, grouped by source airport,
+     * which takes 8 bytes per segment instead of a {@link FlightSegment} object and the references to it.
+     * Its segments are returned as new {@link FlightSegment} objects every time they are read.
+     *
+     * @return a frozen copy of this graph, or this graph if it is already frozen.
+     */
+    @NotNull
+    public ConnectionGraph freeze() {
+        if (frozen) {
+            return this;
+        }
+        final ConnectionGraph copy = new ConnectionGraph();
+        copy.nodes = new ArrayList<>(nodes);
+        copy.nodeIds = (BitSet) nodeIds.clone();
+        copy.edges = null;
+        copy.outgoingEdges = null;
+        copy.index = getIndex();
+        indexShared = true;
+        copy.cheapestTrips = cheapestTrips == null ? null : cheapestTrips.clone();
+        copy.changes = changes.copy();
+        copy.searchPool = searchPool;
+        copy.splitDepth = splitDepth;
+        copy.bidirectionalSearch = bidirectionalSearch;
+        copy.searchDepthLimit = searchDepthLimit;
+        copy.searchMaxExpanded = searchMaxExpanded;
+        copy.contractionHierarchy = contractionHierarchy;
+        copy.frozen = true;
+        // same content, same version
+        copy.version = version;
+        return copy;
+    }
+
+    /**
+     * Creates a frozen graph from its index, e.g. read from a snapshot.
+     */
+    @NotNull
+    static ConnectionGraph frozen(@NotNull final IndexedGraph index, @NotNull final List<Airport> nodes,
+                                  @Nullable final ContractionHierarchy hierarchy) {
+        final ConnectionGraph graph = new ConnectionGraph();
+        for (final Airport node : nodes) {
+            graph.addNode(node);
+        }
+        graph.edges = null;
+        graph.outgoingEdges = null;
+        graph.index = index;
+        graph.contractionHierarchy = hierarchy;
+        graph.frozen = true;
+        return graph;
+    }
+
+    /**
+     * Writes a binary snapshot of this graph, which {@link #readSnapshot(File)} reads without parsing every segment.
+     * The contraction hierarchy is written if it was built, settings and precomputed trips are not.
+     *
+     * @param file the file to write, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void writeSnapshot(@NotNull final File file) throws IOException {
+        GraphSnapshot.write(getIndex(), nodes, contractionHierarchy, file);
+    }
+
+    /**
+     * Reads a graph from a snapshot written by {@link #writeSnapshot(File)}. The file is mapped in memory,
+     * and the segments are copied to the arrays of the graph. The graph is frozen, since it only has
+     * the int indexed representation of its segments. If the snapshot has a contraction hierarchy,
+     * the graph uses it, see {@link #buildContractionHierarchy()}.
+     *
+     * @param file a snapshot
+     * @return a frozen graph, with the segments grouped by source airport
+     * @throws IOException if the file cannot be read, or it is not a valid snapshot
+     */
+    @NotNull
+    public static ConnectionGraph readSnapshot(@NotNull final File file) throws IOException {
+        final long start = System.nanoTime();
+        final ConnectionGraph graph = GraphSnapshot.read(file);
+        Metrics.registry().timer("graph.snapshot.read").record(System.nanoTime() - start);
+        return graph;
+    }
+
+    /**
+     * Gets the version stamp of the content of this graph. The stamp changes every time a node or edge is added,
+     * removed or repriced, and no two graphs share a stamp unless one is a frozen copy of the other, so it can be used to detect
+     * that results computed on a graph are no longer valid.
+     *
+     * @return the version stamp of this graph.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if this graph cannot be modified anymore.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Makes the searches bounded by price and stops run in parallel on the given pool.
+     * A search is split in one task per segment that can be taken from the source airport,
+     * and these tasks are split again until their trips have {@code splitDepth} segments.
+     * Trips are found in the same order as with the sequential search. A consumer gets the trips of every
+     * task from the source airport once that task and the ones before it are done, on a thread of {@code pool},
+     * and when it stops the search, the tasks left are cancelled.
+     * This does not change the content of the graph, so it can be called on a frozen graph,
+     * e.g. one read from a snapshot, before it is shared with other threads.
+     *
+     * @param pool a fork join pool, or null to search trips sequentially
+     * @param splitDepth number of segments up to which searches are split, at least 1
+     */
+    public void setParallelSearch(@Nullable final ForkJoinPool pool, final int splitDepth) {
+        if (splitDepth < 1) {
+            throw new IllegalArgumentException("Split depth must be at least 1: " + splitDepth);
+        }
+        this.searchPool = pool;
+        this.splitDepth = splitDepth;
+    }
+
+    /**
+     * Makes {@link #getCheapestTrip(Airport, Airport)} search from both airports at once, forwards from the source
+     * and backwards from the destination, until both searches meet. On large graphs this settles far fewer
+     * airports than searching from the source only, and the trip found costs the same, but among trips of the
+     * same price it may find another one. Precomputed trips are still used when there are some.
+     * Like {@link #setParallelSearch(ForkJoinPool, int)}, this can be called on a frozen graph before it is shared
+     * with other threads.
+     *
+     * @param bidirectional true to search from both airports, false to search from the source only
+     */
+    public void setBidirectionalSearch(final boolean bidirectional) {
+        this.bidirectionalSearch = bidirectional;
+    }
+
+    /**
+     * Limits the searches of all trips, i.e., {@link #getAllTrips(Airport, Airport, boolean, DFSValidator)} and
+     * {@link #getAllTrips(Airport, Airport, boolean, int, int)}, and of the K cheapest trips, i.e.,
+     * {@link #getCheapestTrips(Airport, Airport, int, boolean)}, so that searches with generous limits, such as
+     * loops and a high price, do not run for hours. Trips are not extended past {@code depthLimit} segments, and a
+     * search stops once it has flown {@code maxExpanded} segments, i.e., extended trips that many times. Searches
+     * stopped by these limits are truncated: the trips they found are returned, other trips may be missing, and
+     * consumers are told so by {@link TripConsumer#truncated()}. Searches keep the current trip on a stack in the heap,
+     * so even without limits, long trips do not overflow the stack of the thread.
+     * Like {@link #setParallelSearch(ForkJoinPool, int)}, this can be called on a frozen graph before it is shared
+     * with other threads.
+     *
+     * @param depthLimit maximum number of segments of a trip, {@link Integer#MAX_VALUE} for no limit
+     * @param maxExpanded maximum number of segments flown by a search, {@link Long#MAX_VALUE} for no limit
+     */
+    public void setSearchLimits(final int depthLimit, final long maxExpanded) {
+        if (depthLimit < 1 || maxExpanded < 1) {
+            throw new IllegalArgumentException("Search limits must be at least 1: " + depthLimit + ", " + maxExpanded);
+        }
+        this.searchDepthLimit = depthLimit;
+        this.searchMaxExpanded = maxExpanded;
+    }
+
+    /**
+     * Gets all the nodes (airports) in this graph, in the order they were added.
+     * The returned set cannot be modified, use {@link #addNode(Airport)} instead.
      *
      * @return a list of airports.
      */
     @NotNull
     public Set<Airport> getNodes() {
-        return nodes;
+        return new AbstractSet<Airport>() {
+            @Override
+            public boolean contains(final Object o) {
+                return o instanceof Airport && containsNode((Airport) o);
+            }
+
+            @Override
+            public Iterator<Airport> iterator() {
+                return Collections.unmodifiableList(nodes).iterator();
+            }
+
+            @Override
+            public int size() {
+                return nodes.size();
+            }
+        };
+    }
+
+    /**
+     * @param airport an airport
+     * @return true if {@code airport} is a node of this graph
+     */
+    public boolean containsNode(@NotNull final Airport airport) {
+        return nodeIds.get(airport.getId());
     }
 
     /**
      * Gets all the edges (flight segments) in this graph.
+     * The returned list cannot be modified, use {@link #addEdge(FlightSegment)} instead.
+     * In a frozen graph, edges are grouped by source airport.
      *
      * @return a list of flight segments.
      */
     @NotNull
     public List<FlightSegment> getEdges() {
-        return edges;
+        return frozen ? index.getSegments() : Collections.unmodifiableList(edges);
+    }
+
+    /**
+     * Gets all the edges (flight segments) departing from the given airport, in the order they were added.
+     *
+     * @param airport a source airport
+     * @return a list of flight segments, empty if no segment departs from {@code airport}.
+     */
+    @NotNull
+    public List<FlightSegment> getOutgoingEdges(@NotNull final Airport airport) {
+        if (frozen) {
+            return containsNode(airport) ? index.getOutgoingSegments(airport.getId()) : Collections.emptyList();
+        }
+        final List<FlightSegment> segments = airport.getId() < outgoingEdges.size() ? outgoingEdges.get(airport.getId()) : null;
+        return segments == null ? Collections.emptyList() : Collections.unmodifiableList(segments);
     }
 
     /**
@@ -56,7 +338,16 @@ public final class ConnectionGraph {
      * @param airport an Airport
      */
     public void addNode(@NotNull  final Airport airport) {
-        this.nodes.add(airport);
+        checkNotFrozen();
+        if (!containsNode(airport)) {
+            this.nodes.add(airport);
+            this.nodeIds.set(airport.getId());
+            if (index != null && airport.getId() >= index.airports.length) {
+                // the index only has the airports created before it was built
+                this.index = null;
+            }
+            changed(-1, -1);
+        }
     }
 
     /**
@@ -66,11 +357,267 @@ public final class ConnectionGraph {
      * @param segment a valid segment
      */
     public void addEdge(@NotNull  final FlightSegment segment) {
+        checkNotFrozen();
         // add nodes just in case
-        this.nodes.add(segment.getSource());
-        this.nodes.add(segment.getDestination());
-        // now add segment
+        addNode(segment.getSource());
+        addNode(segment.getDestination());
+        // now add segment, and index it by its source
         this.edges.add(segment);
+        final int source = segment.getSource().getId();
+        while (outgoingEdges.size() <= source) {
+            outgoingEdges.add(null);
+        }
+        if (outgoingEdges.get(source) == null) {
+            outgoingEdges.set(source, new ArrayList<>());
+        }
+        outgoingEdges.get(source).add(segment);
+        this.index = null;
+        updateCheapestTrips(source, segment.getDestination().getId(), -1, segment.getPrice());
+        changed(source, segment.getDestination().getId());
+    }
+
+    /**
+     * Removes a segment from this graph: the first one added with the same airports and price.
+     * Its airports are kept, even if they have no segment anymore.
+     *
+     * @param segment a segment
+     * @return true if the segment was found and removed
+     */
+    public boolean removeEdge(@NotNull final FlightSegment segment) {
+        checkNotFrozen();
+        final int position = findOutgoingEdge(segment);
+        if (position < 0) {
+            return false;
+        }
+        final int source = segment.getSource().getId();
+        removeFromEdges(outgoingEdges.get(source).remove(position));
+        this.index = null;
+        updateCheapestTrips(source, segment.getDestination().getId(), segment.getPrice(), -1);
+        changed(source, segment.getDestination().getId());
+        return true;
+    }
+
+    /**
+     * Changes the price of a segment of this graph: the first one added with the same airports and price.
+     * The segment is replaced by a new one, at the same position. The int indexed view of the graph is
+     * updated in place, unless it is shared with a frozen copy.
+     *
+     * @param segment a segment
+     * @param price the new price of the segment
+     * @return true if the segment was found and repriced
+     */
+    public boolean updatePrice(@NotNull final FlightSegment segment, final int price) {
+        checkNotFrozen();
+        final int position = findOutgoingEdge(segment);
+        if (position < 0) {
+            return false;
+        }
+        final int source = segment.getSource().getId();
+        final int destination = segment.getDestination().getId();
+        final FlightSegment updated = new FlightSegment(segment.getSource(), segment.getDestination(), price);
+        final FlightSegment old = outgoingEdges.get(source).set(position, updated);
+        edges.set(edges.indexOf(old), updated);
+        // trips are checked before the index changes, since they may use it
+        updateCheapestTrips(source, destination, old.getPrice(), price);
+        if (index != null) {
+            if (indexShared) {
+                index = index.withPrice(index.firstSegment[source] + position, price);
+                indexShared = false;
+            } else {
+                index.prices[index.firstSegment[source] + position] = price;
+            }
+        }
+        changed(source, destination);
+        return true;
+    }
+
+    /**
+     * @return the position of the first segment like {@code segment} in the outgoing edges of its source, or -1
+     */
+    private int findOutgoingEdge(@NotNull final FlightSegment segment) {
+        final int source = segment.getSource().getId();
+        final List<FlightSegment> outgoing = source < outgoingEdges.size() ? outgoingEdges.get(source) : null;
+        if (outgoing != null) {
+            for (int i = 0; i < outgoing.size(); i++) {
+                final FlightSegment edge = outgoing.get(i);
+                if (edge.getDestination() == segment.getDestination() && edge.getPrice() == segment.getPrice()) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void removeFromEdges(@NotNull final FlightSegment segment) {
+        for (int i = 0; i < edges.size(); i++) {
+            if (edges.get(i) == segment) {
+                edges.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Discards the precomputed cheapest trips affected by a change of a segment.
+     * @param source id of the source airport of the segment
+     * @param destination id of the destination airport of the segment
+     * @param removedPrice price of the segment before the change, -1 if it was added
+     * @param addedPrice price of the segment after the change, -1 if it was removed
+     */
+    private void updateCheapestTrips(final int source, final int destination, final int removedPrice, final int addedPrice) {
+        if (cheapestTrips == null) {
+            return;
+        }
+        for (int airport = 0; airport < cheapestTrips.length; airport++) {
+            final CheapestTripTree trips = cheapestTrips[airport];
+            if (trips != null && trips.isChangedBy(source, destination, removedPrice, addedPrice)) {
+                cheapestTrips[airport] = null;
+            }
+        }
+    }
+
+    /**
+     * Gives this graph a new version, and records the change.
+     * @param source id of the source airport of the segment changed, -1 if no segment changed
+     * @param destination id of the destination airport of the segment changed, -1 if no segment changed
+     */
+    private void changed(final int source, final int destination) {
+        this.version = versions.incrementAndGet();
+        changes.record(version, source, destination);
+        // built for the previous segments, and too expensive to update
+        contractionHierarchy = null;
+    }
+
+    /**
+     * Checks if the trips between two airports may have changed since a previous version of this graph,
+     * i.e., if a segment changed since then can be part of a trip from {@code src} to {@code dst}.
+     * This is checked on the current graph together with the segments changed (including the removed ones),
+     * so it finds every trip that exists now or existed in the previous version. It may find trips
+     * that existed in neither, so it can tell that trips changed when they did not.
+     *
+     * @param src A source {@link Airport}
+     * @param dst A destination {@link Airport}
+     * @param sinceVersion a previous version of this graph, see {@link #getVersion()}
+     * @return false if the trips from {@code src} to {@code dst} are the same as in {@code sinceVersion},
+     * true if they may have changed, or {@code sinceVersion} is not a recent version of this graph.
+     */
+    public boolean mayHaveChangedTrips(@NotNull final Airport src, @NotNull final Airport dst, final long sinceVersion) {
+        final int first = changes.firstChangeAfter(sinceVersion);
+        if (first < 0) {
+            return true;
+        }
+        if (first == changes.size()) {
+            return false;
+        }
+        final IndexedGraph graph = getIndex();
+        final IndexedGraph changedIndex = changedSegments(first);
+        final BitSet fromSource = new BitSet();
+        fromSource.set(src.getId());
+        reach(graph, changedIndex, fromSource);
+        // airports reached by the changed segments that can be flown from the source
+        final BitSet afterChanges = new BitSet();
+        for (int change = first; change < changes.size(); change++) {
+            final int source = changes.sourceOf(change);
+            if (source >= 0 && fromSource.get(source)) {
+                afterChanges.set(changes.destinationOf(change));
+            }
+        }
+        if (afterChanges.isEmpty()) {
+            return false;
+        }
+        reach(graph, changedIndex, afterChanges);
+        return afterChanges.get(dst.getId());
+    }
+
+    /**
+     * Checks if the segments from an airport to another one may have changed since a previous version of this graph.
+     *
+     * @param src A source {@link Airport}
+     * @param dst A destination {@link Airport}
+     * @param sinceVersion a previous version of this graph, see {@link #getVersion()}
+     * @return false if the segments from {@code src} to {@code dst} are the same as in {@code sinceVersion},
+     * true if they may have changed, or {@code sinceVersion} is not a recent version of this graph.
+     */
+    public boolean mayHaveChangedSegments(@NotNull final Airport src, @NotNull final Airport dst, final long sinceVersion) {
+        final int first = changes.firstChangeAfter(sinceVersion);
+        if (first < 0) {
+            return true;
+        }
+        for (int change = first; change < changes.size(); change++) {
+            if (changes.sourceOf(change) == src.getId() && changes.destinationOf(change) == dst.getId()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return an index with the segments changed from the given change on, without their prices
+     */
+    @NotNull
+    private IndexedGraph changedSegments(final int first) {
+        final Airport[] airports = Airport.values();
+        final int[] firstSegment = new int[airports.length + 1];
+        for (int change = first; change < changes.size(); change++) {
+            if (changes.sourceOf(change) >= 0) {
+                firstSegment[changes.sourceOf(change) + 1]++;
+            }
+        }
+        for (int airport = 0; airport < airports.length; airport++) {
+            firstSegment[airport + 1] += firstSegment[airport];
+        }
+        final int[] next = Arrays.copyOf(firstSegment, airports.length);
+        final int[] destinations = new int[firstSegment[airports.length]];
+        for (int change = first; change < changes.size(); change++) {
+            if (changes.sourceOf(change) >= 0) {
+                destinations[next[changes.sourceOf(change)]++] = changes.destinationOf(change);
+            }
+        }
+        return new IndexedGraph(airports, firstSegment, destinations, new int[destinations.length]);
+    }
+
+    /**
+     * Adds to {@code reached} every airport that can be reached from it with the segments of both graphs.
+     */
+    private static void reach(@NotNull final IndexedGraph graph, @NotNull final IndexedGraph changed, @NotNull final BitSet reached) {
+        final int[] queue = new int[changed.airports.length];
+        int size = 0;
+        for (int airport = reached.nextSetBit(0); airport >= 0; airport = reached.nextSetBit(airport + 1)) {
+            queue[size++] = airport;
+        }
+        for (int head = 0; head < size; head++) {
+            size = reachFrom(graph, queue[head], reached, queue, size);
+            size = reachFrom(changed, queue[head], reached, queue, size);
+        }
+    }
+
+    /**
+     * Adds the airports reached by the segments departing from {@code airport} to {@code reached} and {@code queue}.
+     * @return the new size of the queue
+     */
+    private static int reachFrom(@NotNull final IndexedGraph graph,
+                                 final int airport,
+                                 @NotNull final BitSet reached,
+                                 @NotNull final int[] queue,
+                                 final int size) {
+        if (airport >= graph.airports.length) {
+            return size;
+        }
+        int newSize = size;
+        for (int segment = graph.firstSegment[airport]; segment < graph.firstSegment[airport + 1]; segment++) {
+            final int next = graph.destinations[segment];
+            if (!reached.get(next)) {
+                reached.set(next);
+                queue[newSize++] = next;
+            }
+        }
+        return newSize;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException("A frozen connection graph cannot be modified");
+        }
     }
 
     /**
@@ -92,42 +639,424 @@ public final class ConnectionGraph {
                                   final boolean loopsAllowed,
                                   @NotNull final DFSValidator stopSearch) {
         final List<Trip> result = new ArrayList<>();
-        Trip currentTrip = new Trip();
-        for (final FlightSegment edge : getEdges()) {
-            if (edge.getSource().equals(src)) {
-                currentTrip.addSegment(edge);
-                result.addAll(getAllTripsTemp(currentTrip, edge.getDestination(), dst, loopsAllowed, stopSearch));
+        getAllTrips(src, dst, loopsAllowed, stopSearch, result::add);
+        return result;
+    }
+
+    /**
+     * Searches all {@link Trip} between {@code src} and {@code dst}, like
+     * {@link #getAllTrips(Airport, Airport, boolean, DFSValidator)}, but passes every trip to {@code consumer}
+     * as soon as it is found instead of collecting them.
+     * The search is a depth first search on an explicit stack: the current trip, and the segments left to try
+     * from every airport of it, so the depth of the trips is only bounded by the heap and the limits of the
+     * search, see {@link #setSearchLimits(int, long)}.
+     * @param src A source {@link Airport}
+     * @param dst A destination {@link Airport}
+     * @param loopsAllowed True if loops are allowed in this search. Note that a proper condition must be used in {@code stopSearch} to avoid infinite loops
+     * @param stopSearch a predicate that determines if we should keep searching or not.
+     * @param consumer receives the trips found, and can stop the search
+     * @return true if the search was completed, false if it was stopped by {@code consumer} or truncated by the limits
+     */
+    public boolean getAllTrips(@NotNull  final Airport src,
+                               @NotNull  final Airport dst,
+                               final boolean loopsAllowed,
+                               @NotNull final DFSValidator stopSearch,
+                               @NotNull final TripConsumer consumer) {
+        final Trip currentTrip = new Trip();
+        // segments leaving the airport reached at every depth, and the next one to try
+        final List<List<FlightSegment>> segments = new ArrayList<>();
+        int[] nextSegment = new int[16];
+        segments.add(getOutgoingEdges(src));
+        int depth = 0;
+        long expanded = 0;
+        boolean truncated = false;
+        while (true) {
+            final List<FlightSegment> candidates = segments.get(depth);
+            if (nextSegment[depth] == candidates.size()) {
+                // every segment was tried from this airport, go back
+                if (depth == 0) {
+                    break;
+                }
+                segments.remove(depth--);
+                currentTrip.removeLastSegment();
+                continue;
+            }
+            final FlightSegment edge = candidates.get(nextSegment[depth]++);
+            // segments leaving the source are always taken, the trip is checked once it reaches dst
+            if (depth > 0 && !loopsAllowed && currentTrip.containsAirport(edge.getDestination())) {
+                continue; // do not allow other loops
+            }
+            currentTrip.addSegment(edge);
+            if (depth > 0 && !stopSearch.continueSearch(currentTrip)) {
+                currentTrip.removeLastSegment();
+                continue; // if current trip is no longer valid, disregard
+            }
+            if (depth >= searchDepthLimit || expanded == searchMaxExpanded) {
                 currentTrip.removeLastSegment();
+                truncated = true;
+                if (expanded == searchMaxExpanded) {
+                    break;
+                }
+                continue;
+            }
+            expanded++;
+            if (edge.getDestination().equals(dst) && (depth > 0 || stopSearch.continueSearch(currentTrip))) {
+                // clone trip, otherwise changes to trip will affect the final result
+                if (!consumer.accept(currentTrip.clone())) {
+                    return false;
+                }
+            }
+            // keep iterating from the destination of the segment
+            depth++;
+            if (depth == nextSegment.length) {
+                nextSegment = Arrays.copyOf(nextSegment, depth * 2);
             }
+            nextSegment[depth] = 0;
+            segments.add(getOutgoingEdges(edge.getDestination()));
         }
-        return result;
+        if (truncated) {
+            Metrics.registry().counter("search.trips.truncated").increment();
+            consumer.truncated();
+        }
+        return !truncated;
     }
 
+    /**
+     * Searches a list of all {@link Trip} between {@code src} and {@code dst} costing less than {@code priceLimit}
+     * and having at most {@code maxStops} stops.
+     * It finds the same trips, in the same order, as {@link #getAllTrips(Airport, Airport, boolean, DFSValidator)}
+     * with the equivalent validator, but the search works on airport ids and primitive values, and only the trips
+     * found are allocated.
+     * @param src A source {@link Airport}
+     * @param dst A destination {@link Airport}
+     * @param loopsAllowed True if loops are allowed in this search. Note that a proper limit must be used to avoid infinite loops
+     * @param priceLimit trips must cost less than this price, {@link Integer#MAX_VALUE} for no limit
+     * @param maxStops maximum number of stops of a trip, {@link Integer#MAX_VALUE} for no limit
+     * @return a list of trips.
+     */
     @NotNull
-    private List<Trip> getAllTripsTemp(@NotNull final Trip currentTrip,
-                                       @NotNull final Airport src,
-                                       @NotNull final Airport dst,
-                                       final boolean loopsAllowed,
-                                       @NotNull final DFSValidator stopSearch) {
+    public List<Trip> getAllTrips(@NotNull final Airport src,
+                                  @NotNull final Airport dst,
+                                  final boolean loopsAllowed,
+                                  final int priceLimit,
+                                  final int maxStops) {
         final List<Trip> result = new ArrayList<>();
+        getAllTrips(src, dst, loopsAllowed, priceLimit, maxStops, result::add);
+        return result;
+    }
 
-        if (src.equals(dst) && stopSearch.continueSearch(currentTrip)) {
-            result.add(currentTrip.clone()); // clone trip, otherwise changes to trip will affect the final result
+    /**
+     * Searches all {@link Trip} between {@code src} and {@code dst} costing less than {@code priceLimit}
+     * and having at most {@code maxStops} stops, like {@link #getAllTrips(Airport, Airport, boolean, int, int)},
+     * but passes every trip to {@code consumer} as soon as it is found instead of collecting them.
+     * @param src A source {@link Airport}
+     * @param dst A destination {@link Airport}
+     * @param loopsAllowed True if loops are allowed in this search. Note that a proper limit must be used to avoid infinite loops
+     * @param priceLimit trips must cost less than this price, {@link Integer#MAX_VALUE} for no limit
+     * @param maxStops maximum number of stops of a trip, {@link Integer#MAX_VALUE} for no limit
+     * @param consumer receives the trips found, and can stop the search
+     * @return true if the search was completed, false if it was stopped by {@code consumer} or truncated by the limits
+     */
+    public boolean getAllTrips(@NotNull final Airport src,
+                               @NotNull final Airport dst,
+                               final boolean loopsAllowed,
+                               final int priceLimit,
+                               final int maxStops,
+                               @NotNull final TripConsumer consumer) {
+        if (!containsNode(src) || !containsNode(dst)) {
+            return true;
         }
+        final int maxSegments = maxStops == Integer.MAX_VALUE ? Integer.MAX_VALUE : maxStops + 1;
+        final IndexedGraph graph = getIndex();
+        // below a price, trips are pruned as soon as their price plus the cheapest way to dst reaches it
+        final long[] pricesToDestination = priceLimit == Integer.MAX_VALUE ? null
+                : CheapestTripSearch.searchPricesTo(graph, dst.getId(), priceLimit);
+        if (searchPool == null) {
+            return new TripSearch(graph, dst.getId(), loopsAllowed, priceLimit, maxSegments, pricesToDestination,
+                    searchDepthLimit, new SearchBudget(searchMaxExpanded)).run(src.getId(), consumer);
+        }
+        final ParallelTripSearch search = new ParallelTripSearch(graph, src.getId(), dst.getId(), loopsAllowed,
+                priceLimit, maxSegments, pricesToDestination, searchDepthLimit, new SearchBudget(searchMaxExpanded),
+                splitDepth, new int[0], consumer);
+        searchPool.invoke(search);
+        if (search.isTruncated()) {
+            consumer.truncated();
+        }
+        return !search.isStopped() && !search.isTruncated();
+    }
 
-        for (final FlightSegment edge : getEdges()) {
-            if (edge.getSource().equals(src) &&
-                    (loopsAllowed || !currentTrip.containsAirport(edge.getDestination()))) { // do not allow other loops
-                currentTrip.addSegment(edge);
-                if (stopSearch.continueSearch(currentTrip)) { // if current trip is no longer valid, disregard
-                    // keep iterating
-                    result.addAll(getAllTripsTemp(currentTrip, edge.getDestination(), dst, loopsAllowed, stopSearch));
+    /**
+     * @return the int indexed view of this graph, building it if needed.
+     */
+    @NotNull
+    private IndexedGraph getIndex() {
+        if (index == null) {
+            final long start = System.nanoTime();
+            index = new IndexedGraph(outgoingEdges, edges.size());
+            indexShared = false;
+            Metrics.registry().timer("graph.index.build").record(System.nanoTime() - start);
+        }
+        return index;
+    }
+
+    /**
+     * Counts the trips between {@code src} and {@code dst} having between {@code minSegments} and
+     * {@code maxSegments} segments (both inclusive). Loops are allowed, so this counts the same trips
+     * that {@link #getAllTrips(Airport, Airport, boolean, DFSValidator)} would find when bounding the
+     * number of segments, but without building them: the number of trips reaching every airport
+     * with n segments is computed from the ones with n-1 segments.
+     * @param src A source {@link Airport}
+     * @param dst A destination {@link Airport}
+     * @param minSegments minimum number of segments of a trip, at least 1
+     * @param maxSegments maximum number of segments of a trip
+     * @return the number of trips
+     * @throws ArithmeticException if the number of trips does not fit in a long
+     */
+    public long countTrips(@NotNull final Airport src,
+                           @NotNull final Airport dst,
+                           final int minSegments,
+                           final int maxSegments) {
+        if (!containsNode(src) || !containsNode(dst)) {
+            return 0;
+        }
+        final IndexedGraph graph = getIndex();
+        final int airports = graph.airports.length;
+        // trips reaching every airport with the current number of segments
+        long[] current = new long[airports];
+        long[] next = new long[airports];
+        current[src.getId()] = 1;
+        long result = 0;
+        // a long, so that the loop ends when maxSegments is Integer.MAX_VALUE
+        for (long segments = 1; segments <= maxSegments; segments++) {
+            Arrays.fill(next, 0);
+            boolean reachable = false;
+            for (int airport = 0; airport < airports; airport++) {
+                final long trips = current[airport];
+                if (trips == 0) {
+                    continue;
                 }
-                currentTrip.removeLastSegment();
+                for (int segment = graph.firstSegment[airport]; segment < graph.firstSegment[airport + 1]; segment++) {
+                    final int index = graph.destinations[segment];
+                    next[index] = Math.addExact(next[index], trips);
+                    reachable = true;
+                }
+            }
+            if (!reachable) {
+                break; // no more trips can be found with more segments
             }
+            if (segments >= minSegments) {
+                result = Math.addExact(result, next[dst.getId()]);
+            }
+            final long[] swap = current;
+            current = next;
+            next = swap;
+        }
+        return result;
+    }
+
+    /**
+     * Searches the cheapest {@link Trip} between {@code src} and {@code dst}, using Dijkstra's algorithm
+     * on the prices of the segments, which are never negative.
+     * If {@code src} and {@code dst} are the same airport, the cheapest round trip is searched, i.e.,
+     * a trip with at least one segment that departs from and returns to {@code src}.
+     * Precomputed trips are used first, then the contraction hierarchy, see {@link #buildContractionHierarchy()}.
+     * @param src A source {@link Airport}
+     * @param dst A destination {@link Airport}
+     * @return the cheapest trip, or an empty optional if {@code dst} cannot be reached from {@code src}.
+     */
+    @NotNull
+    public Optional<Trip> getCheapestTrip(@NotNull final Airport src, @NotNull final Airport dst) {
+        if (!containsNode(src) || !containsNode(dst)) {
+            return Optional.empty();
+        }
+        final CheapestTripTree trips = getPrecomputedCheapestTrips(src.getId());
+        if (trips != null) {
+            return trips.getTrip(dst.getId());
+        }
+        if (contractionHierarchy != null && !src.equals(dst)) {
+            return contractionHierarchy.search(src.getId(), dst.getId());
         }
+        if (bidirectionalSearch) {
+            return CheapestTripSearch.searchBidirectional(getIndex(), src.getId(), dst.getId());
+        }
+        return CheapestTripSearch.search(getIndex(), src.getId(), dst.getId());
+    }
 
+    /**
+     * Searches the cheapest {@link Trip} from {@code src} to every airport, with a single search, like
+     * {@link #getCheapestTrip(Airport, Airport)} does for every destination. The trip to {@code src} itself
+     * is its cheapest round trip. If the trips from {@code src} are precomputed, they are not searched again.
+     * @param src A source {@link Airport}
+     * @return the cheapest trip to every airport that can be reached from {@code src}, in the order of {@link #getNodes()}
+     */
+    @NotNull
+    public Map<Airport, Trip> getCheapestTrips(@NotNull final Airport src) {
+        final Map<Airport, Trip> result = new LinkedHashMap<>();
+        if (!containsNode(src)) {
+            return result;
+        }
+        CheapestTripTree trips = getPrecomputedCheapestTrips(src.getId());
+        if (trips == null) {
+            trips = CheapestTripSearch.searchAll(getIndex(), src.getId());
+        }
+        for (final Airport dst : getNodes()) {
+            final Optional<Trip> trip = trips.getTrip(dst.getId());
+            if (trip.isPresent()) {
+                result.put(dst, trip.get());
+            }
+        }
         return result;
     }
 
+    /**
+     * Searches the cheapest {@link Trip} from {@code src} to each of the given airports, with a single search
+     * that stops once the trips to all of them are found, instead of one search per destination as
+     * {@link #getCheapestTrip(Airport, Airport)} would do. If the trips from {@code src} are precomputed,
+     * they are not searched again.
+     * @param src A source {@link Airport}
+     * @param destinations destination airports, which may be repeated
+     * @return the cheapest trip to every destination, or an empty optional for those that cannot be reached,
+     * in the order of {@code destinations}
+     */
+    @NotNull
+    public Map<Airport, Optional<Trip>> getCheapestTrips(@NotNull final Airport src, @NotNull final Collection<Airport> destinations) {
+        final Map<Airport, Optional<Trip>> result = new LinkedHashMap<>();
+        CheapestTripTree trips = null;
+        if (containsNode(src)) {
+            trips = getPrecomputedCheapestTrips(src.getId());
+            if (trips == null) {
+                final IndexedGraph graph = getIndex();
+                final BitSet targets = new BitSet();
+                for (final Airport dst : destinations) {
+                    if (containsNode(dst) && dst.getId() < graph.airports.length) {
+                        targets.set(dst.getId());
+                    }
+                }
+                trips = CheapestTripSearch.searchAll(graph, src.getId(), targets);
+            }
+        }
+        for (final Airport dst : destinations) {
+            result.put(dst, trips == null || !containsNode(dst) ? Optional.empty() : trips.getTrip(dst.getId()));
+        }
+        return result;
+    }
+
+    /**
+     * Searches the {@code count} cheapest {@link Trip} between {@code src} and {@code dst}, in order of price.
+     * This finds the first trips that sorting {@link #getAllTrips(Airport, Airport, boolean, int, int)} by price
+     * would give, without guessing a price limit nor finding every trip below it: the search only expands trips
+     * that can reach {@code dst} below the price of the last trip returned, so its cost grows with {@code count}.
+     * Among trips of the same price, it may return others than sorting would.
+     * With loops, trips from an airport to itself are round trips, and trips can go on through {@code dst}.
+     * Without loops, no airport is visited twice, so there are no round trips.
+     * @param src A source {@link Airport}
+     * @param dst A destination {@link Airport}
+     * @param count maximum number of trips
+     * @param loopsAllowed True if an airport can be visited more than once
+     * @return the cheapest trips, fewer than {@code count} if there are no more
+     */
+    @NotNull
+    public List<Trip> getCheapestTrips(@NotNull final Airport src,
+                                       @NotNull final Airport dst,
+                                       final int count,
+                                       final boolean loopsAllowed) {
+        final List<Trip> result = new ArrayList<>();
+        getCheapestTrips(src, dst, count, loopsAllowed, result::add);
+        return result;
+    }
+
+    /**
+     * Searches the {@code count} cheapest {@link Trip} between {@code src} and {@code dst}, like
+     * {@link #getCheapestTrips(Airport, Airport, int, boolean)}, but passes every trip to {@code consumer},
+     * in order of price, as soon as it is found instead of collecting them.
+     * The search is bounded by the limits of {@link #setSearchLimits(int, long)}, as searches of all trips are.
+     * @param src A source {@link Airport}
+     * @param dst A destination {@link Airport}
+     * @param count maximum number of trips
+     * @param loopsAllowed True if an airport can be visited more than once
+     * @param consumer receives the cheapest trips, and can stop the search
+     * @return true if the search was completed, false if it was stopped by {@code consumer} or truncated by the limits
+     */
+    public boolean getCheapestTrips(@NotNull final Airport src,
+                                    @NotNull final Airport dst,
+                                    final int count,
+                                    final boolean loopsAllowed,
+                                    @NotNull final TripConsumer consumer) {
+        if (!containsNode(src) || !containsNode(dst)) {
+            return true;
+        }
+        return KCheapestTripSearch.search(getIndex(), src.getId(), dst.getId(), count, loopsAllowed,
+                searchDepthLimit, searchMaxExpanded, consumer);
+    }
+
+    /**
+     * Gets the precomputed cheapest trips from an airport, searching them again if they were discarded by a change.
+     * @param src id of the source airport
+     * @return the cheapest trips from {@code src}, or null if they are not precomputed
+     */
+    @Nullable
+    private CheapestTripTree getPrecomputedCheapestTrips(final int src) {
+        if (cheapestTrips == null || src >= cheapestTrips.length) {
+            return null;
+        }
+        CheapestTripTree trips = cheapestTrips[src];
+        if (trips == null && !frozen) {
+            // discarded by a change, frozen graphs are not modified so they search the trip instead
+            trips = CheapestTripSearch.searchAll(getIndex(), src);
+            cheapestTrips[src] = trips;
+        }
+        return trips;
+    }
+
+    /**
+     * Precomputes the cheapest trips between every pair of airports, running a search from every airport,
+     * so that {@link #getCheapestTrip(Airport, Airport)} only needs to rebuild the trip.
+     * For every pair of airports the price and last segment of the cheapest trip is kept, which takes
+     * 12 bytes per pair of airports. When a segment changes, the trips from the airports affected by the change
+     * are discarded, and searched again when needed. The precomputed trips are kept by {@link #freeze()}. Like {@link #setParallelSearch(ForkJoinPool, int)}, this can be called
+     * on a frozen graph before it is shared with other threads.
+     */
+    public void precomputeCheapestTrips() {
+        final IndexedGraph graph = getIndex();
+        final CheapestTripTree[] trees = new CheapestTripTree[graph.airports.length];
+        for (int airport = 0; airport < trees.length; airport++) {
+            if (graph.firstSegment[airport] < graph.firstSegment[airport + 1]) {
+                trees[airport] = CheapestTripSearch.searchAll(graph, airport);
+            }
+        }
+        this.cheapestTrips = trees;
+    }
+
+    /**
+     * @return true if the cheapest trips between every pair of airports are precomputed.
+     */
+    public boolean hasPrecomputedCheapestTrips() {
+        return cheapestTrips != null;
+    }
+
+    /**
+     * Builds a contraction hierarchy of this graph, used by {@link #getCheapestTrip(Airport, Airport)} unless the
+     * trips are precomputed: airports are ranked, and shortcuts are added so that cheapest trips are found by
+     * searching only the segments and shortcuts going up the ranks, from both airports. Queries then settle a few
+     * hundred airports even on large graphs, at the cost of the preprocessing and of the memory of the shortcuts.
+     * Among trips of the same price, it may find another one than the search from the source.
+     * The hierarchy is discarded as soon as this graph changes, so it is meant for graphs that are not modified
+     * anymore. It is kept by {@link #freeze()} and written in snapshots. Like {@link #setParallelSearch(ForkJoinPool, int)},
+     * this can be called on a frozen graph before it is shared with other threads.
+     */
+    public void buildContractionHierarchy() {
+        final long start = System.nanoTime();
+        final ContractionHierarchy hierarchy = ContractionHierarchy.build(getIndex());
+        Metrics.registry().timer("graph.hierarchy.build").record(System.nanoTime() - start);
+        Metrics.registry().counter("graph.hierarchy.edges").add(hierarchy.edgeCount());
+        this.contractionHierarchy = hierarchy;
+    }
+
+    /**
+     * @return true if this graph has a contraction hierarchy, see {@link #buildContractionHierarchy()}.
+     */
+    public boolean hasContractionHierarchy() {
+        return contractionHierarchy != null;
+    }
+
 }
@@ -0,0 +1,723 @@
+package com.flitetrakr.model;
+
+import com.flitetrakr.metrics.Metrics;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.PriorityQueue;
+
+/**
+ * A contraction hierarchy of an {@link IndexedGraph}, to search cheapest trips between two airports
+ * settling far fewer airports than {@link CheapestTripSearch}.
+ * <p>
+ * Airports are contracted one after the other, least important first: contracting an airport removes it from
+ * the graph, adding a shortcut between every pair of its neighbors whose cheapest trip goes through it.
+ * Every airport gets the rank of its contraction, and the hierarchy keeps the segments of the graph (the cheapest
+ * one between every pair of airports) and the shortcuts. A cheapest trip then goes up the ranks from its source
+ * and down the ranks to its destination, so it is found by two searches that only follow edges going up:
+ * forwards from the source, and backwards from the destination.
+ * <p>
+ * Contracting the last airports of a graph without hierarchy, such as a random graph, adds shortcuts between
+ * most pairs of them, so airports are only contracted until the others have {@link #CORE_GROWTH} times as many
+ * edges between them per airport as the graph. These airports are the core of the hierarchy, and share its highest
+ * rank. The two searches stop at the core, and then search it from where they entered it like
+ * {@link CheapestTripSearch#searchBidirectional(IndexedGraph, int, int)} does.
+ * <p>
+ * The edges of the hierarchy are numbered. An edge is either a segment of the graph, or a shortcut made of
+ * two edges, so trips are rebuilt by unpacking shortcuts down to segments.
+ * The hierarchy is only valid for the graph it was built on: it must be discarded when the graph changes.
+ * Among trips of the same price, it may find another one than {@link CheapestTripSearch}.
+ */
+/* package */ final class ContractionHierarchy {
+    /**
+     * Growth of the average number of edges of the airports not contracted yet, compared to the graph,
+     * above which they are left as the core.
+     */
+    private static final int CORE_GROWTH = 4;
+    /**
+     * Airports settled by a witness search while contracting, see {@link Builder#witnessSearch(int, int, long, int)}.
+     * Searches that stop earlier are faster, but miss some witnesses and add shortcuts that are not needed.
+     */
+    private static final int CONTRACTION_SETTLE_LIMIT = 500;
+    /**
+     * Airports settled by a witness search while computing the priority of an airport.
+     */
+    private static final int PRIORITY_SETTLE_LIMIT = 50;
+
+    /**
+     * The graph, whose segments are referred to by the edges.
+     */
+    final IndexedGraph graph;
+    /**
+     * Rank of every airport by id: airports are contracted in increasing rank, and the airports of the core
+     * have the highest rank.
+     */
+    final int[] rank;
+    /**
+     * Source airport id of every edge.
+     */
+    final int[] edgeSource;
+    /**
+     * Destination airport id of every edge.
+     */
+    final int[] edgeDestination;
+    /**
+     * Price of every edge.
+     */
+    final long[] edgePrice;
+    /**
+     * For a segment, {@code -1 - segment}, and for a shortcut, the first of its two edges.
+     */
+    final int[] edgeFirst;
+    /**
+     * For a segment, -1, and for a shortcut, the second of its two edges.
+     */
+    final int[] edgeSecond;
+
+    /**
+     * Rank of the airports of the core.
+     */
+    private final int coreRank;
+    /**
+     * Edges going up from every airport, i.e., to an airport of higher rank, or between airports of the core:
+     * the ones of airport {@code a} are between {@code firstUpward[a]} (inclusive) and {@code firstUpward[a+1]} (exclusive).
+     */
+    private final int[] firstUpward;
+    private final int[] upwardEdges;
+    /**
+     * Edges arriving at every airport from an airport of higher rank, or between airports of the core,
+     * followed backwards from the destination.
+     */
+    private final int[] firstDownward;
+    private final int[] downwardEdges;
+
+    /**
+     * Creates a hierarchy from its arrays, which are not copied.
+     * @param graph the graph the hierarchy was built on
+     * @param rank rank of every airport by id
+     * @param edgeSource source airport id of every edge
+     * @param edgeDestination destination airport id of every edge
+     * @param edgePrice price of every edge
+     * @param edgeFirst segment or first edge of every edge, see {@link #edgeFirst}
+     * @param edgeSecond second edge of every edge, see {@link #edgeSecond}
+     */
+    ContractionHierarchy(@NotNull final IndexedGraph graph,
+                         @NotNull final int[] rank,
+                         @NotNull final int[] edgeSource,
+                         @NotNull final int[] edgeDestination,
+                         @NotNull final long[] edgePrice,
+                         @NotNull final int[] edgeFirst,
+                         @NotNull final int[] edgeSecond) {
+        this.graph = graph;
+        this.rank = rank;
+        this.edgeSource = edgeSource;
+        this.edgeDestination = edgeDestination;
+        this.edgePrice = edgePrice;
+        this.edgeFirst = edgeFirst;
+        this.edgeSecond = edgeSecond;
+
+        final int airports = rank.length;
+        int highestRank = 0;
+        for (final int airportRank : rank) {
+            highestRank = Math.max(highestRank, airportRank);
+        }
+        coreRank = highestRank;
+        // edges between airports of the core are followed by both searches
+        firstUpward = new int[airports + 1];
+        firstDownward = new int[airports + 1];
+        for (int edge = 0; edge < edgeSource.length; edge++) {
+            if (rank[edgeSource[edge]] <= rank[edgeDestination[edge]]) {
+                firstUpward[edgeSource[edge] + 1]++;
+            }
+            if (rank[edgeSource[edge]] >= rank[edgeDestination[edge]]) {
+                firstDownward[edgeDestination[edge] + 1]++;
+            }
+        }
+        for (int airport = 0; airport < airports; airport++) {
+            firstUpward[airport + 1] += firstUpward[airport];
+            firstDownward[airport + 1] += firstDownward[airport];
+        }
+        upwardEdges = new int[firstUpward[airports]];
+        downwardEdges = new int[firstDownward[airports]];
+        final int[] nextUpward = Arrays.copyOf(firstUpward, airports);
+        final int[] nextDownward = Arrays.copyOf(firstDownward, airports);
+        for (int edge = 0; edge < edgeSource.length; edge++) {
+            if (rank[edgeSource[edge]] <= rank[edgeDestination[edge]]) {
+                upwardEdges[nextUpward[edgeSource[edge]]++] = edge;
+            }
+            if (rank[edgeSource[edge]] >= rank[edgeDestination[edge]]) {
+                downwardEdges[nextDownward[edgeDestination[edge]]++] = edge;
+            }
+        }
+    }
+
+    /**
+     * @return the number of edges of this hierarchy, segments and shortcuts.
+     */
+    int edgeCount() {
+        return edgeSource.length;
+    }
+
+    /**
+     * Builds the hierarchy of a graph.
+     * @param graph a graph
+     * @return its contraction hierarchy
+     */
+    @NotNull
+    static ContractionHierarchy build(@NotNull final IndexedGraph graph) {
+        return new Builder(graph).build();
+    }
+
+    /**
+     * Searches the cheapest trip between two different airports: a search forwards from {@code source} and a search
+     * backwards from {@code destination} go up the ranks until they cannot find a cheaper trip than the cheapest one
+     * found where they meet, then the core is searched from both sides, until the cheapest prices left on both
+     * sides add up to the price of the cheapest trip found.
+     * @param source id of the source airport
+     * @param destination id of the destination airport, other than {@code source}
+     * @return the cheapest trip, or an empty optional if {@code destination} cannot be reached from {@code source}.
+     */
+    @NotNull
+    Optional<Trip> search(final int source, final int destination) {
+        final Query query = new Query(source, destination);
+        query.searchUpwards(Query.FORWARD);
+        query.searchUpwards(Query.BACKWARD);
+        query.searchCore();
+        Metrics.registry().counter("search.hierarchy.searches").increment();
+        Metrics.registry().counter("search.hierarchy.settled").add(query.settledCount);
+        if (query.meetingAirport < 0) {
+            return Optional.empty();
+        }
+
+        // edges from the source to the meeting airport, found backwards, then from there to the destination
+        int[] path = new int[16];
+        int count = 0;
+        for (int airport = query.meetingAirport; airport != source; airport = edgeSource[query.edgeTo[Query.FORWARD][airport]]) {
+            if (count == path.length) {
+                path = Arrays.copyOf(path, count * 2);
+            }
+            path[count++] = query.edgeTo[Query.FORWARD][airport];
+        }
+        for (int i = 0; i < count / 2; i++) {
+            final int swap = path[i];
+            path[i] = path[count - 1 - i];
+            path[count - 1 - i] = swap;
+        }
+        for (int airport = query.meetingAirport; airport != destination; airport = edgeDestination[query.edgeTo[Query.BACKWARD][airport]]) {
+            if (count == path.length) {
+                path = Arrays.copyOf(path, count * 2);
+            }
+            path[count++] = query.edgeTo[Query.BACKWARD][airport];
+        }
+        return Optional.of(unpack(source, path, count));
+    }
+
+    /**
+     * Unpacks the shortcuts of a list of edges, and creates the trip of their segments.
+     */
+    @NotNull
+    private Trip unpack(final int source, @NotNull final int[] path, final int count) {
+        int[] segments = new int[count * 2];
+        int segmentCount = 0;
+        // edges left to unpack, the next one on top
+        int[] stack = new int[Math.max(16, count)];
+        int top = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            stack[top++] = path[i];
+        }
+        while (top > 0) {
+            final int edge = stack[--top];
+            if (edgeFirst[edge] < 0) {
+                if (segmentCount == segments.length) {
+                    segments = Arrays.copyOf(segments, segmentCount * 2);
+                }
+                segments[segmentCount++] = -1 - edgeFirst[edge];
+            } else {
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = edgeSecond[edge];
+                stack[top++] = edgeFirst[edge];
+            }
+        }
+        return graph.toTrip(source, segments, segmentCount);
+    }
+
+    /**
+     * The state of the two searches of {@link #search(int, int)}, by side: forwards from the source,
+     * and backwards from the destination.
+     */
+    private final class Query {
+        static final int FORWARD = 0;
+        static final int BACKWARD = 1;
+
+        /**
+         * Price of the cheapest trip found from the source to every airport, and from every airport to the destination.
+         */
+        final long[][] price = new long[2][];
+        /**
+         * Last edge of the cheapest trip from the source to every airport, and first edge of the cheapest trip
+         * from every airport to the destination.
+         */
+        final int[][] edgeTo = new int[2][];
+        private final Heap[] queue = {new Heap(), new Heap()};
+        /**
+         * Airports of the core reached by every side, and how many there are.
+         */
+        private final int[][] coreEntries = {new int[16], new int[16]};
+        private final int[] coreEntryCount = new int[2];
+
+        long bestPrice = Long.MAX_VALUE;
+        int meetingAirport = -1;
+        long settledCount = 0;
+
+        Query(final int source, final int destination) {
+            for (int side = FORWARD; side <= BACKWARD; side++) {
+                price[side] = new long[rank.length];
+                Arrays.fill(price[side], Long.MAX_VALUE);
+                edgeTo[side] = new int[rank.length];
+            }
+            reach(FORWARD, source, 0, -1);
+            reach(BACKWARD, destination, 0, -1);
+        }
+
+        /**
+         * Runs the search of a side outside of the core, following only edges going up, and stopping at the
+         * airports of the core. Every airport cheaper than the cheapest trip found is settled, so the prices of
+         * the airports of the core reached are final for this part of the search.
+         */
+        void searchUpwards(final int side) {
+            final Heap heap = queue[side];
+            while (!heap.isEmpty() && heap.peekPrice() < bestPrice) {
+                final long currentPrice = heap.peekPrice();
+                final int airport = heap.poll();
+                if (currentPrice > price[side][airport]) {
+                    continue; // a cheaper price was already found for this airport
+                }
+                settledCount++;
+                if (rank[airport] == coreRank) {
+                    if (coreEntryCount[side] == coreEntries[side].length) {
+                        coreEntries[side] = Arrays.copyOf(coreEntries[side], coreEntryCount[side] * 2);
+                    }
+                    coreEntries[side][coreEntryCount[side]++] = airport;
+                } else {
+                    relax(side, airport, currentPrice);
+                }
+            }
+        }
+
+        /**
+         * Searches the core from the airports where both sides entered it, settling an airport of the side with
+         * the cheapest price left each time, until the cheapest prices left of both sides add up to the price of
+         * the cheapest trip found: the core is searched like a graph whose source and destination are linked to
+         * these airports by the trips of the first part.
+         */
+        void searchCore() {
+            for (int side = FORWARD; side <= BACKWARD; side++) {
+                queue[side].clear();
+                for (int i = 0; i < coreEntryCount[side]; i++) {
+                    final int airport = coreEntries[side][i];
+                    queue[side].add(price[side][airport], airport);
+                }
+            }
+            while (!queue[FORWARD].isEmpty() && !queue[BACKWARD].isEmpty()
+                    && queue[FORWARD].peekPrice() + queue[BACKWARD].peekPrice() < bestPrice) {
+                final int side = queue[FORWARD].peekPrice() <= queue[BACKWARD].peekPrice() ? FORWARD : BACKWARD;
+                final long currentPrice = queue[side].peekPrice();
+                final int airport = queue[side].poll();
+                if (currentPrice > price[side][airport]) {
+                    continue;
+                }
+                settledCount++;
+                relax(side, airport, currentPrice);
+            }
+        }
+
+        /**
+         * Follows the edges of an airport settled by a side: edges going up, which are edges of the core
+         * for an airport of the core.
+         */
+        private void relax(final int side, final int airport, final long currentPrice) {
+            final int[] first = side == FORWARD ? firstUpward : firstDownward;
+            final int[] edges = side == FORWARD ? upwardEdges : downwardEdges;
+            for (int i = first[airport]; i < first[airport + 1]; i++) {
+                final int edge = edges[i];
+                final int next = side == FORWARD ? edgeDestination[edge] : edgeSource[edge];
+                final long nextPrice = currentPrice + edgePrice[edge];
+                if (nextPrice < price[side][next]) {
+                    reach(side, next, nextPrice, edge);
+                }
+            }
+        }
+
+        /**
+         * Records a cheaper price of an airport for a side, and the trip through the airport if the other side
+         * reached it too.
+         */
+        private void reach(final int side, final int airport, final long airportPrice, final int edge) {
+            price[side][airport] = airportPrice;
+            edgeTo[side][airport] = edge;
+            queue[side].add(airportPrice, airport);
+            final long otherPrice = price[1 - side][airport];
+            if (otherPrice != Long.MAX_VALUE && airportPrice + otherPrice < bestPrice) {
+                bestPrice = airportPrice + otherPrice;
+                meetingAirport = airport;
+            }
+        }
+    }
+
+    /**
+     * A binary heap of airports by price, where the same airport can be added several times.
+     */
+    private static final class Heap {
+        private long[] prices = new long[64];
+        private int[] airports = new int[64];
+        private int size = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        long peekPrice() {
+            return prices[0];
+        }
+
+        void add(final long price, final int airport) {
+            if (size == prices.length) {
+                prices = Arrays.copyOf(prices, size * 2);
+                airports = Arrays.copyOf(airports, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                if (prices[parent] <= price) {
+                    break;
+                }
+                prices[i] = prices[parent];
+                airports[i] = airports[parent];
+                i = parent;
+            }
+            prices[i] = price;
+            airports[i] = airport;
+        }
+
+        /**
+         * Removes the cheapest airport.
+         * @return its id
+         */
+        int poll() {
+            final int result = airports[0];
+            final long price = prices[--size];
+            final int airport = airports[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && prices[child + 1] < prices[child]) {
+                    child++;
+                }
+                if (price <= prices[child]) {
+                    break;
+                }
+                prices[i] = prices[child];
+                airports[i] = airports[child];
+                i = child;
+            }
+            prices[i] = price;
+            airports[i] = airport;
+            return result;
+        }
+    }
+
+    /**
+     * Contracts the airports of a graph. While contracting, every airport keeps the lists of its edges to and
+     * from the airports not contracted yet, which grow with the shortcuts added.
+     */
+    private static final class Builder {
+        private final IndexedGraph graph;
+        private final int airports;
+
+        private int edgeCount = 0;
+        private int[] edgeSource = new int[64];
+        private int[] edgeDestination = new int[64];
+        private long[] edgePrice = new long[64];
+        private int[] edgeFirst = new int[64];
+        private int[] edgeSecond = new int[64];
+
+        /**
+         * Edges leaving and arriving at every airport, and how many there are.
+         */
+        private final int[][] outgoing;
+        private final int[] outgoingCount;
+        private final int[][] incoming;
+        private final int[] incomingCount;
+        /**
+         * Number of edges between airports not contracted yet.
+         */
+        private long edgesLeft = 0;
+
+        private final boolean[] contracted;
+        /**
+         * Number of neighbors of every airport already contracted, so that contractions are spread over the graph.
+         */
+        private final int[] contractedNeighbors;
+        /**
+         * Level of every airport: one more than the highest level of its neighbors already contracted,
+         * so that the searches go up as few levels as possible.
+         */
+        private final int[] level;
+
+        /**
+         * Prices found by the current witness search, valid for airports whose stamp is the current one.
+         */
+        private final long[] witnessPrice;
+        private final int[] witnessStamp;
+        private int stamp = 0;
+        private final Heap heap = new Heap();
+
+        Builder(@NotNull final IndexedGraph graph) {
+            this.graph = graph;
+            this.airports = graph.airports.length;
+            outgoing = new int[airports][];
+            outgoingCount = new int[airports];
+            incoming = new int[airports][];
+            incomingCount = new int[airports];
+            contracted = new boolean[airports];
+            contractedNeighbors = new int[airports];
+            level = new int[airports];
+            witnessPrice = new long[airports];
+            witnessStamp = new int[airports];
+
+            // the cheapest segment between every pair of airports, the first one of the same price
+            final int[] edgeTo = new int[airports];
+            final int[] edgeToSource = new int[airports];
+            Arrays.fill(edgeToSource, -1);
+            for (int source = 0; source < airports; source++) {
+                for (int segment = graph.firstSegment[source]; segment < graph.firstSegment[source + 1]; segment++) {
+                    final int destination = graph.destinations[segment];
+                    if (destination == source) {
+                        continue; // never part of a cheapest trip between two airports
+                    }
+                    if (edgeToSource[destination] == source) {
+                        final int edge = edgeTo[destination];
+                        if (graph.prices[segment] < edgePrice[edge]) {
+                            edgePrice[edge] = graph.prices[segment];
+                            edgeFirst[edge] = -1 - segment;
+                        }
+                        continue;
+                    }
+                    edgeToSource[destination] = source;
+                    edgeTo[destination] = addEdge(source, destination, graph.prices[segment], -1 - segment, -1);
+                }
+            }
+        }
+
+        @NotNull
+        ContractionHierarchy build() {
+            final int[] rank = new int[airports];
+            // airports by priority, as priority << 32 | airport
+            final PriorityQueue<Long> queue = new PriorityQueue<>();
+            int nextRank = 0;
+            for (int airport = 0; airport < airports; airport++) {
+                if (outgoingCount[airport] == 0 && incomingCount[airport] == 0) {
+                    // not part of any trip
+                    contracted[airport] = true;
+                    rank[airport] = nextRank++;
+                } else {
+                    queue.add(entry(priority(airport), airport));
+                }
+            }
+            final long graphEdges = edgesLeft;
+            final int graphAirports = airports - nextRank;
+            while (!queue.isEmpty() && edgesLeft * graphAirports <= CORE_GROWTH * graphEdges * (airports - nextRank)) {
+                final int airport = (int) (queue.poll() & 0xffffffffL);
+                if (contracted[airport]) {
+                    continue;
+                }
+                // priorities change as neighbors are contracted: contract it now only if it is still the least important
+                final long current = entry(priority(airport), airport);
+                if (!queue.isEmpty() && current > queue.peek()) {
+                    queue.add(current);
+                    continue;
+                }
+                contract(airport);
+                rank[airport] = nextRank++;
+            }
+            for (int airport = 0; airport < airports; airport++) {
+                if (!contracted[airport]) {
+                    rank[airport] = nextRank; // the core
+                }
+            }
+            return new ContractionHierarchy(graph, rank,
+                    Arrays.copyOf(edgeSource, edgeCount), Arrays.copyOf(edgeDestination, edgeCount),
+                    Arrays.copyOf(edgePrice, edgeCount), Arrays.copyOf(edgeFirst, edgeCount),
+                    Arrays.copyOf(edgeSecond, edgeCount));
+        }
+
+        private static long entry(final int priority, final int airport) {
+            return ((long) priority << 32) | airport;
+        }
+
+        /**
+         * Computes the priority of an airport, lower for airports to contract first: the number of shortcuts its
+         * contraction adds minus the number of edges it removes, plus the number of neighbors already contracted
+         * and its level.
+         */
+        private int priority(final int airport) {
+            compact(airport);
+            final int shortcuts = contract(airport, false, PRIORITY_SETTLE_LIMIT);
+            return shortcuts - outgoingCount[airport] - incomingCount[airport] + contractedNeighbors[airport] + level[airport];
+        }
+
+        private void contract(final int airport) {
+            compact(airport);
+            contract(airport, true, CONTRACTION_SETTLE_LIMIT);
+            contracted[airport] = true;
+            edgesLeft -= outgoingCount[airport] + incomingCount[airport];
+            for (int i = 0; i < incomingCount[airport]; i++) {
+                neighborContracted(edgeSource[incoming[airport][i]], airport);
+            }
+            for (int i = 0; i < outgoingCount[airport]; i++) {
+                neighborContracted(edgeDestination[outgoing[airport][i]], airport);
+            }
+        }
+
+        private void neighborContracted(final int neighbor, final int airport) {
+            contractedNeighbors[neighbor]++;
+            level[neighbor] = Math.max(level[neighbor], level[airport] + 1);
+        }
+
+        /**
+         * Finds the shortcuts needed to contract an airport: for every edge arriving at it, a witness search from
+         * its source looks for trips to the destinations of the edges leaving it, which do not go through it.
+         * @param add true to add the shortcuts, false to only count them
+         * @param settleLimit airports settled by every witness search
+         * @return the number of shortcuts
+         */
+        private int contract(final int airport, final boolean add, final int settleLimit) {
+            long maxOutgoing = 0;
+            for (int j = 0; j < outgoingCount[airport]; j++) {
+                maxOutgoing = Math.max(maxOutgoing, edgePrice[outgoing[airport][j]]);
+            }
+            int shortcuts = 0;
+            // edges added below are not part of these lists until the loops end
+            final int incomingEdges = incomingCount[airport];
+            final int outgoingEdges = outgoingCount[airport];
+            for (int i = 0; i < incomingEdges; i++) {
+                final int in = incoming[airport][i];
+                final int source = edgeSource[in];
+                witnessSearch(source, airport, edgePrice[in] + maxOutgoing, settleLimit);
+                for (int j = 0; j < outgoingEdges; j++) {
+                    final int out = outgoing[airport][j];
+                    final int destination = edgeDestination[out];
+                    if (destination == source) {
+                        continue;
+                    }
+                    final long price = edgePrice[in] + edgePrice[out];
+                    if (witnessStamp[destination] == stamp && witnessPrice[destination] <= price) {
+                        continue; // a trip as cheap that does not go through the airport
+                    }
+                    shortcuts++;
+                    if (add) {
+                        addEdge(source, destination, price, in, out);
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        /**
+         * Searches the cheapest trips from {@code source} among airports not contracted, other than {@code skipped},
+         * up to {@code maxPrice}, stopping once {@code settleLimit} airports are settled.
+         */
+        private void witnessSearch(final int source, final int skipped, final long maxPrice, final int settleLimit) {
+            stamp++;
+            heap.clear();
+            witnessStamp[source] = stamp;
+            witnessPrice[source] = 0;
+            heap.add(0, source);
+            int settled = 0;
+            while (!heap.isEmpty() && settled < settleLimit) {
+                final long price = heap.peekPrice();
+                final int airport = heap.poll();
+                if (price > witnessPrice[airport]) {
+                    continue;
+                }
+                if (price > maxPrice) {
+                    break;
+                }
+                settled++;
+                for (int i = 0; i < outgoingCount[airport]; i++) {
+                    final int edge = outgoing[airport][i];
+                    final int next = edgeDestination[edge];
+                    if (next == skipped || contracted[next]) {
+                        continue;
+                    }
+                    final long nextPrice = price + edgePrice[edge];
+                    if (witnessStamp[next] != stamp || nextPrice < witnessPrice[next]) {
+                        witnessStamp[next] = stamp;
+                        witnessPrice[next] = nextPrice;
+                        heap.add(nextPrice, next);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes the edges of an airport to and from airports already contracted.
+         */
+        private void compact(final int airport) {
+            int kept = 0;
+            for (int i = 0; i < outgoingCount[airport]; i++) {
+                final int edge = outgoing[airport][i];
+                if (!contracted[edgeDestination[edge]]) {
+                    outgoing[airport][kept++] = edge;
+                }
+            }
+            outgoingCount[airport] = kept;
+            kept = 0;
+            for (int i = 0; i < incomingCount[airport]; i++) {
+                final int edge = incoming[airport][i];
+                if (!contracted[edgeSource[edge]]) {
+                    incoming[airport][kept++] = edge;
+                }
+            }
+            incomingCount[airport] = kept;
+        }
+
+        private int addEdge(final int source, final int destination, final long price, final int first, final int second) {
+            if (edgeCount == edgeSource.length) {
+                final int capacity = edgeCount * 2;
+                edgeSource = Arrays.copyOf(edgeSource, capacity);
+                edgeDestination = Arrays.copyOf(edgeDestination, capacity);
+                edgePrice = Arrays.copyOf(edgePrice, capacity);
+                edgeFirst = Arrays.copyOf(edgeFirst, capacity);
+                edgeSecond = Arrays.copyOf(edgeSecond, capacity);
+            }
+            final int edge = edgeCount++;
+            edgeSource[edge] = source;
+            edgeDestination[edge] = destination;
+            edgePrice[edge] = price;
+            edgeFirst[edge] = first;
+            edgeSecond[edge] = second;
+            edgesLeft++;
+            outgoing[source] = append(outgoing[source], outgoingCount[source]++, edge);
+            incoming[destination] = append(incoming[destination], incomingCount[destination]++, edge);
+            return edge;
+        }
+
+        @NotNull
+        private static int[] append(final int[] list, final int size, final int edge) {
+            final int[] result = list == null ? new int[4] : size == list.length ? Arrays.copyOf(list, size * 2) : list;
+            result[size] = edge;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.flitetrakr.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * The last changes of a {@link ConnectionGraph}: for every version of the graph, the segment that was added,
+ * removed or repriced to get to that version, identified by its source and destination airport ids.
+ * Versions that only added a node have no segment. Only the last {@link #MAX_CHANGES} changes are kept,
+ * so that results computed on a recent version can be checked against the changes made since then,
+ * and results computed on older versions are considered changed.
+ */
+/* package */ final class GraphChanges {
+    /**
+     * Maximum number of changes kept.
+     */
+    static final int MAX_CHANGES = 1024;
+
+    /**
+     * Version of the graph before the first change kept.
+     */
+    private long baseVersion;
+    private long[] versions = new long[16];
+    private int[] sources = new int[16];
+    private int[] destinations = new int[16];
+    private int size = 0;
+
+    /**
+     * @param baseVersion version of the graph before the first change
+     */
+    GraphChanges(final long baseVersion) {
+        this.baseVersion = baseVersion;
+    }
+
+    /**
+     * @return a copy of these changes
+     */
+    @NotNull
+    GraphChanges copy() {
+        final GraphChanges copy = new GraphChanges(baseVersion);
+        copy.versions = Arrays.copyOf(versions, size);
+        copy.sources = Arrays.copyOf(sources, size);
+        copy.destinations = Arrays.copyOf(destinations, size);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Records a change, forgetting the oldest half of the changes if there are too many.
+     * @param version version of the graph after the change
+     * @param source id of the source airport of the segment changed, -1 if no segment was changed
+     * @param destination id of the destination airport of the segment changed, -1 if no segment was changed
+     */
+    void record(final long version, final int source, final int destination) {
+        if (size == MAX_CHANGES) {
+            final int forgotten = size / 2;
+            baseVersion = versions[forgotten - 1];
+            System.arraycopy(versions, forgotten, versions, 0, size - forgotten);
+            System.arraycopy(sources, forgotten, sources, 0, size - forgotten);
+            System.arraycopy(destinations, forgotten, destinations, 0, size - forgotten);
+            size -= forgotten;
+        }
+        if (size == versions.length) {
+            versions = Arrays.copyOf(versions, size * 2);
+            sources = Arrays.copyOf(sources, size * 2);
+            destinations = Arrays.copyOf(destinations, size * 2);
+        }
+        versions[size] = version;
+        sources[size] = source;
+        destinations[size] = destination;
+        size++;
+    }
+
+    /**
+     * Gets the first change made after a version.
+     * @param version a version of the graph
+     * @return the position of the first change after {@code version}, {@link #size()} if there is none,
+     * or -1 if {@code version} is not a version of the graph whose changes are kept.
+     */
+    int firstChangeAfter(final long version) {
+        if (version == baseVersion) {
+            return 0;
+        }
+        final int position = Arrays.binarySearch(versions, 0, size, version);
+        return position < 0 ? -1 : position + 1;
+    }
+
+    /**
+     * @return the number of changes kept
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the id of the source airport of the segment changed, or -1 if no segment was changed.
+     */
+    int sourceOf(final int change) {
+        return sources[change];
+    }
+
+    /**
+     * @return the id of the destination airport of the segment changed, or -1 if no segment was changed.
+     */
+    int destinationOf(final int change) {
+        return destinations[change];
+    }
+}
@@ -0,0 +1,286 @@
+package com.flitetrakr.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic connection graphs, to benchmark and load test with networks of any size.
+ * Airports are named by their number in base 26, {@code AAA} for the first one, {@code AAB} for the next one,
+ * and so on. Segments join two different airports, chosen at random according to a {@link Topology},
+ * and the same seed always gives the same segments.
+ */
+public final class GraphGenerator {
+    /**
+     * Lowest price of a segment.
+     */
+    public static final int MIN_PRICE = 10;
+    /**
+     * Highest price of a segment.
+     */
+    public static final int MAX_PRICE = 999;
+    /**
+     * Highest number of airports, one per three letter code.
+     */
+    public static final int MAX_AIRPORTS = 26 * 26 * 26;
+
+    /**
+     * How prices of segments are distributed between {@link #MIN_PRICE} and {@link #MAX_PRICE}.
+     */
+    public enum PriceDistribution {
+        /**
+         * Every price is as likely.
+         */
+        UNIFORM,
+        /**
+         * Most segments are cheap, a few are expensive: prices follow an exponential distribution
+         * with a mean of a tenth of the range, so cheapest trips have more segments.
+         */
+        EXPONENTIAL
+    }
+
+    /**
+     * How airports are joined by segments.
+     */
+    public enum Topology {
+        /**
+         * Every airport is as likely to be joined to any other.
+         */
+        RANDOM,
+        /**
+         * Airports with many segments are more likely to get new ones (preferential attachment),
+         * so a few airports have most segments, as in real networks.
+         */
+        SCALE_FREE,
+        /**
+         * Every airport is joined to its hub, in both directions, and hubs are joined among themselves.
+         * There is a hub every {@link #SPOKES_PER_HUB} airports, and a tenth of the segments join hubs.
+         */
+        HUB_AND_SPOKE
+    }
+
+    /**
+     * Number of airports for every hub, in {@link Topology#HUB_AND_SPOKE} graphs.
+     */
+    public static final int SPOKES_PER_HUB = 32;
+
+    private final int airportCount;
+    private final double averageOutDegree;
+    private final PriceDistribution prices;
+    private final Topology topology;
+    private final long seed;
+
+    /**
+     * Constructor of a generator of {@link Topology#RANDOM} graphs.
+     * @param airportCount number of airports, at least 2 and at most {@link #MAX_AIRPORTS}
+     * @param averageOutDegree average number of segments leaving an airport
+     * @param prices distribution of the prices of segments
+     * @param seed seed of the random numbers
+     */
+    public GraphGenerator(final int airportCount,
+                          final double averageOutDegree,
+                          @NotNull final PriceDistribution prices,
+                          final long seed) {
+        this(airportCount, averageOutDegree, prices, Topology.RANDOM, seed);
+    }
+
+    /**
+     * Constructor.
+     * @param airportCount number of airports, at least 2 and at most {@link #MAX_AIRPORTS}
+     * @param averageOutDegree average number of segments leaving an airport
+     * @param prices distribution of the prices of segments
+     * @param topology how airports are joined
+     * @param seed seed of the random numbers
+     */
+    public GraphGenerator(final int airportCount,
+                          final double averageOutDegree,
+                          @NotNull final PriceDistribution prices,
+                          @NotNull final Topology topology,
+                          final long seed) {
+        if (airportCount < 2 || airportCount > MAX_AIRPORTS) {
+            throw new IllegalArgumentException("Wrong number of airports: " + airportCount);
+        }
+        if (averageOutDegree < 0) {
+            throw new IllegalArgumentException("Wrong average out degree: " + averageOutDegree);
+        }
+        this.airportCount = airportCount;
+        this.averageOutDegree = averageOutDegree;
+        this.prices = prices;
+        this.topology = topology;
+        this.seed = seed;
+    }
+
+    /**
+     * Gets an airport of the generated graphs.
+     * @param number number of the airport, from 0 to the number of airports excluded
+     * @return the airport
+     */
+    @NotNull
+    public static Airport airport(final int number) {
+        if (number < 0 || number >= MAX_AIRPORTS) {
+            throw new IllegalArgumentException("Wrong airport number: " + number);
+        }
+        return Airport.valueOf((char) ('A' + number / (26 * 26)), (char) ('A' + number / 26 % 26), (char) ('A' + number % 26));
+    }
+
+    /**
+     * @return the number of airports of the generated graphs
+     */
+    public int getAirportCount() {
+        return airportCount;
+    }
+
+    /**
+     * Generates the segments, in the order they would be listed in a connections line.
+     * @return {@code airportCount * averageOutDegree} segments, rounded
+     */
+    @NotNull
+    public List<FlightSegment> generateSegments() {
+        final Random random = new Random(seed);
+        final Airport[] airports = new Airport[airportCount];
+        for (int i = 0; i < airportCount; i++) {
+            airports[i] = airport(i);
+        }
+        final int count = (int) Math.min(Math.round(airportCount * averageOutDegree), Integer.MAX_VALUE);
+        final List<FlightSegment> segments = new ArrayList<>(count);
+        switch (topology) {
+            case SCALE_FREE:
+                generateScaleFree(airports, count, random, segments);
+                break;
+            case HUB_AND_SPOKE:
+                generateHubAndSpoke(airports, count, random, segments);
+                break;
+            case RANDOM:
+            default:
+                for (int i = 0; i < count; i++) {
+                    final int source = random.nextInt(airportCount);
+                    segments.add(new FlightSegment(airports[source], airports[otherAirport(source, airportCount, random)],
+                            nextPrice(random)));
+                }
+        }
+        return segments;
+    }
+
+    /**
+     * Picks the airports of every segment among the ends of the segments already generated, where an airport
+     * appears once more for every segment it has. Every airport appears once at first, so it can be picked.
+     */
+    private void generateScaleFree(@NotNull final Airport[] airports,
+                                   final int count,
+                                   @NotNull final Random random,
+                                   @NotNull final List<FlightSegment> segments) {
+        final int[] ends = new int[airportCount + 2 * count];
+        for (int i = 0; i < airportCount; i++) {
+            ends[i] = i;
+        }
+        int size = airportCount;
+        for (int i = 0; i < count; i++) {
+            final int source = ends[random.nextInt(size)];
+            int destination = ends[random.nextInt(size)];
+            while (destination == source) {
+                destination = ends[random.nextInt(size)];
+            }
+            ends[size++] = source;
+            ends[size++] = destination;
+            segments.add(new FlightSegment(airports[source], airports[destination], nextPrice(random)));
+        }
+    }
+
+    /**
+     * Joins hubs to their spokes and to other hubs. Airports {@code 0}, {@link #SPOKES_PER_HUB},
+     * {@code 2 * SPOKES_PER_HUB}... are hubs, and the hub of an airport is the one before it.
+     */
+    private void generateHubAndSpoke(@NotNull final Airport[] airports,
+                                     final int count,
+                                     @NotNull final Random random,
+                                     @NotNull final List<FlightSegment> segments) {
+        final int hubs = (airportCount + SPOKES_PER_HUB - 1) / SPOKES_PER_HUB;
+        for (int i = 0; i < count; i++) {
+            final int source;
+            final int destination;
+            if (hubs > 1 && random.nextInt(10) == 0) {
+                final int hub = random.nextInt(hubs);
+                source = hub * SPOKES_PER_HUB;
+                destination = otherAirport(hub, hubs, random) * SPOKES_PER_HUB;
+            } else {
+                final int spoke = random.nextInt(airportCount);
+                final int hub = spoke - spoke % SPOKES_PER_HUB;
+                // a hub picked as a spoke is joined to any airport
+                final int other = spoke != hub ? hub : otherAirport(hub, airportCount, random);
+                source = random.nextBoolean() ? spoke : other;
+                destination = source == spoke ? other : spoke;
+            }
+            segments.add(new FlightSegment(airports[source], airports[destination], nextPrice(random)));
+        }
+    }
+
+    /**
+     * @return a random number between 0 and {@code count} excluded, other than {@code number}
+     */
+    private static int otherAirport(final int number, final int count, @NotNull final Random random) {
+        final int other = random.nextInt(count - 1);
+        return other >= number ? other + 1 : other;
+    }
+
+    /**
+     * Generates a graph with the segments of {@link #generateSegments()}.
+     * @return a new graph
+     */
+    @NotNull
+    public ConnectionGraph generate() {
+        final ConnectionGraph graph = new ConnectionGraph();
+        for (final FlightSegment segment : generateSegments()) {
+            graph.addEdge(segment);
+        }
+        return graph;
+    }
+
+    /**
+     * Picks a trip of a graph by following random segments, without visiting an airport twice,
+     * e.g. to ask questions whose answer is not empty.
+     * @param graph a graph
+     * @param segments number of segments of the trip
+     * @param random random numbers
+     * @return a trip with at most {@code segments} segments, fewer if it gets to an airport with no segment
+     * to an airport not visited yet, or an empty trip if the graph has no segments
+     */
+    @NotNull
+    public static Trip randomTrip(@NotNull final ConnectionGraph graph, final int segments, @NotNull final Random random) {
+        final Trip trip = new Trip();
+        final List<FlightSegment> edges = graph.getEdges();
+        if (edges.isEmpty()) {
+            return trip;
+        }
+        final Airport start = edges.get(random.nextInt(edges.size())).getSource();
+        Airport airport = start;
+        while (trip.getSegments().size() < segments) {
+            final List<FlightSegment> next = new ArrayList<>();
+            for (final FlightSegment segment : graph.getOutgoingEdges(airport)) {
+                if (segment.getDestination() != start && !trip.containsAirport(segment.getDestination())) {
+                    next.add(segment);
+                }
+            }
+            if (next.isEmpty()) {
+                break;
+            }
+            final FlightSegment segment = next.get(random.nextInt(next.size()));
+            trip.addSegment(segment);
+            airport = segment.getDestination();
+        }
+        return trip;
+    }
+
+    private int nextPrice(@NotNull final Random random) {
+        switch (prices) {
+            case EXPONENTIAL:
+                final double mean = (MAX_PRICE - MIN_PRICE) / 10.0;
+                final double price = MIN_PRICE - mean * Math.log(1 - random.nextDouble());
+                return (int) Math.min(price, MAX_PRICE);
+            case UNIFORM:
+            default:
+                return MIN_PRICE + random.nextInt(MAX_PRICE - MIN_PRICE + 1);
+        }
+    }
+}
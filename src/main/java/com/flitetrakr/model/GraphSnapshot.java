@@ -0,0 +1,284 @@
+package com.flitetrakr.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads and writes the binary snapshot of a {@link ConnectionGraph}, which is its {@link IndexedGraph}
+ * written as is, so reading a snapshot copies arrays instead of parsing segments.
+ * A snapshot has the following parts, all ints and longs being big endian:
+ * <ol>
+ *     <li>a header: the magic number {@code FLTK}, the format version, the number of airports,
+ *     of nodes, of segments, and of edges of the contraction hierarchy, -1 if there is none</li>
+ *     <li>the airport table: the three letter code of every airport, in ASCII, by id</li>
+ *     <li>the nodes of the graph: the id of every node, as an int, in the order they were added</li>
+ *     <li>the index of the first segment of every airport, as an int, and the number of segments at the end</li>
+ *     <li>the destination airport id of every segment, as an int</li>
+ *     <li>the price of every segment, as an int</li>
+ *     <li>if there is a {@link ContractionHierarchy}: the rank of every airport, then the source airport id,
+ *     the destination airport id, the segment or first edge and the second edge of every edge, as ints,
+ *     and the price of every edge, as a long</li>
+ * </ol>
+ * Snapshots of version 1 have neither the number of edges in their header, nor a hierarchy.
+ * Segments are grouped by source airport, so the source of a segment is not written.
+ * Ids in the snapshot are the ids of the airports when it was written. When it is read, airports that
+ * already exist may have other ids, and then segments are regrouped with the new ids, and the edges of the
+ * hierarchy are changed to the new ids and segments.
+ * A snapshot is checked when it is read: besides its sizes, the ids of its airports and segments must be in range,
+ * and a shortcut of the hierarchy can only be made of edges written before it, so that searches on it cannot fail.
+ */
+/* package */ final class GraphSnapshot {
+    /**
+     * {@code FLTK} in ASCII.
+     */
+    private static final int MAGIC = 0x464c544b;
+    /**
+     * Version of the format written.
+     */
+    private static final int VERSION = 2;
+    /**
+     * Bytes in the header.
+     */
+    private static final int HEADER_BYTES = 6 * 4;
+    /**
+     * Bytes in the header of version 1, without a hierarchy.
+     */
+    private static final int VERSION_1_HEADER_BYTES = 5 * 4;
+
+    private GraphSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot.
+     * @param index the index of the graph
+     * @param nodes the nodes of the graph
+     * @param hierarchy the contraction hierarchy of the index, null if there is none
+     * @param file the file to write, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    static void write(@NotNull final IndexedGraph index, @NotNull final List<Airport> nodes,
+                      @Nullable final ContractionHierarchy hierarchy, @NotNull final File file) throws IOException {
+        final int airports = index.airports.length;
+        final int segments = index.segmentCount();
+        final int edges = hierarchy == null ? -1 : hierarchy.edgeCount();
+        final long graphSize = HEADER_BYTES + 3L * airports + 4L * nodes.size() + 4L * (airports + 1) + 8L * segments;
+        final long size = graphSize + hierarchySize(airports, edges);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Graph too large for a snapshot: " + size + " bytes");
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(airports).putInt(nodes.size()).putInt(segments).putInt(edges);
+        for (final Airport airport : index.airports) {
+            final String code = airport.getCode();
+            buffer.put((byte) code.charAt(0)).put((byte) code.charAt(1)).put((byte) code.charAt(2));
+        }
+        for (final Airport node : nodes) {
+            buffer.putInt(node.getId());
+        }
+        final IntBuffer ints = buffer.asIntBuffer();
+        ints.put(index.firstSegment).put(index.destinations).put(index.prices);
+        if (hierarchy != null) {
+            ints.put(hierarchy.rank).put(hierarchy.edgeSource).put(hierarchy.edgeDestination)
+                    .put(hierarchy.edgeFirst).put(hierarchy.edgeSecond);
+            buffer.position((int) (graphSize + 4L * (airports + 4L * edges)));
+            buffer.asLongBuffer().put(hierarchy.edgePrice);
+        }
+        buffer.position(0);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot, mapping the file in memory.
+     * @param file a file written by {@link #write(IndexedGraph, List, ContractionHierarchy, File)}
+     * @return a frozen graph
+     * @throws IOException if the file cannot be read, or it is not a valid snapshot
+     */
+    @NotNull
+    static ConnectionGraph read(@NotNull final File file) throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < VERSION_1_HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file.getName() + " is not a graph snapshot");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException(file.getName() + " is not a graph snapshot");
+        }
+        final int version = buffer.getInt();
+        if (version != 1 && version != VERSION) {
+            throw new IOException("Unsupported graph snapshot version " + version + " in " + file.getName());
+        }
+        if (version == VERSION && buffer.remaining() < HEADER_BYTES - 8) {
+            throw new IOException(file.getName() + " is not a valid graph snapshot");
+        }
+        final int airportCount = buffer.getInt();
+        final int nodeCount = buffer.getInt();
+        final int segmentCount = buffer.getInt();
+        final int edgeCount = version == 1 ? -1 : buffer.getInt();
+        if (airportCount < 0 || nodeCount < 0 || segmentCount < 0 || edgeCount < -1 || buffer.remaining()
+                != 3L * airportCount + 4L * nodeCount + 4L * (airportCount + 1) + 8L * segmentCount
+                + hierarchySize(airportCount, edgeCount)) {
+            throw new IOException(file.getName() + " is not a valid graph snapshot");
+        }
+
+        // airports may already exist with other ids
+        final int[] ids = new int[airportCount];
+        boolean sameIds = true;
+        for (int i = 0; i < airportCount; i++) {
+            final Airport airport;
+            try {
+                airport = Airport.valueOf((char) buffer.get(), (char) buffer.get(), (char) buffer.get());
+            } catch (final IllegalArgumentException ex) {
+                throw new IOException(file.getName() + " is not a valid graph snapshot: " + ex.getMessage());
+            }
+            ids[i] = airport.getId();
+            sameIds &= ids[i] == i;
+        }
+        final Airport[] airports = Airport.values();
+        final List<Airport> nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            final int node = buffer.getInt();
+            if (node < 0 || node >= airportCount) {
+                throw new IOException(file.getName() + " is not a valid graph snapshot: wrong node " + node);
+            }
+            nodes.add(airports[ids[node]]);
+        }
+
+        final IntBuffer ints = buffer.asIntBuffer();
+        final int[] firstSegment = new int[airportCount + 1];
+        final int[] destinations = new int[segmentCount];
+        final int[] prices = new int[segmentCount];
+        ints.get(firstSegment).get(destinations).get(prices);
+        if (firstSegment[airportCount] != segmentCount) {
+            throw new IOException(file.getName() + " is not a valid graph snapshot: wrong number of segments");
+        }
+        for (int i = 0; i <= airportCount; i++) {
+            if (firstSegment[i] < (i == 0 ? 0 : firstSegment[i - 1])) {
+                throw new IOException(file.getName() + " is not a valid graph snapshot: wrong first segment of airport " + i);
+            }
+        }
+        for (int segment = 0; segment < segmentCount; segment++) {
+            if (destinations[segment] < 0 || destinations[segment] >= airportCount) {
+                throw new IOException(file.getName() + " is not a valid graph snapshot: wrong segment " + segment);
+            }
+        }
+        final IndexedGraph index = sameIds
+                ? new IndexedGraph(Arrays.copyOf(airports, airportCount), firstSegment, destinations, prices)
+                : regroup(airports, ids, firstSegment, destinations, prices);
+        if (edgeCount < 0) {
+            return ConnectionGraph.frozen(index, nodes, null);
+        }
+
+        final int[] rank = new int[airportCount];
+        final int[] edgeSource = new int[edgeCount];
+        final int[] edgeDestination = new int[edgeCount];
+        final int[] edgeFirst = new int[edgeCount];
+        final int[] edgeSecond = new int[edgeCount];
+        final long[] edgePrice = new long[edgeCount];
+        ints.get(rank).get(edgeSource).get(edgeDestination).get(edgeFirst).get(edgeSecond);
+        buffer.position(buffer.position() + 4 * ints.position());
+        final LongBuffer longs = buffer.asLongBuffer();
+        longs.get(edgePrice);
+        for (int edge = 0; edge < edgeCount; edge++) {
+            final int source = edgeSource[edge];
+            if (source < 0 || source >= airportCount
+                    || edgeDestination[edge] < 0 || edgeDestination[edge] >= airportCount) {
+                throw new IOException(file.getName() + " is not a valid graph snapshot: wrong edge " + edge);
+            }
+            final boolean valid;
+            if (edgeFirst[edge] < 0) {
+                // a segment of its source airport
+                final int segment = -1 - edgeFirst[edge];
+                valid = segment >= firstSegment[source] && segment < firstSegment[source + 1] && edgeSecond[edge] == -1;
+            } else {
+                // a shortcut of two edges written before it
+                valid = edgeFirst[edge] < edge && edgeSecond[edge] >= 0 && edgeSecond[edge] < edge;
+            }
+            if (!valid) {
+                throw new IOException(file.getName() + " is not a valid graph snapshot: wrong edge " + edge);
+            }
+        }
+        if (sameIds) {
+            return ConnectionGraph.frozen(index, nodes, new ContractionHierarchy(index, rank,
+                    edgeSource, edgeDestination, edgePrice, edgeFirst, edgeSecond));
+        }
+        // airports that are not in the snapshot have no edges, they are ranked below the others
+        final int[] newRank = new int[airports.length];
+        Arrays.fill(newRank, -1);
+        for (int i = 0; i < airportCount; i++) {
+            newRank[ids[i]] = rank[i];
+        }
+        for (int edge = 0; edge < edgeCount; edge++) {
+            final int source = edgeSource[edge];
+            if (edgeFirst[edge] < 0) {
+                // segments keep their order among the segments of their source airport
+                final int segment = -1 - edgeFirst[edge];
+                edgeFirst[edge] = -1 - (index.firstSegment[ids[source]] + segment - firstSegment[source]);
+            }
+            edgeSource[edge] = ids[source];
+            edgeDestination[edge] = ids[edgeDestination[edge]];
+        }
+        return ConnectionGraph.frozen(index, nodes, new ContractionHierarchy(index, newRank,
+                edgeSource, edgeDestination, edgePrice, edgeFirst, edgeSecond));
+    }
+
+    /**
+     * @return the bytes of a contraction hierarchy in a snapshot, 0 if there is none
+     */
+    private static long hierarchySize(final int airports, final int edges) {
+        return edges < 0 ? 0 : 4L * airports + 24L * edges;
+    }
+
+    /**
+     * Builds the index with the current ids of the airports: segments of every source airport are copied
+     * to the position of the airport with its current id, and their destinations are changed to current ids.
+     */
+    @NotNull
+    private static IndexedGraph regroup(@NotNull final Airport[] airports,
+                                        @NotNull final int[] ids,
+                                        @NotNull final int[] firstSegment,
+                                        @NotNull final int[] destinations,
+                                        @NotNull final int[] prices) {
+        final int[] source = new int[airports.length];
+        Arrays.fill(source, -1);
+        for (int i = 0; i < ids.length; i++) {
+            source[ids[i]] = i;
+        }
+        final int[] newFirstSegment = new int[airports.length + 1];
+        final int[] newDestinations = new int[destinations.length];
+        final int[] newPrices = new int[prices.length];
+        int index = 0;
+        for (int airport = 0; airport < airports.length; airport++) {
+            newFirstSegment[airport] = index;
+            final int old = source[airport];
+            if (old < 0) {
+                continue; // not in the snapshot
+            }
+            final int count = firstSegment[old + 1] - firstSegment[old];
+            System.arraycopy(prices, firstSegment[old], newPrices, index, count);
+            for (int segment = firstSegment[old]; segment < firstSegment[old + 1]; segment++) {
+                newDestinations[index++] = ids[destinations[segment]];
+            }
+        }
+        newFirstSegment[airports.length] = index;
+        return new IndexedGraph(airports, newFirstSegment, newDestinations, newPrices);
+    }
+}
@@ -0,0 +1,257 @@
+package com.flitetrakr.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An int indexed, read only view of a {@link ConnectionGraph}, used by the searches that need to
+ * avoid boxing and allocations on their hot path, and by frozen graphs as their only representation.
+ * Airports are identified by their id, and the segments departing from airport {@code a}
+ * are the ones between {@code firstSegment[a]} (inclusive) and {@code firstSegment[a+1]} (exclusive),
+ * in the same order they were added to the graph.
+ * Segments are not kept as {@link FlightSegment} objects: a segment takes 8 bytes (destination and price),
+ * and {@link FlightSegment} objects are only created for the trips found, or when segments are read.
+ */
+/* package */ final class IndexedGraph {
+    /**
+     * All airports created when the index was built, by id. This includes every airport of the graph,
+     * and airports that are not part of it, which have no segments.
+     */
+    final Airport[] airports;
+    /**
+     * Index of the first segment of every airport. It has one element more than airports,
+     * so that the segments of the last airport end at {@code firstSegment[airports]}.
+     */
+    final int[] firstSegment;
+    /**
+     * Destination airport id of every segment.
+     */
+    final int[] destinations;
+    /**
+     * Price of every segment.
+     */
+    final int[] prices;
+    /**
+     * Segments arriving at every airport, built the first time they are needed, see {@link #reverse()}.
+     */
+    private volatile ReverseIndex reverse;
+
+    /**
+     * The segments arriving at every airport, for searches walking the graph backwards from a destination.
+     * The segments arriving at airport {@code a} are the ones between {@code firstIncoming[a]} (inclusive) and
+     * {@code firstIncoming[a+1]} (exclusive), grouped by source airport. Only segment indexes and their sources
+     * are kept: prices are read from {@link #prices}, so this index is still valid when prices change.
+     */
+    static final class ReverseIndex {
+        /**
+         * Index in {@link #incomingSegments} of the first segment arriving at every airport,
+         * and the number of segments at the end.
+         */
+        final int[] firstIncoming;
+        /**
+         * Index of every segment, in the order of their destination airport.
+         */
+        final int[] incomingSegments;
+        /**
+         * Source airport id of every segment of {@link #incomingSegments}.
+         */
+        final int[] sources;
+
+        private ReverseIndex(@NotNull final IndexedGraph graph) {
+            final int airportCount = graph.firstSegment.length - 1;
+            firstIncoming = new int[airportCount + 1];
+            incomingSegments = new int[graph.segmentCount()];
+            sources = new int[graph.segmentCount()];
+            for (final int destination : graph.destinations) {
+                firstIncoming[destination + 1]++;
+            }
+            for (int airport = 0; airport < airportCount; airport++) {
+                firstIncoming[airport + 1] += firstIncoming[airport];
+            }
+            final int[] next = Arrays.copyOf(firstIncoming, airportCount);
+            for (int airport = 0; airport < airportCount; airport++) {
+                for (int segment = graph.firstSegment[airport]; segment < graph.firstSegment[airport + 1]; segment++) {
+                    final int position = next[graph.destinations[segment]]++;
+                    incomingSegments[position] = segment;
+                    sources[position] = airport;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the index from the outgoing segments of every airport.
+     * @param outgoingEdges segments indexed by the id of their source airport, with null for airports without segments
+     * @param edgeCount total number of segments
+     */
+    IndexedGraph(@NotNull final List<List<FlightSegment>> outgoingEdges, final int edgeCount) {
+        airports = Airport.values();
+        firstSegment = new int[airports.length + 1];
+        destinations = new int[edgeCount];
+        prices = new int[edgeCount];
+        int index = 0;
+        for (int airport = 0; airport < airports.length; airport++) {
+            firstSegment[airport] = index;
+            final List<FlightSegment> outgoing = airport < outgoingEdges.size() ? outgoingEdges.get(airport) : null;
+            if (outgoing == null) {
+                continue;
+            }
+            for (final FlightSegment segment : outgoing) {
+                destinations[index] = segment.getDestination().getId();
+                prices[index] = segment.getPrice();
+                index++;
+            }
+        }
+        firstSegment[airports.length] = index;
+    }
+
+    /**
+     * Creates an index from its arrays, which are not copied.
+     * @param airports airports by id, {@code airports[i].getId()} must be {@code i}
+     * @param firstSegment index of the first segment of every airport, and the number of segments at the end
+     * @param destinations destination airport id of every segment
+     * @param prices price of every segment
+     */
+    IndexedGraph(@NotNull final Airport[] airports,
+                 @NotNull final int[] firstSegment,
+                 @NotNull final int[] destinations,
+                 @NotNull final int[] prices) {
+        this.airports = airports;
+        this.firstSegment = firstSegment;
+        this.destinations = destinations;
+        this.prices = prices;
+    }
+
+    /**
+     * Creates a copy of this index with another price for a segment. Only the prices are copied.
+     * @param segment index of a segment
+     * @param price new price of the segment
+     * @return the new index
+     */
+    @NotNull
+    IndexedGraph withPrice(final int segment, final int price) {
+        final int[] newPrices = prices.clone();
+        newPrices[segment] = price;
+        final IndexedGraph copy = new IndexedGraph(airports, firstSegment, destinations, newPrices);
+        // the segments are the same, only their prices change
+        copy.reverse = reverse;
+        return copy;
+    }
+
+    /**
+     * @return the segments arriving at every airport, building them if needed.
+     */
+    @NotNull
+    ReverseIndex reverse() {
+        ReverseIndex result = reverse;
+        if (result == null) {
+            // threads building it at once build the same index, and any of them is kept
+            result = new ReverseIndex(this);
+            reverse = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of segments in this graph.
+     */
+    int segmentCount() {
+        return destinations.length;
+    }
+
+    /**
+     * Gets the id of the source airport of a segment.
+     * @param segment index of a segment
+     * @return the id of its source airport
+     */
+    int sourceOf(final int segment) {
+        // the last airport whose first segment is at or before this segment
+        int airport = Arrays.binarySearch(firstSegment, segment);
+        if (airport < 0) {
+            return -airport - 2;
+        }
+        // airports without segments share their first segment with the next ones
+        while (firstSegment[airport + 1] == segment) {
+            airport++;
+        }
+        return airport;
+    }
+
+    /**
+     * Creates a {@link FlightSegment} for the segment at the given index.
+     * @param source id of the source airport of the segment
+     * @param segment index of the segment
+     * @return a flight segment
+     */
+    @NotNull
+    FlightSegment toFlightSegment(final int source, final int segment) {
+        return new FlightSegment(airports[source], airports[destinations[segment]], prices[segment]);
+    }
+
+    /**
+     * Creates a trip from the indexes of its segments.
+     * @param source id of the airport the trip starts from
+     * @param segments indexes of the segments of the trip, in order
+     * @param count number of segments of the trip
+     * @return a trip
+     */
+    @NotNull
+    Trip toTrip(final int source, @NotNull final int[] segments, final int count) {
+        final List<FlightSegment> tripSegments = new ArrayList<>(count);
+        int airport = source;
+        for (int i = 0; i < count; i++) {
+            tripSegments.add(toFlightSegment(airport, segments[i]));
+            airport = destinations[segments[i]];
+        }
+        return new Trip(tripSegments);
+    }
+
+    /**
+     * @return a read only list with every segment of this graph, grouped by source airport.
+     */
+    @NotNull
+    List<FlightSegment> getSegments() {
+        return new AbstractList<FlightSegment>() {
+            @Override
+            public FlightSegment get(final int index) {
+                if (index < 0 || index >= segmentCount()) {
+                    throw new IndexOutOfBoundsException("Index: " + index);
+                }
+                return toFlightSegment(sourceOf(index), index);
+            }
+
+            @Override
+            public int size() {
+                return segmentCount();
+            }
+        };
+    }
+
+    /**
+     * @param airport id of an airport
+     * @return a read only list with the segments departing from the given airport.
+     */
+    @NotNull
+    List<FlightSegment> getOutgoingSegments(final int airport) {
+        final int first = firstSegment[airport];
+        final int size = firstSegment[airport + 1] - first;
+        return new AbstractList<FlightSegment>() {
+            @Override
+            public FlightSegment get(final int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index);
+                }
+                return toFlightSegment(airport, first + index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,428 @@
+package com.flitetrakr.model;
+
+import com.flitetrakr.metrics.Metrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Searches the K cheapest trips between two airports of an {@link IndexedGraph}, in order of price, without
+ * enumerating every trip below a price and sorting them: the work done grows with K and the length of the trips
+ * found, not with the number of trips between the airports.
+ * <ul>
+ *     <li>When loops are allowed, trips are the same as in {@link TripSearch}: airports can be visited more than
+ *     once, and trips can go on through the destination. Partial trips are expanded cheapest first, by their price
+ *     plus the price of the cheapest trip from their last airport to the destination (see
+ *     {@link CheapestTripSearch#searchPricesTo(IndexedGraph, int, long)}). Since that price is exact, trips reach
+ *     the destination in order of price, and only partial trips that can be completed below the price of the K-th
+ *     trip are expanded.</li>
+ *     <li>Without loops, trips visit every airport once at most, so there are no round trips. They are found
+ *     with Yen's algorithm: every trip found is a candidate root for the next ones, which leave it at one of its
+ *     airports through another segment than the trips already found with the same root, and go on with the
+ *     cheapest trip to the destination that does not go back to the root. These spur searches are guided by
+ *     the same prices to the destination, so they mostly walk straight to it.</li>
+ * </ul>
+ * Trips of the same price are found in the order they are reached by the search, so when several trips cost
+ * as much as the K-th one, which of them are returned depends on the search.
+ * Like {@link TripSearch}, the search is bounded by the limits of {@link ConnectionGraph#setSearchLimits(int, long)}:
+ * trips are not extended past a number of segments, and the search stops once it has flown a number of segments,
+ * i.e., created that many partial trips or reached airports that many times in spur searches. The trips found
+ * before are still in order of price, but cheaper ones may be missing, which is reported to the consumer.
+ * The partial trips expanded, or airports settled by spur searches, are added to the {@link Metrics} once
+ * the search ends.
+ */
+/* package */ final class KCheapestTripSearch {
+    private final IndexedGraph graph;
+    private final int destination;
+    /**
+     * Price of the cheapest trip from every airport to the destination, {@link Long#MAX_VALUE} if it cannot be reached.
+     */
+    private final long[] pricesToDestination;
+    /**
+     * Trips are not extended past this number of segments, see {@link ConnectionGraph#setSearchLimits(int, long)}.
+     */
+    private final int depthLimit;
+    /**
+     * The search stops once it has flown this number of segments, see {@link ConnectionGraph#setSearchLimits(int, long)}.
+     */
+    private final long maxExpanded;
+    /**
+     * Partial trips expanded, or airports settled by spur searches, by the current search.
+     */
+    private long settled;
+    /**
+     * Segments flown, i.e., partial trips created, or airports reached by spur searches, by the current search.
+     */
+    private long expanded;
+    /**
+     * True if the current search was truncated by {@link #depthLimit} or {@link #maxExpanded}.
+     */
+    private boolean truncated;
+
+    private KCheapestTripSearch(@NotNull final IndexedGraph graph,
+                                final int destination,
+                                final int depthLimit,
+                                final long maxExpanded) {
+        this.graph = graph;
+        this.destination = destination;
+        this.depthLimit = depthLimit;
+        this.maxExpanded = maxExpanded;
+        this.pricesToDestination = CheapestTripSearch.searchPricesTo(graph, destination, Long.MAX_VALUE);
+    }
+
+    /**
+     * Searches the {@code count} cheapest trips between two airports, passing them to {@code consumer}
+     * in order of price.
+     * @param graph the graph to search
+     * @param source id of the source airport
+     * @param destination id of the destination airport
+     * @param count maximum number of trips to find
+     * @param loopsAllowed true if an airport can be visited more than once
+     * @param depthLimit trips are not extended past this number of segments, truncating the search
+     * @param maxExpanded the search stops once it has flown this number of segments, truncating the search
+     * @param consumer receives the cheapest trips, fewer than {@code count} if there are no more, and can stop the search
+     * @return true if the search was completed, false if it was stopped by {@code consumer} or truncated
+     */
+    static boolean search(@NotNull final IndexedGraph graph,
+                          final int source,
+                          final int destination,
+                          final int count,
+                          final boolean loopsAllowed,
+                          final int depthLimit,
+                          final long maxExpanded,
+                          @NotNull final TripConsumer consumer) {
+        if (count <= 0 || (!loopsAllowed && source == destination)) {
+            return true;
+        }
+        final KCheapestTripSearch search = new KCheapestTripSearch(graph, destination, depthLimit, maxExpanded);
+        try {
+            final boolean completed = loopsAllowed
+                    ? search.searchWalks(source, count, consumer)
+                    : search.searchSimpleTrips(source, count, consumer);
+            if (search.truncated) {
+                consumer.truncated();
+            }
+            return completed && !search.truncated;
+        } finally {
+            Metrics.registry().counter("search.kcheapest.searches").increment();
+            Metrics.registry().counter("search.kcheapest.settled").add(search.settled);
+            if (search.truncated) {
+                Metrics.registry().counter("search.kcheapest.truncated").increment();
+            }
+        }
+    }
+
+    /**
+     * Best first search of the trips with loops: every partial trip is a state, made of its last segment and
+     * the state it extends, so partial trips share their prefixes. The source is the state -1, with no segment.
+     * @return true if the search was completed, false if it was stopped by {@code consumer} or {@link #maxExpanded}
+     */
+    private boolean searchWalks(final int source, final int count, @NotNull final TripConsumer consumer) {
+        final int[] firstSegment = graph.firstSegment;
+        final int[] destinations = graph.destinations;
+        final int[] prices = graph.prices;
+
+        // last segment, previous state, number of segments and price of every state
+        int[] stateSegment = new int[64];
+        int[] stateParent = new int[64];
+        int[] stateDepth = new int[64];
+        long[] statePrice = new long[64];
+        int states = 0;
+        final PriorityQueue<Entry> queue = new PriorityQueue<>();
+
+        int[] segments = new int[16];
+        int found = 0;
+        // the source is not reached until we fly back to it, so we start from its segments
+        int state = -1;
+        while (true) {
+            final int airport = state < 0 ? source : destinations[stateSegment[state]];
+            final int depth = state < 0 ? 0 : stateDepth[state];
+            if (state >= 0 && airport == destination) {
+                int i = depth;
+                if (segments.length < i) {
+                    segments = new int[Math.max(i, segments.length * 2)];
+                }
+                for (int s = state; s >= 0; s = stateParent[s]) {
+                    segments[--i] = stateSegment[s];
+                }
+                if (!consumer.accept(graph.toTrip(source, segments, depth))) {
+                    return false;
+                }
+                if (++found == count) {
+                    return true;
+                }
+            }
+            // trips can go on through the destination, and come back to it later
+            for (int segment = firstSegment[airport]; segment < firstSegment[airport + 1]; segment++) {
+                final long toDestination = pricesToDestination[destinations[segment]];
+                if (toDestination == Long.MAX_VALUE) {
+                    continue;
+                }
+                if (depth >= depthLimit) {
+                    truncated = true; // a trip that can reach the destination is cut short
+                    break;
+                }
+                if (expanded == maxExpanded) {
+                    truncated = true;
+                    return false; // the search flew as many segments as allowed
+                }
+                expanded++;
+                if (states == stateSegment.length) {
+                    stateSegment = Arrays.copyOf(stateSegment, states * 2);
+                    stateParent = Arrays.copyOf(stateParent, states * 2);
+                    stateDepth = Arrays.copyOf(stateDepth, states * 2);
+                    statePrice = Arrays.copyOf(statePrice, states * 2);
+                }
+                final long price = (state < 0 ? 0 : statePrice[state]) + prices[segment];
+                stateSegment[states] = segment;
+                stateParent[states] = state;
+                stateDepth[states] = depth + 1;
+                statePrice[states] = price;
+                queue.add(new Entry(price + toDestination, states++));
+            }
+            if (queue.isEmpty()) {
+                return true;
+            }
+            state = queue.poll().state;
+            settled++;
+        }
+    }
+
+    /**
+     * Yen's algorithm. Candidates are kept in a queue by price, and only the cheapest one is taken for every
+     * trip found, so candidates are only generated from the trips returned.
+     * @return true if the search was completed, false if it was stopped by {@code consumer} or {@link #maxExpanded}
+     */
+    private boolean searchSimpleTrips(final int source, final int count, @NotNull final TripConsumer consumer) {
+        final SpurSearch spurSearch = new SpurSearch();
+        final List<Path> found = new ArrayList<>();
+        final PriorityQueue<Path> candidates = new PriorityQueue<>();
+        // every path ever made a candidate, so that a path found from several roots is only kept once
+        final Set<Path> known = new HashSet<>();
+
+        final Path first = spurSearch.run(source, source, new int[0], 0, 0, found);
+        if (first == null) {
+            return !spurSearch.stopped;
+        }
+        known.add(first);
+        Path current = first;
+        while (true) {
+            found.add(current);
+            if (!consumer.accept(graph.toTrip(source, current.segments, current.segments.length))) {
+                return false;
+            }
+            if (found.size() == count) {
+                return true;
+            }
+            // every airport of the last trip but the destination is a spur airport, the segments before it the root
+            long rootPrice = 0;
+            int spur = source;
+            for (int i = 0; i < current.segments.length; i++) {
+                final Path candidate = spurSearch.run(source, spur, current.segments, i, rootPrice, found);
+                if (spurSearch.stopped) {
+                    return false;
+                }
+                if (candidate != null && known.add(candidate)) {
+                    candidates.add(candidate);
+                }
+                rootPrice += graph.prices[current.segments[i]];
+                spur = graph.destinations[current.segments[i]];
+            }
+            current = candidates.poll();
+            if (current == null) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Searches the cheapest trip from a spur airport to the destination, as an A* search with the prices to
+     * the destination, avoiding the airports of the root and the segments leaving the spur airport taken by
+     * trips already found with the same root. Its arrays are reused by every search: an airport was reached
+     * by the current search if its stamp is the one of the search.
+     * Airports are not reached past {@link #depthLimit} segments, so a spur search may miss a trip that is
+     * only cheaper with more segments, which truncates the search.
+     */
+    private final class SpurSearch {
+        private final int[] reachedStamp = new int[graph.airports.length];
+        private final int[] settledStamp = new int[graph.airports.length];
+        private final int[] blockedStamp = new int[graph.airports.length];
+        private final long[] price = new long[graph.airports.length];
+        private final int[] depth = new int[graph.airports.length];
+        private final int[] previousSegment = new int[graph.airports.length];
+        private final Set<Integer> blockedSegments = new HashSet<>();
+        private int stamp = 0;
+        /**
+         * Order of the paths created, so that paths of the same price are taken in the order they were found.
+         */
+        private long order = 0;
+        /**
+         * True once a search stopped at {@link #maxExpanded}: no more searches can be run.
+         */
+        private boolean stopped = false;
+
+        /**
+         * @param source id of the source airport
+         * @param spur id of the spur airport
+         * @param root segments of a trip found, whose first {@code rootLength} ones are the root
+         * @param rootLength number of segments of the root
+         * @param rootPrice price of the root
+         * @param found trips found so far
+         * @return the root followed by the cheapest trip from the spur airport, or null if there is none,
+         * or if the search {@link #stopped}
+         */
+        @Nullable
+        Path run(final int source,
+                 final int spur,
+                 @NotNull final int[] root,
+                 final int rootLength,
+                 final long rootPrice,
+                 @NotNull final List<Path> found) {
+            if (pricesToDestination[spur] == Long.MAX_VALUE) {
+                return null;
+            }
+            stamp++;
+            // airports of the root are visited already, the spur airport is where the search starts
+            int airport = source;
+            for (int i = 0; i < rootLength; i++) {
+                blockedStamp[airport] = stamp;
+                airport = graph.destinations[root[i]];
+            }
+            blockedSegments.clear();
+            for (final Path path : found) {
+                if (path.segments.length > rootLength && path.startsWith(root, rootLength)) {
+                    blockedSegments.add(path.segments[rootLength]);
+                }
+            }
+
+            final PriorityQueue<Entry> queue = new PriorityQueue<>();
+            reachedStamp[spur] = stamp;
+            price[spur] = 0;
+            depth[spur] = rootLength;
+            queue.add(new Entry(pricesToDestination[spur], spur));
+            while (!queue.isEmpty()) {
+                final int current = queue.poll().state;
+                if (settledStamp[current] == stamp) {
+                    continue; // a cheaper price was already found for this airport
+                }
+                settledStamp[current] = stamp;
+                settled++;
+                if (current == destination) {
+                    return toPath(spur, root, rootLength, rootPrice);
+                }
+                for (int segment = graph.firstSegment[current]; segment < graph.firstSegment[current + 1]; segment++) {
+                    final int next = graph.destinations[segment];
+                    final long toDestination = pricesToDestination[next];
+                    if (toDestination == Long.MAX_VALUE || blockedStamp[next] == stamp || next == spur
+                            || (current == spur && blockedSegments.contains(segment))) {
+                        continue;
+                    }
+                    final long newPrice = price[current] + graph.prices[segment];
+                    if (reachedStamp[next] != stamp || newPrice < price[next]) {
+                        if (depth[current] >= depthLimit) {
+                            truncated = true; // a trip that can reach the destination is cut short
+                            break;
+                        }
+                        if (expanded == maxExpanded) {
+                            truncated = true;
+                            stopped = true;
+                            return null; // the search flew as many segments as allowed
+                        }
+                        expanded++;
+                        reachedStamp[next] = stamp;
+                        price[next] = newPrice;
+                        depth[next] = depth[current] + 1;
+                        previousSegment[next] = segment;
+                        queue.add(new Entry(newPrice + toDestination, next));
+                    }
+                }
+            }
+            return null;
+        }
+
+        @NotNull
+        private Path toPath(final int spur, @NotNull final int[] root, final int rootLength, final long rootPrice) {
+            int spurLength = 0;
+            for (int airport = destination; airport != spur; airport = graph.sourceOf(previousSegment[airport])) {
+                spurLength++;
+            }
+            final int[] segments = Arrays.copyOf(root, rootLength + spurLength);
+            int i = segments.length;
+            for (int airport = destination; airport != spur; airport = graph.sourceOf(previousSegment[airport])) {
+                segments[--i] = previousSegment[airport];
+            }
+            return new Path(segments, rootPrice + price[destination], order++);
+        }
+    }
+
+    /**
+     * A trip without loops found by Yen's algorithm, as the indexes of its segments. Paths are equal if they
+     * have the same segments, and ordered by price, then by the order they were found.
+     */
+    private static final class Path implements Comparable<Path> {
+        private final int[] segments;
+        private final long price;
+        private final long order;
+
+        Path(@NotNull final int[] segments, final long price, final long order) {
+            this.segments = segments;
+            this.price = price;
+            this.order = order;
+        }
+
+        /**
+         * @return true if the first {@code length} segments of this path are the ones of {@code prefix}
+         */
+        boolean startsWith(@NotNull final int[] prefix, final int length) {
+            for (int i = 0; i < length; i++) {
+                if (segments[i] != prefix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int compareTo(@NotNull final Path other) {
+            final int byPrice = Long.compare(price, other.price);
+            return byPrice != 0 ? byPrice : Long.compare(order, other.order);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Path && Arrays.equals(segments, ((Path) other).segments);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(segments);
+        }
+    }
+
+    /**
+     * An entry in the priority queues of the searches: a state or airport, with its price plus the price left
+     * to the destination. Entries of the same price are taken in the order of their states, i.e., the order
+     * they were created in, for partial trips.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        private final long price;
+        private final int state;
+
+        Entry(final long price, final int state) {
+            this.price = price;
+            this.state = state;
+        }
+
+        @Override
+        public int compareTo(@NotNull final Entry other) {
+            final int byPrice = Long.compare(price, other.price);
+            return byPrice != 0 ? byPrice : Integer.compare(state, other.state);
+        }
+    }
+}
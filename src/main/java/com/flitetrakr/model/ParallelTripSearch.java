@@ -0,0 +1,215 @@
+package com.flitetrakr.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A {@link TripSearch} split in fork join tasks: every task searches the trips starting with a given
+ * list of segments, and forks one subtask per segment that can extend it, until the trips of the
+ * subtasks would have {@code splitDepth} segments. Then every subtask runs its own sequential search.
+ * Results of the subtasks are joined in the order of the segments, so trips are found in the same
+ * order as with the sequential search. With a consumer, the first subtask of a task that has the consumer gets it
+ * too, and passes its trips to the consumer as soon as it finds them, while the other subtasks keep theirs until
+ * the subtasks before them are done. When the consumer stops the search, the subtasks left are cancelled, and the
+ * ones running stop at their next chunk of segments (see {@link SearchBudget#stop()}). All the tasks take the segments they fly from the same {@link SearchBudget},
+ * the segments of the prefixes included, so a search flies as many segments at most as a sequential one. Which
+ * trips a truncated search finds depends on the order the tasks run in.
+ */
+/* package */ final class ParallelTripSearch extends RecursiveTask<List<Trip>> {
+    private static final long serialVersionUID = 1L;
+
+    private final IndexedGraph graph;
+    private final int source;
+    private final int destination;
+    private final boolean loopsAllowed;
+    private final long priceLimit;
+    private final int maxSegments;
+    @Nullable
+    private final long[] pricesToDestination;
+    private final int depthLimit;
+    private final SearchBudget budget;
+    private final int splitDepth;
+    /**
+     * Segments every trip found by this task starts with.
+     */
+    private final int[] prefix;
+    /**
+     * Receives the trips found by this task, or null if this task returns them.
+     */
+    @Nullable
+    private final TripConsumer consumer;
+    /**
+     * True once computed if this task or one of its subtasks was truncated by the limits of the search.
+     */
+    private boolean truncated;
+    /**
+     * True once computed if {@link #consumer} stopped the search.
+     */
+    private boolean stopped;
+
+    /**
+     * Constructor.
+     * @param graph the graph to search
+     * @param source id of the source airport
+     * @param destination id of the destination airport
+     * @param loopsAllowed true if an airport can be visited more than once
+     * @param priceLimit trips must cost less than this price
+     * @param maxSegments trips have at most this number of segments
+     * @param pricesToDestination price of the cheapest trip from every airport to the destination, or null,
+     *                            see {@link TripSearch}
+     * @param depthLimit trips are not extended past this number of segments, see {@link TripSearch}
+     * @param budget segments the whole search can fly, shared by all its tasks, see {@link TripSearch}
+     * @param splitDepth number of segments up to which subtasks are forked
+     * @param prefix segments every trip found by this task starts with
+     * @param consumer receives the trips found, and can stop the search, or null to return them
+     */
+    ParallelTripSearch(@NotNull final IndexedGraph graph,
+                       final int source,
+                       final int destination,
+                       final boolean loopsAllowed,
+                       final long priceLimit,
+                       final int maxSegments,
+                       @Nullable final long[] pricesToDestination,
+                       final int depthLimit,
+                       @NotNull final SearchBudget budget,
+                       final int splitDepth,
+                       @NotNull final int[] prefix,
+                       @Nullable final TripConsumer consumer) {
+        this.graph = graph;
+        this.source = source;
+        this.destination = destination;
+        this.loopsAllowed = loopsAllowed;
+        this.priceLimit = priceLimit;
+        this.maxSegments = maxSegments;
+        this.pricesToDestination = pricesToDestination;
+        this.depthLimit = depthLimit;
+        this.budget = budget;
+        this.splitDepth = splitDepth;
+        this.prefix = prefix;
+        this.consumer = consumer;
+    }
+
+    @Override
+    protected List<Trip> compute() {
+        final TripSearch search = new TripSearch(graph, destination, loopsAllowed, priceLimit, maxSegments,
+                pricesToDestination, depthLimit, budget);
+        final List<Trip> result = new ArrayList<>();
+        if (prefix.length >= splitDepth) {
+            search.run(source, prefix, prefix.length, consumer == null ? result::add : (Trip trip) -> {
+                if (!consumer.accept(trip)) {
+                    stop();
+                    return false;
+                }
+                return true;
+            });
+            truncated = search.isTruncated();
+            return result;
+        }
+        if (budget.isStopped()) {
+            return result; // the consumer already has all the trips it wants
+        }
+
+        long price = 0;
+        final long[] visited = TripSearch.newVisited(graph);
+        TripSearch.visit(visited, source);
+        int airport = source;
+        for (final int segment : prefix) {
+            price += graph.prices[segment];
+            airport = graph.destinations[segment];
+            TripSearch.visit(visited, airport);
+        }
+        final List<ParallelTripSearch> subtasks = new ArrayList<>();
+        for (int segment = graph.firstSegment[airport]; segment < graph.firstSegment[airport + 1]; segment++) {
+            if (search.canFly(price + graph.prices[segment], prefix.length, visited, graph.destinations[segment])) {
+                // the segment flown to the prefix of the subtask, as the sequential search would
+                if (budget.take(1) == 0) {
+                    truncated = !budget.isStopped();
+                    break;
+                }
+                final int[] subtaskPrefix = Arrays.copyOf(prefix, prefix.length + 1);
+                subtaskPrefix[prefix.length] = segment;
+                subtasks.add(new ParallelTripSearch(graph, source, destination, loopsAllowed, priceLimit, maxSegments,
+                        pricesToDestination, depthLimit, budget, splitDepth, subtaskPrefix,
+                        subtasks.isEmpty() ? consumer : null));
+            }
+        }
+        // trips cut short by the depth limit before they are split
+        truncated |= search.isTruncated();
+        if (consumer != null) {
+            pass(search, subtasks, consumer);
+            return result;
+        }
+        invokeAll(subtasks);
+
+        for (final ParallelTripSearch subtask : subtasks) {
+            // the trip made of the prefix of the subtask goes before the longer ones, as in the sequential search
+            if (search.isDestination(graph.destinations[subtask.prefix[prefix.length]])) {
+                result.add(graph.toTrip(source, subtask.prefix, subtask.prefix.length));
+            }
+            result.addAll(subtask.join());
+            truncated |= subtask.truncated;
+        }
+        return result;
+    }
+
+    /**
+     * Runs the subtasks, and passes their trips to the consumer in order: the first subtask passes its trips
+     * itself, and the trips of the others are passed once they are done.
+     */
+    private void pass(@NotNull final TripSearch search,
+                      @NotNull final List<ParallelTripSearch> subtasks,
+                      @NotNull final TripConsumer consumer) {
+        for (int i = subtasks.size() - 1; i >= 1; i--) {
+            subtasks.get(i).fork();
+        }
+        for (int i = 0; i < subtasks.size(); i++) {
+            final ParallelTripSearch subtask = subtasks.get(i);
+            if (stopped) {
+                subtask.cancel(false);
+                continue;
+            }
+            // the trip made of the prefix of the subtask goes before the longer ones, as in the sequential search
+            if (search.isDestination(graph.destinations[subtask.prefix[prefix.length]])
+                    && !consumer.accept(graph.toTrip(source, subtask.prefix, subtask.prefix.length))) {
+                stop();
+                subtask.cancel(false);
+                continue;
+            }
+            // the first subtask has the consumer, the trips of the others are passed here
+            for (final Trip trip : i == 0 ? subtask.invoke() : subtask.join()) {
+                if (!consumer.accept(trip)) {
+                    stop();
+                    break;
+                }
+            }
+            truncated |= subtask.truncated;
+            if (subtask.stopped) {
+                stop();
+            }
+        }
+    }
+
+    private void stop() {
+        stopped = true;
+        budget.stop();
+    }
+
+    /**
+     * @return true if this search was truncated by its limits, once it is computed
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return true if the consumer stopped this search, once it is computed
+     */
+    boolean isStopped() {
+        return stopped;
+    }
+}
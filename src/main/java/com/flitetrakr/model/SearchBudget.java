@@ -0,0 +1,73 @@
+package com.flitetrakr.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The segments a search of all trips can still fly, see {@link ConnectionGraph#setSearchLimits(int, long)}.
+ * A budget is shared by all the tasks of a {@link ParallelTripSearch}, so that the limit bounds the segments
+ * flown by the whole search, as it does for a sequential {@link TripSearch}. Searches take segments from it
+ * in chunks, so that they do not update the shared count for every segment, and give back the segments
+ * they did not fly when they end.
+ * A budget can also be stopped, when the consumer of the trips stopped the search: then no more segments
+ * can be taken, so that the tasks still running end at their next chunk.
+ */
+/* package */ final class SearchBudget {
+    /**
+     * Segments taken from the budget at once.
+     */
+    static final long CHUNK = 1024;
+
+    private final AtomicLong remaining;
+    private volatile boolean stopped = false;
+
+    /**
+     * Constructor.
+     * @param maxExpanded segments that can be flown, {@link Long#MAX_VALUE} for no limit
+     */
+    SearchBudget(final long maxExpanded) {
+        this.remaining = new AtomicLong(maxExpanded);
+    }
+
+    /**
+     * Takes segments from the budget.
+     * @param wanted segments wanted, at least 1
+     * @return the segments taken, fewer than {@code wanted} if there are not as many left, 0 if the budget is spent
+     * or stopped
+     */
+    long take(final long wanted) {
+        while (!stopped) {
+            final long left = remaining.get();
+            if (left <= 0) {
+                return 0;
+            }
+            final long taken = Math.min(left, wanted);
+            if (remaining.compareAndSet(left, left - taken)) {
+                return taken;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stops the searches taking segments from this budget, because their trips are no longer wanted.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return true if the searches were stopped by {@link #stop()}, rather than by spending the budget
+     */
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Gives back segments taken by {@link #take(long)} that were not flown.
+     */
+    void giveBack(final long segments) {
+        if (segments > 0) {
+            remaining.addAndGet(segments);
+        }
+    }
+}
@@ -25,6 +25,14 @@ public final class Trip {
         segments = new ArrayList<>();
     }
 
+    /**
+     * Creates a trip from segments already known to be connected.
+     * @param segments the segments of this trip, in order. The list is kept by the trip.
+     */
+    /* package */ Trip(@NotNull final List<FlightSegment> segments) {
+        this.segments = segments;
+    }
+
     /**
      * Gets the initial airport where this trip starts.
      * @return initial airport
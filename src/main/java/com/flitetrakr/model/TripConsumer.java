@@ -0,0 +1,48 @@
+package com.flitetrakr.model;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * This interface is intended to implement lambda expressions that receive
+ * the trips found by a search, as soon as they are found.
+ */
+public interface TripConsumer {
+    /**
+     * Receives a trip found by a search. The trip is not modified by the search afterwards,
+     * so it can be kept.
+     * @param trip a trip
+     * @return true if the search should continue, false to stop it
+     */
+    boolean accept(@NotNull Trip trip);
+
+    /**
+     * Called once, at the end of a search, if the search stopped at the limits set by
+     * {@link ConnectionGraph#setSearchLimits(int, long)}, so that some trips may be missing.
+     * By default, this does nothing.
+     */
+    default void truncated() {
+    }
+
+    /**
+     * Creates a consumer that passes at most {@code maxTrips} trips to {@code consumer}, and then stops the search.
+     * @param maxTrips maximum number of trips, greater than 0
+     * @param consumer a consumer
+     * @return a consumer stopping the search after {@code maxTrips} trips
+     */
+    @NotNull
+    static TripConsumer limit(final int maxTrips, @NotNull final TripConsumer consumer) {
+        return new TripConsumer() {
+            private int count = 0;
+
+            @Override
+            public boolean accept(@NotNull final Trip trip) {
+                return consumer.accept(trip) && ++count < maxTrips;
+            }
+
+            @Override
+            public void truncated() {
+                consumer.truncated();
+            }
+        };
+    }
+}
@@ -0,0 +1,278 @@
+package com.flitetrakr.model;
+
+import com.flitetrakr.metrics.Metrics;
+import com.flitetrakr.metrics.MetricsRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A depth first search of trips on an {@link IndexedGraph} bounded by price and number of segments.
+ * Unlike {@link ConnectionGraph#getAllTrips(Airport, Airport, boolean, DFSValidator)}, the search does
+ * not use a {@link Trip} while walking the graph: the current trip is a stack of segment indexes with
+ * its accumulated price, and airports already visited are kept in a bit set indexed by airport id.
+ * {@link Trip} objects are only created for the trips that are found.
+ * Trips are found in the same order as in {@link ConnectionGraph#getAllTrips(Airport, Airport, boolean, DFSValidator)}.
+ * When searching below a price, the search can be given the price of the cheapest trip from every airport
+ * to the destination (see {@link CheapestTripSearch#searchPricesTo(IndexedGraph, int, long)}), and then it
+ * never flies to an airport from which the destination cannot be reached below that price. This only prunes
+ * trips that would never reach the destination, so the same trips are found, in the same order.
+ * The search can also be limited, to bound the time and memory of searches with generous limits, e.g. with loops
+ * and a high price: trips are not extended past a number of segments, and the search stops once it has flown
+ * a number of segments, taken from a {@link SearchBudget} that can be shared by several searches. Unlike the price
+ * and segments of the question, these limits truncate the search, which is reported to the consumer,
+ * see {@link TripConsumer#truncated()}.
+ * The segments flown and pruned, and the trips found, are counted in fields while searching, and added to
+ * the {@link Metrics} once the search ends.
+ */
+/* package */ final class TripSearch {
+    private final IndexedGraph graph;
+    private final int destination;
+    private final boolean loopsAllowed;
+    private final long priceLimit;
+    private final int maxSegments;
+    /**
+     * Price of the cheapest trip from every airport to the destination, null if trips are not pruned by it.
+     */
+    @Nullable
+    private final long[] pricesToDestination;
+    /**
+     * Trips are not extended past this number of segments, see {@link ConnectionGraph#setSearchLimits(int, long)}.
+     */
+    private final int depthLimit;
+    /**
+     * The search stops once it has flown the segments of this budget, see {@link ConnectionGraph#setSearchLimits(int, long)}.
+     */
+    private final SearchBudget budget;
+    /**
+     * Segments taken from {@link #budget} and not flown yet.
+     */
+    private long allowance;
+
+    /**
+     * Segment used at every depth of the current trip.
+     */
+    private int[] tripSegments = new int[16];
+    /**
+     * Next segment to try at every depth of the current trip.
+     */
+    private int[] nextSegment = new int[17];
+    /**
+     * Airports visited by the current trip, see {@link #newVisited(IndexedGraph)}.
+     */
+    private final long[] visited;
+    /**
+     * Segments flown, i.e., trips extended by one segment, by the current search.
+     */
+    private long expanded;
+    /**
+     * Segments not flown because the trip would no longer be valid or could not reach the destination,
+     * by the current search.
+     */
+    private long pruned;
+    /**
+     * Trips found by the current search.
+     */
+    private long found;
+    /**
+     * True if the current search was truncated by {@link #depthLimit} or {@link #budget}.
+     */
+    private boolean truncated;
+
+    /**
+     * Constructor.
+     * @param graph the graph to search
+     * @param destination id of the destination airport
+     * @param loopsAllowed true if an airport can be visited more than once
+     * @param priceLimit trips must cost less than this price
+     * @param maxSegments trips have at most this number of segments
+     * @param pricesToDestination price of the cheapest trip from every airport to the destination,
+     *                            {@link Long#MAX_VALUE} if it cannot be reached, or null not to prune trips by it
+     * @param depthLimit trips are not extended past this number of segments, truncating the search
+     * @param budget the search stops once it has flown the segments of this budget, truncating the search
+     */
+    TripSearch(@NotNull final IndexedGraph graph,
+               final int destination,
+               final boolean loopsAllowed,
+               final long priceLimit,
+               final int maxSegments,
+               @Nullable final long[] pricesToDestination,
+               final int depthLimit,
+               @NotNull final SearchBudget budget) {
+        this.graph = graph;
+        this.destination = destination;
+        this.loopsAllowed = loopsAllowed;
+        this.priceLimit = priceLimit;
+        this.maxSegments = maxSegments;
+        this.pricesToDestination = pricesToDestination;
+        this.depthLimit = depthLimit;
+        this.budget = budget;
+        this.visited = newVisited(graph);
+    }
+
+    /**
+     * @return an empty bit set of the airports of {@code graph}, one bit per airport id
+     */
+    @NotNull
+    static long[] newVisited(@NotNull final IndexedGraph graph) {
+        return new long[(graph.airports.length + 63) >>> 6];
+    }
+
+    /**
+     * Marks an airport as visited in a bit set created by {@link #newVisited(IndexedGraph)}.
+     */
+    static void visit(@NotNull final long[] visited, final int airport) {
+        visited[airport >>> 6] |= 1L << airport;
+    }
+
+    /**
+     * Runs the search, passing every trip found to {@code consumer}.
+     * @param source id of the source airport
+     * @param consumer receives the trips found, and can stop the search
+     * @return true if the search was completed, false if it was stopped by {@code consumer} or truncated
+     */
+    boolean run(final int source, @NotNull final TripConsumer consumer) {
+        return run(source, tripSegments, 0, consumer);
+    }
+
+    /**
+     * Runs the search for the trips starting with the given segments, passing every trip found to {@code consumer}.
+     * The trip made of the given segments is not passed to {@code consumer}, only longer ones.
+     * @param source id of the source airport
+     * @param prefix indexes of the first segments of every trip, which must be a valid trip
+     * @param prefixLength number of segments in {@code prefix}
+     * @param consumer receives the trips found, and can stop the search
+     * @return true if the search was completed, false if it was stopped by {@code consumer} or truncated
+     */
+    boolean run(final int source, @NotNull final int[] prefix, final int prefixLength, @NotNull final TripConsumer consumer) {
+        expanded = 0;
+        pruned = 0;
+        found = 0;
+        truncated = false;
+        try {
+            final boolean completed = search(source, prefix, prefixLength, consumer);
+            if (truncated) {
+                consumer.truncated();
+            }
+            return completed && !truncated;
+        } finally {
+            budget.giveBack(allowance);
+            allowance = 0;
+            final MetricsRegistry metrics = Metrics.registry();
+            metrics.counter("search.trips.searches").increment();
+            metrics.counter("search.trips.expanded").add(expanded);
+            metrics.counter("search.trips.pruned").add(pruned);
+            metrics.counter("search.trips.found").add(found);
+            if (truncated) {
+                metrics.counter("search.trips.truncated").increment();
+            }
+        }
+    }
+
+    /**
+     * @return true if the last search was truncated by the limits of this search
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    private boolean search(final int source, @NotNull final int[] prefix, final int prefixLength, @NotNull final TripConsumer consumer) {
+        final int[] firstSegment = graph.firstSegment;
+        final int[] destinations = graph.destinations;
+        final int[] prices = graph.prices;
+
+        ensureCapacity(prefixLength);
+        System.arraycopy(prefix, 0, tripSegments, 0, prefixLength);
+        int depth = prefixLength;
+        long price = 0;
+        Arrays.fill(visited, 0);
+        visit(visited, source);
+        int airport = source;
+        for (int i = 0; i < prefixLength; i++) {
+            price += prices[prefix[i]];
+            airport = destinations[prefix[i]];
+            visit(visited, airport);
+        }
+        nextSegment[depth] = firstSegment[airport];
+        while (true) {
+            final int segment = nextSegment[depth];
+            if (segment < firstSegment[airport + 1]) {
+                nextSegment[depth] = segment + 1;
+                final int next = destinations[segment];
+                final long nextPrice = price + prices[segment];
+                if (!canFly(nextPrice, depth, visited, next)) {
+                    pruned++;
+                    continue; // the trip would no longer be valid
+                }
+                if (allowance == 0 && (allowance = budget.take(SearchBudget.CHUNK)) == 0) {
+                    // the search flew as many segments as allowed, unless it was stopped by another one
+                    truncated = !budget.isStopped();
+                    return false;
+                }
+                allowance--;
+                expanded++;
+                // move forward through this segment
+                ensureCapacity(depth + 1);
+                tripSegments[depth++] = segment;
+                nextSegment[depth] = firstSegment[next];
+                price = nextPrice;
+                visit(visited, next);
+                airport = next;
+                if (next == destination) {
+                    found++;
+                    if (!consumer.accept(graph.toTrip(source, tripSegments, depth))) {
+                        return false;
+                    }
+                }
+            } else {
+                // every segment was tried from this airport, go back
+                if (depth == prefixLength) {
+                    return true;
+                }
+                final int last = tripSegments[--depth];
+                price -= prices[last];
+                if (!loopsAllowed) {
+                    visited[airport >>> 6] &= ~(1L << airport);
+                }
+                airport = depth == 0 ? source : destinations[tripSegments[depth - 1]];
+            }
+        }
+    }
+
+    /**
+     * Checks if a trip can continue to the given airport.
+     * @param nextPrice price of the trip after flying to {@code next}
+     * @param depth number of segments of the trip before flying to {@code next}
+     * @param visited airports visited by the trip
+     * @param next id of the next airport
+     * @return true if the trip is still valid after flying to {@code next}, and can still reach the destination,
+     * without going past {@link #depthLimit}
+     */
+    boolean canFly(final long nextPrice, final int depth, @NotNull final long[] visited, final int next) {
+        if (nextPrice >= priceLimit || depth >= maxSegments
+                || (pricesToDestination != null && pricesToDestination[next] >= priceLimit - nextPrice)
+                || (!loopsAllowed && (visited[next >>> 6] & (1L << next)) != 0)) {
+            return false;
+        }
+        if (depth >= depthLimit) {
+            truncated = true; // a valid trip is cut short
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if {@code airport} is the destination of this search
+     */
+    boolean isDestination(final int airport) {
+        return airport == destination;
+    }
+
+    private void ensureCapacity(final int segments) {
+        if (segments > tripSegments.length) {
+            tripSegments = Arrays.copyOf(tripSegments, Math.max(segments, tripSegments.length * 2));
+            nextSegment = Arrays.copyOf(nextSegment, tripSegments.length + 1);
+        }
+    }
+}
@@ -9,4 +9,9 @@ abstract class AbstractQuestion implements Question{
      */
     int questionNumber;
 
+    @Override
+    public int getQuestionNumber() {
+        return questionNumber;
+    }
+
 }
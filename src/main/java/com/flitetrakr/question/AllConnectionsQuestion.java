@@ -5,7 +5,7 @@ import com.flitetrakr.model.ConnectionGraph;
 import com.flitetrakr.model.Trip;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
+import java.io.PrintStream;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -14,6 +14,10 @@ import java.util.stream.Collectors;
  * with any number of stops.
  */
 /* package */ final class AllConnectionsQuestion extends AbstractQuestion {
+    /**
+     * Printed after the connections found by a search stopped at the limits of the graph.
+     */
+    static final String TRUNCATED = " (search stopped at its limits, more connections may exist)";
     /**
      * Source airport
      */
@@ -47,17 +51,47 @@ import java.util.stream.Collectors;
     @NotNull
     public List<Trip> processQuestion(@NotNull final ConnectionGraph graph) {
         //System.out.println(String.format("%d find all connections between %s below %d Euros", questionNumber, Arrays.toString(this.airportList.toArray()) , this.price));
-        List<Trip> tripList = new ArrayList<>();
-        for (final Trip trip : graph.getAllTrips(source, destination, true, (Trip trip) -> trip.getPrice() < this.price)) {
-            if (trip.getDestination().isPresent() && trip.getDestination().get().equals(destination)) {
-                tripList.add(trip);
-            }
-        }
+        // loops are allowed, the price limit is what stops the search
+        final List<Trip> tripList = graph.getAllTrips(source, destination, true, this.price, Integer.MAX_VALUE);
         return tripList;
         //return String.format("#%d: %s", questionNumber, tripList.stream()
         //        .collect(Collectors.joining(", ")));
     }
 
+    /**
+     * Trips are printed as soon as they are found, so they are never kept in memory, except, with a parallel search
+     * (see {@link ConnectionGraph#setParallelSearch(java.util.concurrent.ForkJoinPool, int)}), the trips of the tasks
+     * waiting for the tasks before them.
+     * If the search is truncated by the limits of the graph (see {@link ConnectionGraph#setSearchLimits(int, long)}),
+     * the trips found are followed by {@link #TRUNCATED}.
+     */
+    @Override
+    public void printAnswer(@NotNull final ConnectionGraph graph, @NotNull final PrintStream out) {
+        out.print(String.format("#%d: ", questionNumber));
+        final boolean[] found = {false};
+        // every trip is accepted, so the search is only stopped by the limits
+        final boolean completed = graph.getAllTrips(source, destination, true, this.price, Integer.MAX_VALUE, (Trip trip) -> {
+            if (found[0]) {
+                out.print(", ");
+            }
+            out.print(trip);
+            found[0] = true;
+            return true;
+        });
+        out.println((found[0] ? "" : "No connections found!") + (completed ? "" : TRUNCATED));
+    }
+
+    @NotNull
+    @Override
+    public String getKey() {
+        return String.format("all %s-%s below %d", source, destination, price);
+    }
+
+    @Override
+    public boolean mayHaveChanged(@NotNull final ConnectionGraph graph, final long sinceVersion) {
+        return graph.mayHaveChangedTrips(source, destination, sinceVersion);
+    }
+
     @NotNull
     public String toString(@NotNull final List<Trip> trips) {
         if (trips.isEmpty()) {
@@ -0,0 +1,102 @@
+package com.flitetrakr.question;
+
+import com.flitetrakr.model.Airport;
+import com.flitetrakr.model.ConnectionGraph;
+import com.flitetrakr.model.Trip;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * This class can handle questions of the form What are the N cheapest connections from XXX to YYY?
+ * with any number of stops, optionally without loops.
+ */
+/* package */ final class CheapestConnectionsQuestion extends AbstractQuestion {
+    /**
+     * Largest number of connections that can be asked, so that a question cannot fill the memory.
+     */
+    static final int MAX_CONNECTIONS = 1000;
+    /**
+     * Source airport
+     */
+    private final Airport source;
+    /**
+     * Destination airport
+     */
+    private final Airport destination;
+    /**
+     * Maximum number of connections in the answer
+     */
+    private final int count;
+    /**
+     * True if connections can visit an airport more than once
+     */
+    private final boolean loopsAllowed;
+
+    /**
+     * Constructor
+     * @param questionNumber question number in input list
+     * @param from source airport
+     * @param to target airport
+     * @param count maximum number of connections
+     * @param loopsAllowed true if connections can visit an airport more than once
+     */
+    CheapestConnectionsQuestion(final int questionNumber,
+                                @NotNull final Airport from,
+                                @NotNull final Airport to,
+                                final int count,
+                                final boolean loopsAllowed) {
+        this.questionNumber = questionNumber;
+        this.source = from;
+        this.destination = to;
+        this.count = count;
+        this.loopsAllowed = loopsAllowed;
+    }
+
+    @NotNull
+    public List<Trip> processQuestion(@NotNull final ConnectionGraph graph) {
+        return graph.getCheapestTrips(source, destination, count, loopsAllowed);
+    }
+
+    /**
+     * Trips are printed as soon as they are found. If the search is truncated by the limits of the graph
+     * (see {@link ConnectionGraph#setSearchLimits(int, long)}), the trips found are followed by
+     * {@link AllConnectionsQuestion#TRUNCATED}.
+     */
+    @Override
+    public void printAnswer(@NotNull final ConnectionGraph graph, @NotNull final PrintStream out) {
+        out.print(String.format("#%d: ", questionNumber));
+        final boolean[] found = {false};
+        final boolean completed = graph.getCheapestTrips(source, destination, count, loopsAllowed, (Trip trip) -> {
+            if (found[0]) {
+                out.print(", ");
+            }
+            out.print(trip);
+            found[0] = true;
+            return true;
+        });
+        out.println((found[0] ? "" : "No connections found!") + (completed ? "" : AllConnectionsQuestion.TRUNCATED));
+    }
+
+    @NotNull
+    @Override
+    public String getKey() {
+        return String.format("cheapest %d %s-%s%s", count, source, destination, loopsAllowed ? "" : " without loops");
+    }
+
+    @Override
+    public boolean mayHaveChanged(@NotNull final ConnectionGraph graph, final long sinceVersion) {
+        return graph.mayHaveChangedTrips(source, destination, sinceVersion);
+    }
+
+    @NotNull
+    public String toString(@NotNull final List<Trip> trips) {
+        if (trips.isEmpty()) {
+            return String.format("#%d: No connections found!", questionNumber);
+        }
+        return String.format("#%d: %s", questionNumber, trips.stream().map(Trip::toString)
+                        .collect(Collectors.joining(", ")));
+    }
+}
@@ -4,9 +4,11 @@ import com.flitetrakr.model.Airport;
 import com.flitetrakr.model.ConnectionGraph;
 import com.flitetrakr.model.Trip;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * This class can handle questions of the form What is the cheapest connection XXX to YYY?
@@ -20,6 +22,15 @@ import java.util.List;
      * Destination airport
      */
     private final Airport destination;
+    /**
+     * Answer found before the question is asked, by {@link CheapestQuestionPlanner}, null if there is none.
+     */
+    @Nullable
+    private Optional<Trip> plannedAnswer;
+    /**
+     * Version of the graph {@link #plannedAnswer} was found on.
+     */
+    private long plannedVersion;
 
     /**
      * Constructor
@@ -33,27 +44,54 @@ import java.util.List;
         this.destination = to;
     }
 
+    /**
+     * @return the source airport of this question
+     */
+    @NotNull
+    Airport getSource() {
+        return source;
+    }
+
+    /**
+     * @return the destination airport of this question
+     */
+    @NotNull
+    Airport getDestination() {
+        return destination;
+    }
+
+    /**
+     * Sets the answer of this question, found before it is asked. The question is only answered with it
+     * on the same version of the graph. This must be done before the question is shared with other threads.
+     * @param graphVersion version of the graph the answer was found on
+     * @param cheapestTrip the cheapest trip, or an empty optional if there is none
+     */
+    void setAnswer(final long graphVersion, @NotNull final Optional<Trip> cheapestTrip) {
+        this.plannedVersion = graphVersion;
+        this.plannedAnswer = cheapestTrip;
+    }
+
     @NotNull
     public List<Trip> processQuestion(@NotNull final ConnectionGraph graph) {
         // System.out.println(String.format("%d cheapest connection between %s ", questionNumber, Arrays.toString(this.airportList.toArray())));
-        int cheapestPrice = Integer.MAX_VALUE;
-        List<Trip> result = new ArrayList<>();
-        Trip cheapestTrip = null;
-        for (final Trip trip : graph.getAllTrips(source, destination, source.equals(destination), (Trip trip) -> (source.equals(destination) && trip.getDestination().isPresent() && destination.equals(trip.getDestination().get()) ) || !trip.containsLoops())) {
-            // System.out.println(String.format("Trip: %s", trip));
-            if (trip.getPrice() < cheapestPrice) {
-                cheapestTrip = trip;
-                cheapestPrice = trip.getPrice();
-            }
-        }
-
-        if (cheapestTrip != null) {
-            result.add(cheapestTrip);
-            //return String.format("#%d: %s", questionNumber, cheapestTrip);
-        }
+        final List<Trip> result = new ArrayList<>();
+        final Optional<Trip> cheapestTrip = plannedAnswer != null && plannedVersion == graph.getVersion()
+                ? plannedAnswer : graph.getCheapestTrip(source, destination);
+        cheapestTrip.ifPresent(result::add);
         return result;
     }
 
+    @NotNull
+    @Override
+    public String getKey() {
+        return String.format("cheapest %s-%s", source, destination);
+    }
+
+    @Override
+    public boolean mayHaveChanged(@NotNull final ConnectionGraph graph, final long sinceVersion) {
+        return graph.mayHaveChangedTrips(source, destination, sinceVersion);
+    }
+
     @NotNull
     public String toString(@NotNull final List<Trip> trips) {
         if (trips.isEmpty()) {
@@ -0,0 +1,124 @@
+package com.flitetrakr.question;
+
+import com.flitetrakr.model.Airport;
+import com.flitetrakr.model.ConnectionGraph;
+import com.flitetrakr.model.Trip;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Prepares a {@link ConnectionGraph} before answering a list of questions, to answer the questions for
+ * cheapest connections faster than searching every one of them on demand: either the cheapest trips between
+ * every pair of airports are precomputed, or questions are grouped by source airport, and a single search
+ * from every source of several questions finds the answers of all of them.
+ */
+public final class CheapestQuestionPlanner {
+
+    /**
+     * When the cheapest trips between every pair of airports are precomputed.
+     */
+    public enum Precomputation {
+        /**
+         * Never precompute, search every cheapest connection on demand.
+         */
+        NEVER,
+        /**
+         * Never precompute between every pair of airports, but answer the questions with the same source
+         * with a single search, see {@link #answerBySource(ConnectionGraph, List)}.
+         */
+        SOURCES,
+        /**
+         * Precompute when it is expected to be faster than searching on demand, see {@link #paysOff(int, int)},
+         * and otherwise answer the questions with the same source with a single search, as with {@link #SOURCES}.
+         */
+        AUTO,
+        /**
+         * Always precompute.
+         */
+        ALWAYS
+    }
+
+    /**
+     * Precomputing takes 12 bytes per pair of airports, so it is not done automatically above this size.
+     */
+    private static final long MAX_AUTO_PRECOMPUTATION_BYTES = 256L * 1024 * 1024;
+
+    private CheapestQuestionPlanner() {
+    }
+
+    /**
+     * Prepares the graph for answering the given questions.
+     * @param graph a graph which is not frozen
+     * @param questions questions that will be answered on {@code graph}
+     * @param precomputation when to precompute the cheapest trips between every pair of airports
+     */
+    public static void prepare(@NotNull final ConnectionGraph graph,
+                               @NotNull final List<Question> questions,
+                               @NotNull final Precomputation precomputation) {
+        final int cheapestQuestions = (int) questions.stream().filter(question -> question instanceof CheapestQuestion).count();
+        if (precomputation == Precomputation.ALWAYS
+                || (precomputation == Precomputation.AUTO && paysOff(graph.getNodes().size(), cheapestQuestions))) {
+            graph.precomputeCheapestTrips();
+        } else if (precomputation != Precomputation.NEVER && !graph.hasContractionHierarchy()) {
+            // a query of the hierarchy settles fewer airports than a search for several destinations
+            answerBySource(graph, questions);
+        }
+    }
+
+    /**
+     * Groups the questions for cheapest connections by source airport, and answers the questions of every source
+     * of several questions with a single search, which stops once the trips to all their destinations are found.
+     * The search costs as much as the one for the farthest destination, instead of as much as all of them.
+     * Questions keep their answer for the current version of the graph, and search again on other versions.
+     * @param graph a graph
+     * @param questions questions that will be answered on {@code graph}
+     * @return the number of questions answered
+     */
+    static int answerBySource(@NotNull final ConnectionGraph graph, @NotNull final List<Question> questions) {
+        final Map<Airport, List<CheapestQuestion>> questionsBySource = new LinkedHashMap<>();
+        for (final Question question : questions) {
+            if (question instanceof CheapestQuestion) {
+                final CheapestQuestion cheapest = (CheapestQuestion) question;
+                questionsBySource.computeIfAbsent(cheapest.getSource(), source -> new ArrayList<>()).add(cheapest);
+            }
+        }
+        final long version = graph.getVersion();
+        int answered = 0;
+        for (final Map.Entry<Airport, List<CheapestQuestion>> entry : questionsBySource.entrySet()) {
+            final List<CheapestQuestion> sameSource = entry.getValue();
+            if (sameSource.size() < 2) {
+                continue; // a search on demand is as fast
+            }
+            final List<Airport> destinations = new ArrayList<>(sameSource.size());
+            for (final CheapestQuestion question : sameSource) {
+                destinations.add(question.getDestination());
+            }
+            final Map<Airport, Optional<Trip>> trips = graph.getCheapestTrips(entry.getKey(), destinations);
+            for (final CheapestQuestion question : sameSource) {
+                question.setAnswer(version, trips.get(question.getDestination()));
+            }
+            answered += sameSource.size();
+        }
+        return answered;
+    }
+
+    /**
+     * Decides if precomputing the cheapest trips between every pair of airports is expected to be faster
+     * than searching every cheapest connection on demand.
+     * Precomputing runs one search per airport, each one visiting the whole graph, while a search on demand
+     * stops when the destination is found, which on average means visiting half of the graph.
+     * So precomputing pays off from twice as many questions as airports, as long as the table fits in memory.
+     * @param airports number of airports in the graph
+     * @param cheapestQuestions number of questions for cheapest connections
+     * @return true if precomputing is expected to pay off
+     */
+    static boolean paysOff(final int airports, final int cheapestQuestions) {
+        final long tableBytes = 12L * airports * airports;
+        return tableBytes <= MAX_AUTO_PRECOMPUTATION_BYTES && cheapestQuestions >= 2L * airports;
+    }
+}
@@ -8,6 +8,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * This class can handle questions of the form What is the price of the connection XXX-YYY-ZZZ
@@ -41,8 +42,8 @@ import java.util.List;
             Airport src = airportList.get(i);
             Airport dst = airportList.get(i + 1);
             boolean isSegmentValid = false;
-            for (final FlightSegment edge : graph.getEdges()) {
-                if (edge.getSource().equals(src) && edge.getDestination().equals(dst)) {
+            for (final FlightSegment edge : graph.getOutgoingEdges(src)) {
+                if (edge.getDestination().equals(dst)) {
                     trip.addSegment(edge);
                     isSegmentValid = true;
                     break;
@@ -58,6 +59,23 @@ import java.util.List;
         //
     }
 
+    @NotNull
+    @Override
+    public String getKey() {
+        return "price " + airportList.stream().map(Airport::toString).collect(Collectors.joining("-"));
+    }
+
+    @Override
+    public boolean mayHaveChanged(@NotNull final ConnectionGraph graph, final long sinceVersion) {
+        // only the segments between consecutive airports are used
+        for (int i = 0; i < airportList.size() - 1; i++) {
+            if (graph.mayHaveChangedSegments(airportList.get(i), airportList.get(i + 1), sinceVersion)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @NotNull
     public String toString(@NotNull final List<Trip> trips) {
         if (trips.isEmpty()) {
@@ -3,9 +3,9 @@ package com.flitetrakr.question;
 import com.flitetrakr.model.Airport;
 import com.flitetrakr.model.ConnectionGraph;
 import com.flitetrakr.model.Trip;
-import com.flitetrakr.model.DFSValidator;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -74,6 +74,22 @@ import java.util.List;
      * Number of stops allowed in the question.
      */
     private final int stops;
+    /**
+     * Additional maximum number of stops, or {@link #NO_MAXIMUM_STOPS} if the question has no such condition.
+     * It is what makes questions with a minimum number of stops answerable.
+     */
+    private final int maximumStops;
+
+    /**
+     * Value of {@link #maximumStops} for questions without an additional maximum number of stops.
+     */
+    /* package */ static final int NO_MAXIMUM_STOPS = -1;
+
+    /**
+     * Largest additional maximum number of stops that can be asked: trips are counted one number of segments
+     * after the other, so a question cannot make the count run for billions of steps.
+     */
+    /* package */ static final int MAX_STOPS = 1000;
 
     /**
      * Constructor
@@ -88,52 +104,146 @@ import java.util.List;
                                  @NotNull final Airport to,
                                  @NotNull final DifferentConnectionsQuestion.StopsComparison operator,
                                  final int stops) {
+        this(questionNumber, from, to, operator, stops, NO_MAXIMUM_STOPS);
+    }
+
+    /**
+     * Constructor
+     * @param questionNumber question number in input list
+     * @param from source airport
+     * @param to target airport
+     * @param operator operator that is combined with stops
+     * @param stops number of stops to be considered in operator
+     * @param maximumStops additional maximum number of stops, or {@link #NO_MAXIMUM_STOPS}
+     */
+    DifferentConnectionsQuestion(final int questionNumber,
+                                 @NotNull final Airport from,
+                                 @NotNull final Airport to,
+                                 @NotNull final DifferentConnectionsQuestion.StopsComparison operator,
+                                 final int stops,
+                                 final int maximumStops) {
         this.questionNumber = questionNumber;
         this.source = from;
         this.destination = to;
         this.operator = operator;
         this.stops = stops;
+        this.maximumStops = maximumStops;
     }
 
     @NotNull
     public List<Trip> processQuestion(@NotNull final ConnectionGraph graph) {
         // System.out.println(String.format("#%d find connections between %s with %s %d stops", questionNumber, Arrays.toString(this.airportList.toArray()), this.operator, this.stops));
-        final DFSValidator dfsValidator;
-        final TripValidator tripValidator;
+        if (isUnbounded()) {
+            System.out.println(infiniteLoopWarning());
+            return new ArrayList<>();
+        }
+        final int minStops = getMinimumStops();
+        final int maxStops = getMaximumStops();
+        // note that we need to keep searching until we get to the maximum number of stops desired
+        // For example, if we want exactly 3 stops, trips with 0, 1 and 2 stops are potentially
+        // valid, and we need to continue searching in case they finally result in trips with 3 stops.
+        final TripValidator tripValidator = (Trip trip) -> trip.getStopsNumber() >= minStops;
+        final List<Trip> result = new ArrayList<>();
+        for (final Trip trip : graph.getAllTrips(source, destination, true, Integer.MAX_VALUE, maxStops)) {
+            if (tripValidator.validTrip(trip)) {
+                result.add(trip);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Only the number of trips is printed, so trips are counted without building them.
+     */
+    @Override
+    public void printAnswer(@NotNull final ConnectionGraph graph, @NotNull final PrintStream out) {
+        if (isUnbounded()) {
+            out.println(infiniteLoopWarning());
+            out.println(String.format("#%d: %d", questionNumber, 0));
+            return;
+        }
+        try {
+            final long count = graph.countTrips(source, destination, toSegments(getMinimumStops()), toSegments(getMaximumStops()));
+            out.println(String.format("#%d: %d", questionNumber, count));
+        } catch (final ArithmeticException ex) {
+            out.println(String.format("#%d: %s", questionNumber, "Too many connections to be counted"));
+        }
+    }
+
+    /**
+     * Different operators can ask for the same range of stops (e.g. maximum 3 and minimum 0 and maximum 3),
+     * so the key uses the range of stops.
+     */
+    @NotNull
+    @Override
+    public String getKey() {
+        if (isUnbounded()) {
+            return String.format("count %s-%s stops %d-", source, destination, getMinimumStops());
+        }
+        return String.format("count %s-%s stops %d-%d", source, destination, getMinimumStops(), getMaximumStops());
+    }
+
+    @Override
+    public boolean mayHaveChanged(@NotNull final ConnectionGraph graph, final long sinceVersion) {
+        return graph.mayHaveChangedTrips(source, destination, sinceVersion);
+    }
+
+    /**
+     * Looking for a minimum number of stops without a maximum could result in infinite loops, however that is
+     * allowed by the exercise statement. In a real situation we should add some other condition (e.g. max stops)
+     * @return true if the search for this question would never stop
+     */
+    private boolean isUnbounded() {
+        return this.operator == StopsComparison.AtLeast && this.maximumStops == NO_MAXIMUM_STOPS;
+    }
+
+    @NotNull
+    private String infiniteLoopWarning() {
+        return String.format("#%d: %s", questionNumber, "Looking for a minimum number of stops might result in a infinite loop. The current problem statement is wrong and needs to add an additional condition ");
+    }
+
+    /**
+     * @return the minimum number of stops of a valid trip.
+     */
+    private int getMinimumStops() {
         switch (this.operator) {
-            // in all cases, we take 2 from the number of airports, since the initial and end
-            // airports are not part of the stops
             case Exactly:
-                tripValidator = (Trip trip) -> trip.getStopsNumber() == this.stops;
-                // note that we need to keep searching until we get to the actual number of stops desired
-                // For example, if we want exactly 3 stops, trips with 0, 1 and 2 stops are potentially
-                // valid, and we need to continue searching in case they finally result in trips with 3 stops.
-                dfsValidator = (Trip trip) -> trip.getStopsNumber() <= this.stops;
-                break;
+            case AtLeast:
+                return this.stops;
             case AtMost:
-                tripValidator = (Trip trip) -> trip.getStopsNumber() <= this.stops;
-                dfsValidator = (Trip trip) -> trip.getStopsNumber() <= this.stops;
+                return 0;
+            default:
+                // we should never get here, unless a new operator is added.
+                throw new IllegalArgumentException("Unexpected operation: " + this.operator);
+        }
+    }
+
+    /**
+     * @return the maximum number of stops of a valid trip. Should not be called for unbounded questions.
+     */
+    private int getMaximumStops() {
+        final int operatorMaximum;
+        switch (this.operator) {
+            case Exactly:
+            case AtMost:
+                operatorMaximum = this.stops;
                 break;
             case AtLeast:
-                tripValidator = (Trip trip) -> trip.getStopsNumber() >= this.stops;
-                // This could result in infinite loops, however that is allowed by the
-                // exercise statement. In a real situation we should add some other condition (e.g. max price)
-                // note that we always keep searching, and we cannot stop the search.
-                // dfsValidator = (Trip trip) -> true;
-                System.out.println(String.format("#%d: %s", questionNumber, "Looking for a minimum number of stops might result in a infinite loop. The current problem statement is wrong and needs to add an additional condition "));
-                return new ArrayList<>();
-                // break;
+                operatorMaximum = Integer.MAX_VALUE;
+                break;
             default:
                 // we should never get here, unless a new operator is added.
                 throw new IllegalArgumentException("Unexpected operation: " + this.operator);
         }
-        final List<Trip> result = new ArrayList<>();
-        for (final Trip trip : graph.getAllTrips(source, destination, true, dfsValidator)) {
-            if (tripValidator.validTrip(trip)) {
-                result.add(trip);
-            }
-        }
-        return result;
+        return this.maximumStops == NO_MAXIMUM_STOPS ? operatorMaximum : Math.min(operatorMaximum, this.maximumStops);
+    }
+
+    /**
+     * @return the number of segments of a trip with {@code stops} stops, {@link Integer#MAX_VALUE} at most
+     */
+    private static int toSegments(final int stops) {
+        // a trip with n stops has n+1 segments
+        return stops == Integer.MAX_VALUE ? Integer.MAX_VALUE : stops + 1;
     }
 
     @NotNull
@@ -4,6 +4,7 @@ import com.flitetrakr.model.ConnectionGraph;
 import com.flitetrakr.model.Trip;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.PrintStream;
 import java.util.List;
 
 /**
@@ -27,4 +28,40 @@ public interface Question {
      */
     @NotNull
     String toString(@NotNull final List<Trip> trips);
-}
\ No newline at end of file
+
+    /**
+     * @return the question number as specified in the input file.
+     */
+    int getQuestionNumber();
+
+    /**
+     * Gets a canonical form of this question, which does not depend on the question number nor on the wording
+     * of the question: two questions with the same key always have the same answer on the same graph.
+     * @return the key of this question.
+     */
+    @NotNull
+    String getKey();
+
+    /**
+     * Checks if the answer of this question may have changed since a previous version of the graph,
+     * so that answers computed on that version can be reused when it did not.
+     * By default, every change of the graph may change the answer.
+     * @param graph a {@link ConnectionGraph}.
+     * @param sinceVersion a previous version of {@code graph}, see {@link ConnectionGraph#getVersion()}
+     * @return false if the answer is the same as on {@code sinceVersion}
+     */
+    default boolean mayHaveChanged(@NotNull final ConnectionGraph graph, final long sinceVersion) {
+        return graph.getVersion() != sinceVersion;
+    }
+
+    /**
+     * Answers this question on the given {@link ConnectionGraph}, printing the result on {@code out}.
+     * By default the result is the one of {@link #toString(List)} applied to {@link #processQuestion(ConnectionGraph)}.
+     * Questions that do not need every trip to build their answer can override this method.
+     * @param graph a {@link ConnectionGraph}.
+     * @param out where the answer is printed.
+     */
+    default void printAnswer(@NotNull final ConnectionGraph graph, @NotNull final PrintStream out) {
+        out.println(toString(processQuestion(graph)));
+    }
+}
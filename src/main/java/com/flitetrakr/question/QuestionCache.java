@@ -0,0 +1,139 @@
+package com.flitetrakr.question;
+
+import com.flitetrakr.metrics.Metrics;
+import com.flitetrakr.model.ConnectionGraph;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of answers of questions, keyed by {@link Question#getKey()}, so that questions asked several
+ * times (even with different question numbers) are only answered once per graph.
+ * Every answer is stored together with the {@link ConnectionGraph#getVersion()} of the graph it was computed on,
+ * so once the graph is modified, answers are only recomputed if {@link Question#mayHaveChanged(ConnectionGraph, long)}.
+ * The cache holds at most a given number of answers, evicting the least recently used ones.
+ * This class is thread safe.
+ */
+public final class QuestionCache {
+
+    /**
+     * An answer, made of the lines printed by a question without their question number prefix.
+     */
+    private static final class Answer {
+        private final long graphVersion;
+        private final String[] lines;
+
+        Answer(final long graphVersion, @NotNull final String[] lines) {
+            this.graphVersion = graphVersion;
+            this.lines = lines;
+        }
+    }
+
+    /**
+     * Answers by question key, in access order.
+     */
+    private final Map<String, Answer> answers;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Constructor.
+     * @param maxEntries maximum number of answers kept in this cache
+     */
+    public QuestionCache(final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("A cache needs at least one entry: " + maxEntries);
+        }
+        this.answers = new LinkedHashMap<String, Answer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Answer> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Answers the given question, like {@link Question#printAnswer(ConnectionGraph, PrintStream)}, but prints
+     * the cached answer if the same question was already answered on the same version of the graph,
+     * or on a previous version whose changes do not change the answer.
+     * @param question a question
+     * @param graph a {@link ConnectionGraph}.
+     * @param out where the answer is printed.
+     */
+    public void printAnswer(@NotNull final Question question,
+                            @NotNull final ConnectionGraph graph,
+                            @NotNull final PrintStream out) {
+        final String key = question.getKey();
+        final String prefix = String.format("#%d: ", question.getQuestionNumber());
+        Answer answer;
+        synchronized (this) {
+            answer = answers.get(key);
+        }
+        // checking changes may take as long as a search, so it is done without holding the lock
+        final long version = graph.getVersion();
+        final boolean valid = answer != null
+                && (answer.graphVersion == version || !question.mayHaveChanged(graph, answer.graphVersion));
+        synchronized (this) {
+            if (valid) {
+                hits++;
+                Metrics.registry().counter("cache.hits").increment();
+                if (answer.graphVersion != version) {
+                    // still valid on this version, so it is not checked again
+                    answers.put(key, new Answer(version, answer.lines));
+                }
+            } else {
+                misses++;
+                Metrics.registry().counter("cache.misses").increment();
+                answer = null;
+            }
+        }
+
+        if (answer == null) {
+            // not cached, or computed on an older graph: answer the question without holding the lock
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            question.printAnswer(graph, new PrintStream(buffer, true));
+            final String[] lines = buffer.toString().split("\\R");
+            for (int i = 0; i < lines.length; i++) {
+                if (!lines[i].startsWith(prefix)) {
+                    // unexpected answer format, print it as it is and do not cache it
+                    out.print(buffer.toString());
+                    return;
+                }
+                lines[i] = lines[i].substring(prefix.length());
+            }
+            answer = new Answer(version, lines);
+            synchronized (this) {
+                answers.put(key, answer);
+            }
+        }
+
+        for (final String line : answer.lines) {
+            out.print(prefix);
+            out.println(line);
+        }
+    }
+
+    /**
+     * @return the number of questions answered from this cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of questions that had to be answered because they were not in this cache.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of answers in this cache.
+     */
+    public synchronized int size() {
+        return answers.size();
+    }
+}
@@ -3,7 +3,9 @@ package com.flitetrakr.question;
 import com.flitetrakr.model.Airport;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -27,6 +29,12 @@ public final class QuestionFactory {
     @NonNls
     private final static Pattern cheapestPricePattern = Pattern.compile("#(\\d+):\\sWhat is the cheapest connection from (.*)\\?");
 
+    /**
+     * Pattern of the questions for {@link CheapestConnectionsQuestion}.
+     */
+    @NonNls
+    private final static Pattern cheapestConnectionsPattern = Pattern.compile("#(\\d+):\\sWhat are the (\\d+) cheapest connection[s]? from (.*?)( without loops)?\\?");
+
     /**
      * Pattern of the questions for {@link AllConnectionsQuestion}
      */
@@ -37,7 +45,7 @@ public final class QuestionFactory {
      * Pattern of the questions for {@link DifferentConnectionsQuestion}.
      */
     @NonNls
-    private final static Pattern differentConnectionsPattern = Pattern.compile("#(\\d+):\\sHow many different connections with (maximum|minimum|exactly) (\\d) stop[s]? exist between (.*)\\?");
+    private final static Pattern differentConnectionsPattern = Pattern.compile("#(\\d+):\\sHow many different connections with (maximum|minimum|exactly) (\\d) stop[s]?(?: and maximum (\\d+) stop[s]?)? exist between (.*)\\?");
 
 
 
@@ -46,53 +54,94 @@ public final class QuestionFactory {
      * as a list for further processing
      * @param str a string with 2 or more airport codes
      * @param delimiter a delimiter separating the airports.
+     * @param errors stream the wrong airports are reported on
      */
     @NotNull
-    private static List<Airport> extractAirports(@NotNull final String str, @NotNull  final String delimiter) {
+    private static List<Airport> extractAirports(@NotNull final String str,
+                                                 @NotNull  final String delimiter,
+                                                 @NotNull final PrintStream errors) {
         final List<Airport> result = new ArrayList<>();
         for (final String airport : str.split(delimiter)) {
             try {
                 result.add(Airport.valueOf(airport));
             } catch (final IllegalArgumentException ex) {
-                System.out.println("Wrong airport " + airport + ": " + ex.getMessage());
+                errors.println("Wrong airport " + airport + ": " + ex.getMessage());
             }
         }
         return result;
     }
 
+    /**
+     * Creates the question asked in a line.
+     * Lines in the usual form, e.g. {@code #1: What is the price of the connection NUE-FRA?}, are parsed
+     * by looking at their fixed texts and fields one after the other, see {@link #parseQuestion(String, PrintStream)}.
+     * Any other line is matched against the patterns of every question, which gives the same questions
+     * for the usual lines, and supports variations such as text before the question number.
+     * Why a line is not a valid question is printed on the console.
+     * @param line a line with a question
+     * @return the question, or an empty optional if the line is not a valid question.
+     */
+    @NotNull
     public static Optional<Question> getQuestion(@NotNull final String line) {
+        return getQuestion(line, System.out);
+    }
+
+    /**
+     * Creates the question asked in a line, see {@link #getQuestion(String)}.
+     * @param line a line with a question
+     * @param errors stream why the line is not a valid question is printed on
+     * @return the question, or an empty optional if the line is not a valid question.
+     */
+    @NotNull
+    public static Optional<Question> getQuestion(@NotNull final String line, @NotNull final PrintStream errors) {
+        final Optional<Question> question = parseQuestion(line, errors);
+        return question != null ? question : getQuestionWithPatterns(line, errors);
+    }
+
+    /**
+     * Creates the question asked in a line with the patterns of every question, trying them in order.
+     * @param line a line with a question
+     * @param errors stream why the line is not a valid question is printed on
+     * @return the question, or an empty optional if the line is not a valid question.
+     */
+    @NotNull
+    /* package */ static Optional<Question> getQuestionWithPatterns(@NotNull final String line,
+                                                                    @NotNull final PrintStream errors) {
         Matcher m = connectionPricePattern.matcher(line);
         if (m.find()) {
             // note that m.group(1) is a number, since this is ensured by the RE
             final int questionNumber = Integer.valueOf(m.group(1));
 
-            return Optional.of(new ConnectionPriceQuestion(questionNumber, extractAirports(m.group(2), "-")));
+            return Optional.of(new ConnectionPriceQuestion(questionNumber, extractAirports(m.group(2), "-", errors)));
         }
 
         m = cheapestPricePattern.matcher(line);
         if (m.find()) {
             // note that m.group(1) is a number, since this is ensured by the RE
             final int questionNumber = Integer.valueOf(m.group(1));
-            final List<Airport> airports = extractAirports(m.group(2), " to ");
+            return createCheapestQuestion(line, errors, questionNumber, extractAirports(m.group(2), " to ", errors));
+        }
 
-            if (airports.size() != 2) {
-                System.out.println("Wrong number of airports in " + line);
+        m = cheapestConnectionsPattern.matcher(line);
+        if (m.find()) {
+            // note that m.group(1) is a number, since this is ensured by the RE
+            final int questionNumber = Integer.valueOf(m.group(1));
+            try {
+                final int count = Integer.valueOf(m.group(2));
+                return createCheapestConnectionsQuestion(line, errors, questionNumber, extractAirports(m.group(3), " to ", errors),
+                        count, m.group(4) == null);
+            } catch (final NumberFormatException ex) {
+                errors.println("Wrong number of connections in " + line);
                 return Optional.empty();
             }
-            return Optional.of(new CheapestQuestion(questionNumber, airports.get(0), airports.get(1)));
         }
 
         m = allConnectionsPattern.matcher(line);
         if (m.find()) {
             // note that m.group(1) is a number, since this is ensured by the RE
             final int questionNumber = Integer.valueOf(m.group(1));
-            final List<Airport> airports = extractAirports(m.group(2), " to ");
-
-            if (airports.size() != 2) {
-                System.out.println("Wrong number of airports in " + line);
-                return Optional.empty();
-            }
-            return Optional.of(new AllConnectionsQuestion(questionNumber, airports.get(0), airports.get(1), Integer.valueOf(m.group(3))));
+            final List<Airport> airports = extractAirports(m.group(2), " to ", errors);
+            return createAllConnectionsQuestion(line, errors, questionNumber, airports, Integer.valueOf(m.group(3)));
         }
 
         m = differentConnectionsPattern.matcher(line);
@@ -100,24 +149,326 @@ public final class QuestionFactory {
         if (m.find()) {
             // note that m.group(1) is a number, since this is ensured by the RE
             final int questionNumber = Integer.valueOf(m.group(1));
+            final int stops = Integer.valueOf(m.group(3));
+            // an optional maximum number of stops can bound any question, e.g. one with a minimum number of stops
+            final int maximumStops;
             try {
-                final DifferentConnectionsQuestion.StopsComparison comparisonOperator = DifferentConnectionsQuestion.StopsComparison.fromString(m.group(2));
+                maximumStops = m.group(4) == null ? DifferentConnectionsQuestion.NO_MAXIMUM_STOPS : Integer.valueOf(m.group(4));
+            } catch (final NumberFormatException ex) {
+                errors.println("Wrong number of stops in " + line);
+                return Optional.empty();
+            }
+            return createDifferentConnectionsQuestion(line, errors, questionNumber, m.group(2), stops, maximumStops,
+                    extractAirports(m.group(5), " and ", errors));
+        }
+
+        return Optional.empty();
+    }
+
+    @NotNull
+    private static Optional<Question> createCheapestQuestion(@NotNull final String line,
+                                                             @NotNull final PrintStream errors,
+                                                             final int questionNumber,
+                                                             @NotNull final List<Airport> airports) {
+        if (airports.size() != 2) {
+            errors.println("Wrong number of airports in " + line);
+            return Optional.empty();
+        }
+        return Optional.of(new CheapestQuestion(questionNumber, airports.get(0), airports.get(1)));
+    }
+
+    @NotNull
+    private static Optional<Question> createCheapestConnectionsQuestion(@NotNull final String line,
+                                                                        @NotNull final PrintStream errors,
+                                                                        final int questionNumber,
+                                                                        @NotNull final List<Airport> airports,
+                                                                        final int count,
+                                                                        final boolean loopsAllowed) {
+        if (airports.size() != 2) {
+            errors.println("Wrong number of airports in " + line);
+            return Optional.empty();
+        }
+        if (count < 1 || count > CheapestConnectionsQuestion.MAX_CONNECTIONS) {
+            errors.println("Wrong number of connections in " + line);
+            return Optional.empty();
+        }
+        return Optional.of(new CheapestConnectionsQuestion(questionNumber, airports.get(0), airports.get(1), count, loopsAllowed));
+    }
+
+    @NotNull
+    private static Optional<Question> createAllConnectionsQuestion(@NotNull final String line,
+                                                                   @NotNull final PrintStream errors,
+                                                                   final int questionNumber,
+                                                                   @NotNull final List<Airport> airports,
+                                                                   final int maximumPrice) {
+        if (airports.size() != 2) {
+            errors.println("Wrong number of airports in " + line);
+            return Optional.empty();
+        }
+        return Optional.of(new AllConnectionsQuestion(questionNumber, airports.get(0), airports.get(1), maximumPrice));
+    }
+
+    @NotNull
+    private static Optional<Question> createDifferentConnectionsQuestion(@NotNull final String line,
+                                                                         @NotNull final PrintStream errors,
+                                                                         final int questionNumber,
+                                                                         @NotNull final String comparison,
+                                                                         final int stops,
+                                                                         final int maximumStops,
+                                                                         @NotNull final List<Airport> airports) {
+        try {
+            final DifferentConnectionsQuestion.StopsComparison comparisonOperator = DifferentConnectionsQuestion.StopsComparison.fromString(comparison);
+            if (airports.size() != 2) {
+                errors.println("Wrong number of airports in " + line);
+                return Optional.empty();
+            }
+            if (maximumStops > DifferentConnectionsQuestion.MAX_STOPS) {
+                errors.println("Wrong number of stops in " + line);
+                return Optional.empty();
+            }
+            return Optional.of(new DifferentConnectionsQuestion(questionNumber, airports.get(0), airports.get(1), comparisonOperator, stops, maximumStops));
+        } catch (final IllegalArgumentException ex) {
+            errors.println(ex.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Parses a question in the usual form, without patterns: the line starts with {@code #}, the question number
+     * and {@code ": "}, the text after it tells the type of question, and then fields and fixed texts are read
+     * one after the other. Airports are read from the line without splitting it.
+     * @param line a line with a question
+     * @param errors stream why the line is not a valid question is printed on
+     * @return the question, an empty optional if the line is a question in the usual form but it is not valid,
+     * or null if the line is not in the usual form, and has to be matched with the patterns.
+     */
+    @Nullable
+    /* package */ static Optional<Question> parseQuestion(@NotNull final String line, @NotNull final PrintStream errors) {
+        // patterns can find a question anywhere in the line, so another # could start a question the patterns
+        // find before this one
+        if (!line.startsWith("#") || line.indexOf('#', 1) >= 0) {
+            return null;
+        }
+        final LineReader reader = new LineReader(line, 1);
+        final int questionNumber = reader.readNumber();
+        if (questionNumber < 0 || !reader.read(": ")) {
+            return null;
+        }
+
+        if (line.endsWith("?") && reader.read("What is the price of the connection ")) {
+            final List<Airport> airports = reader.readAirports(line.length() - 1, '-');
+            return airports == null ? null : Optional.of(new ConnectionPriceQuestion(questionNumber, airports));
+        }
 
+        if (line.endsWith("?") && reader.read("What is the cheapest connection from ")) {
+            final List<Airport> airports = reader.readAirportPair(line.length() - 1, " to ");
+            return airports == null ? null : createCheapestQuestion(line, errors, questionNumber, airports);
+        }
 
-                final int stops = Integer.valueOf(m.group(3));
-                List<Airport> airports = extractAirports(m.group(4), " and ");
+        if (line.endsWith("?") && reader.read("What are the ")) {
+            final int count = reader.readNumber();
+            if (count < 0 || !reader.read(" cheapest connection")) {
+                return null;
+            }
+            reader.read("s");
+            if (!reader.read(" from ")) {
+                return null;
+            }
+            final boolean loopsAllowed = !line.endsWith(" without loops?");
+            final int airportsEnd = line.length() - (loopsAllowed ? "?" : " without loops?").length();
+            if (airportsEnd < reader.position) {
+                return null;
+            }
+            final List<Airport> airports = reader.readAirportPair(airportsEnd, " to ");
+            return airports == null ? null
+                    : createCheapestConnectionsQuestion(line, errors, questionNumber, airports, count, loopsAllowed);
+        }
+
+        if (line.endsWith(" Euros!") && reader.read("Find all connections from ")) {
+            // the price is the number before " Euros!", and " below " goes before it
+            final int priceEnd = line.length() - " Euros!".length();
+            int priceStart = priceEnd;
+            while (priceStart > reader.position && line.charAt(priceStart - 1) >= '0' && line.charAt(priceStart - 1) <= '9') {
+                priceStart--;
+            }
+            final int airportsEnd = priceStart - " below ".length();
+            if (airportsEnd < reader.position || !line.startsWith(" below ", airportsEnd)) {
+                return null;
+            }
+            final List<Airport> airports = reader.readAirportPair(airportsEnd, " to ");
+            reader.position = priceStart;
+            final int maximumPrice = reader.readNumber();
+            if (airports == null || maximumPrice < 0 || reader.position != priceEnd) {
+                return null;
+            }
+            return createAllConnectionsQuestion(line, errors, questionNumber, airports, maximumPrice);
+        }
 
-                if (airports.size() != 2) {
-                    System.out.println("Wrong number of airports in " + line);
-                    return Optional.empty();
+        if (line.endsWith("?") && reader.read("How many different connections with ")) {
+            final String comparison = reader.readWord();
+            if (comparison == null || !reader.read(" ")) {
+                return null;
+            }
+            final int stops = reader.readDigit();
+            if (stops < 0 || !reader.readStops()) {
+                return null;
+            }
+            int maximumStops = DifferentConnectionsQuestion.NO_MAXIMUM_STOPS;
+            if (reader.read(" and maximum ")) {
+                maximumStops = reader.readNumber();
+                if (maximumStops < 0 || !reader.readStops()) {
+                    return null;
                 }
-                return Optional.of(new DifferentConnectionsQuestion(questionNumber, airports.get(0), airports.get(1), comparisonOperator, stops));
-            } catch (final IllegalArgumentException ex) {
-                System.out.println(ex.getMessage());
             }
+            if (!reader.read(" exist between ")) {
+                return null;
+            }
+            final List<Airport> airports = reader.readAirportPair(line.length() - 1, " and ");
+            return airports == null ? null
+                    : createDifferentConnectionsQuestion(line, errors, questionNumber, comparison, stops, maximumStops, airports);
         }
+        return null;
+    }
 
-        return Optional.empty();
+    /**
+     * Reads the fields of a question from a line, from left to right. Every method returns a value
+     * telling the field could not be read, and does not move forward in that case.
+     */
+    private static final class LineReader {
+        private final String line;
+        private int position;
+
+        LineReader(@NotNull final String line, final int position) {
+            this.line = line;
+            this.position = position;
+        }
+
+        /**
+         * Reads a fixed text.
+         * @return true if the line goes on with {@code text}
+         */
+        boolean read(@NotNull final String text) {
+            if (line.startsWith(text, position)) {
+                position += text.length();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return a number, or -1 if there is no number or it does not fit in an int
+         */
+        int readNumber() {
+            int end = position;
+            long number = 0;
+            while (end < line.length() && line.charAt(end) >= '0' && line.charAt(end) <= '9') {
+                number = number * 10 + line.charAt(end) - '0';
+                if (number > Integer.MAX_VALUE) {
+                    return -1;
+                }
+                end++;
+            }
+            if (end == position) {
+                return -1;
+            }
+            position = end;
+            return (int) number;
+        }
+
+        /**
+         * @return a number of a single digit, or -1 if there is no such number
+         */
+        int readDigit() {
+            final int start = position;
+            final int digit = readNumber();
+            if (digit < 0 || position != start + 1) {
+                position = start;
+                return -1;
+            }
+            return digit;
+        }
+
+        /**
+         * @return the word of a stops comparison, or null if there is none
+         */
+        @Nullable
+        String readWord() {
+            for (final String word : new String[] {"maximum", "minimum", "exactly"}) {
+                if (read(word)) {
+                    return word;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Reads {@code " stop"} or {@code " stops"}.
+         */
+        boolean readStops() {
+            if (!read(" stop")) {
+                return false;
+            }
+            read("s");
+            return true;
+        }
+
+        /**
+         * Reads the airports up to {@code end}, separated by {@code delimiter}.
+         * @return the airports, or null unless the text is made of three letter codes separated by {@code delimiter}
+         */
+        @Nullable
+        List<Airport> readAirports(final int end, final char delimiter) {
+            final List<Airport> airports = new ArrayList<>();
+            while (true) {
+                final Airport airport = readAirport(end);
+                if (airport == null) {
+                    return null;
+                }
+                airports.add(airport);
+                if (position == end) {
+                    return airports;
+                }
+                if (line.charAt(position) != delimiter) {
+                    return null;
+                }
+                position++;
+            }
+        }
+
+        /**
+         * Reads two airports up to {@code end}, separated by {@code delimiter}.
+         * @return the airports, or null unless the text is made of two three letter codes separated by {@code delimiter}
+         */
+        @Nullable
+        List<Airport> readAirportPair(final int end, @NotNull final String delimiter) {
+            final Airport first = readAirport(end);
+            if (first == null || !read(delimiter)) {
+                return null;
+            }
+            final Airport second = readAirport(end);
+            if (second == null || position != end) {
+                return null;
+            }
+            final List<Airport> airports = new ArrayList<>(2);
+            airports.add(first);
+            airports.add(second);
+            return airports;
+        }
+
+        @Nullable
+        private Airport readAirport(final int end) {
+            if (end - position < 3) {
+                return null;
+            }
+            final char first = line.charAt(position);
+            final char second = line.charAt(position + 1);
+            final char third = line.charAt(position + 2);
+            if (first < 'A' || first > 'Z' || second < 'A' || second > 'Z' || third < 'A' || third > 'Z') {
+                return null;
+            }
+            position += 3;
+            return Airport.valueOf(first, second, third);
+        }
     }
 
-}
\ No newline at end of file
+}
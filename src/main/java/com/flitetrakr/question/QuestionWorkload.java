@@ -0,0 +1,116 @@
+package com.flitetrakr.question;
+
+import com.flitetrakr.model.Airport;
+import com.flitetrakr.model.ConnectionGraph;
+import com.flitetrakr.model.GraphGenerator;
+import com.flitetrakr.model.Trip;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates question lines on a graph, in the form of the input file, mixing the types of questions in
+ * given proportions. The airports of every question are those of a random trip of the graph, of one to
+ * {@link #MAX_SEGMENTS} segments, so that questions have answers, and the same seed always gives the same questions.
+ */
+public final class QuestionWorkload {
+    /**
+     * Highest number of segments of the trips questions are about.
+     */
+    public static final int MAX_SEGMENTS = 4;
+
+    /**
+     * Types of questions.
+     */
+    public enum Type {
+        /**
+         * {@link ConnectionPriceQuestion}, about the airports of the trip.
+         */
+        PRICE,
+        /**
+         * {@link CheapestQuestion}, between the ends of the trip.
+         */
+        CHEAPEST,
+        /**
+         * {@link AllConnectionsQuestion}, between the ends of the trip, up to the price of the cheapest connection:
+         * the number of connections grows exponentially with the price, above all in scale free graphs.
+         */
+        ALL_CONNECTIONS,
+        /**
+         * {@link DifferentConnectionsQuestion}, between the ends of the trip, with one stop more than the trip.
+         */
+        DIFFERENT_CONNECTIONS,
+        /**
+         * {@link CheapestConnectionsQuestion}, the ten cheapest connections between the ends of the trip.
+         */
+        CHEAPEST_CONNECTIONS
+    }
+
+    private final ConnectionGraph graph;
+    private final Type[] types;
+    private final int[] cumulativeWeights;
+    private final Random random;
+
+    /**
+     * Constructor.
+     * @param graph a graph with segments
+     * @param mix the weight of every type of question, e.g. 3 for a type and 1 for another one to ask three
+     *            questions of the first type for every question of the second one. Missing types are not asked.
+     * @param seed seed of the random numbers
+     */
+    public QuestionWorkload(@NotNull final ConnectionGraph graph, @NotNull final Map<Type, Integer> mix, final long seed) {
+        if (graph.getEdges().isEmpty()) {
+            throw new IllegalArgumentException("Questions need a graph with segments");
+        }
+        this.graph = graph;
+        this.types = Type.values();
+        this.cumulativeWeights = new int[types.length];
+        int total = 0;
+        for (int i = 0; i < types.length; i++) {
+            final int weight = mix.getOrDefault(types[i], 0);
+            if (weight < 0) {
+                throw new IllegalArgumentException("Wrong weight of " + types[i] + ": " + weight);
+            }
+            total += weight;
+            cumulativeWeights[i] = total;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("No type of question to ask");
+        }
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates the next question.
+     * @param questionNumber number of the question
+     * @return a line with the question
+     */
+    @NotNull
+    public String nextQuestion(final int questionNumber) {
+        final int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int type = 0;
+        while (cumulativeWeights[type] <= pick) {
+            type++;
+        }
+        final Trip trip = GraphGenerator.randomTrip(graph, 1 + random.nextInt(MAX_SEGMENTS), random);
+        final Airport source = trip.getSource().get();
+        final Airport destination = trip.getDestination().get();
+        switch (types[type]) {
+            case PRICE:
+                final String airports = trip.toString().substring(0, trip.toString().lastIndexOf('-'));
+                return String.format("#%d: What is the price of the connection %s?", questionNumber, airports);
+            case CHEAPEST:
+                return String.format("#%d: What is the cheapest connection from %s to %s?", questionNumber, source, destination);
+            case ALL_CONNECTIONS:
+                return String.format("#%d: Find all connections from %s to %s below %d Euros!", questionNumber,
+                        source, destination, graph.getCheapestTrip(source, destination).get().getPrice() + 1);
+            case CHEAPEST_CONNECTIONS:
+                return String.format("#%d: What are the 10 cheapest connections from %s to %s?", questionNumber, source, destination);
+            case DIFFERENT_CONNECTIONS:
+            default:
+                return String.format("#%d: How many different connections with maximum %d stops exist between %s and %s?",
+                        questionNumber, trip.getStopsNumber() + 1, source, destination);
+        }
+    }
+}
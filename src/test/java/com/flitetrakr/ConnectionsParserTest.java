@@ -0,0 +1,41 @@
+package com.flitetrakr;
+
+import com.flitetrakr.model.Airport;
+import com.flitetrakr.model.ConnectionGraph;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class ConnectionsParserTest {
+    @Test
+    public void parseTest() throws Exception {
+        final ConnectionGraph graph = parse("NUE-FRA-43, NUE-AMS-67,FRA-AMS-17 ,\tFRA-LHR-27");
+        Assert.assertEquals("[NUE-FRA, NUE-AMS, FRA-AMS, FRA-LHR]", graph.getEdges().toString());
+        Assert.assertEquals(17, graph.getEdges().get(2).getPrice());
+        Assert.assertEquals(4, graph.getNodes().size());
+    }
+
+    @Test
+    public void newAirportsTest() throws Exception {
+        final ConnectionGraph graph = parse("SFO-JFK-120");
+        Assert.assertEquals(Airport.valueOf("SFO"), graph.getEdges().get(0).getSource());
+        Assert.assertEquals(120, graph.getEdges().get(0).getPrice());
+    }
+
+    @Test
+    public void wrongConnectionsTest() throws Exception {
+        // connections with other characters are still found, wrong ones are skipped
+        final ConnectionGraph graph = parse("xNUE-FRA-43y, NUE-AMS-99999999999, NUE-A, , FRA-LHR-27,,");
+        Assert.assertEquals("[NUE-FRA, FRA-LHR]", graph.getEdges().toString());
+        Assert.assertEquals(43, graph.getEdges().get(0).getPrice());
+    }
+
+    private static ConnectionGraph parse(final String connections) {
+        final ConnectionGraph graph = new ConnectionGraph();
+        final ByteBuffer input = ByteBuffer.wrap(("Connections: " + connections).getBytes(StandardCharsets.UTF_8));
+        ConnectionsParser.parse(graph, input, "Connections: ".length(), input.limit());
+        return graph;
+    }
+}
@@ -0,0 +1,169 @@
+package com.flitetrakr;
+
+import com.flitetrakr.model.Airport;
+import com.flitetrakr.model.ConnectionGraph;
+import com.flitetrakr.model.FlightSegment;
+import com.flitetrakr.question.QuestionCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class QueryServerTest {
+
+    private ConnectionGraph graph;
+    private QueryServer server;
+    private Thread serverThread;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.NUE, Airport.FRA, 43));
+        graph.addEdge(new FlightSegment(Airport.NUE, Airport.AMS, 67));
+        graph.addEdge(new FlightSegment(Airport.FRA, Airport.AMS, 17));
+        graph.addEdge(new FlightSegment(Airport.FRA, Airport.LHR, 27));
+        graph.addEdge(new FlightSegment(Airport.LHR, Airport.NUE, 23));
+        server = new QueryServer(graph, new QuestionCache(10), 0);
+        serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (final Exception ex) {
+                ex.printStackTrace();
+            }
+        });
+        serverThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        serverThread.join(10000);
+        Assert.assertFalse(serverThread.isAlive());
+    }
+
+    /**
+     * Sends all lines at once, then reads the answer of every line.
+     */
+    private List<String> ask(final String... lines) throws Exception {
+        return send(String.join("\n", lines) + "\n");
+    }
+
+    /**
+     * Sends some text, then reads the answer of every line.
+     */
+    private List<String> send(final String text) throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            final OutputStream out = socket.getOutputStream();
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            socket.shutdownOutput();
+            final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            final List<String> answers = new ArrayList<>();
+            final StringBuilder answer = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) {
+                    answers.add(answer.toString());
+                    answer.setLength(0);
+                } else {
+                    answer.append(answer.length() == 0 ? "" : "\n").append(line);
+                }
+            }
+            return answers;
+        }
+    }
+
+    @Test
+    public void pipelinedQuestionsTest() throws Exception {
+        final List<String> answers = ask(
+                "#1: What is the price of the connection NUE-FRA-LHR?",
+                "#4: What is the cheapest connection from NUE to AMS?",
+                "",
+                "#7: How many different connections with maximum 3 stops exist between NUE and FRA?\r",
+                "#9: Find all connections from NUE to LHR below 170 Euros!",
+                "#4: What is the cheapest connection from NUE to AMS?",
+                "What is this?");
+        Assert.assertEquals(6, answers.size());
+        Assert.assertEquals("#1: 70", answers.get(0));
+        Assert.assertEquals("#4: NUE-FRA-AMS-60", answers.get(1));
+        Assert.assertEquals("#7: 2", answers.get(2));
+        Assert.assertEquals("#9: NUE-FRA-LHR-70, NUE-FRA-LHR-NUE-FRA-LHR-163", answers.get(3));
+        Assert.assertEquals("#4: NUE-FRA-AMS-60", answers.get(4));
+        Assert.assertEquals("ERROR: What is this? is not a valid question", answers.get(5));
+        Assert.assertEquals(6, server.getLatencies().getCount());
+    }
+
+    @Test
+    public void connectionsTest() throws Exception {
+        final List<String> answers = ask(
+                "#1: What is the cheapest connection from NUE to AMS?",
+                "Connections: NUE-AMS-50",
+                "#2: What is the cheapest connection from NUE to AMS?",
+                "STATS");
+        Assert.assertEquals("#1: NUE-FRA-AMS-60", answers.get(0));
+        Assert.assertEquals("OK", answers.get(1));
+        Assert.assertEquals("#2: NUE-AMS-50", answers.get(2));
+        Assert.assertTrue(answers.get(3), answers.get(3).startsWith("Answered 3 lines, latency p50 "));
+    }
+
+    @Test
+    public void wrongLinesTest() throws Exception {
+        final List<String> answers = ask(
+                "Connections: NUE-AMS-50, NUE-AM-10, FRA-LHR-99999999999",
+                "#1: What is the cheapest connection from NUE to AMS?",
+                "#2: What are the 0 cheapest connections from NUE to AMS?");
+        Assert.assertEquals(3, answers.size());
+        Assert.assertEquals("ERROR: 2 connections rejected, the other connections are added\n"
+                + "String NUE-AMS-50, NUE-AM-10, FRA-LHR-99999999999 should be a string separated concatenation of connections as follow XXX-YYY-99\n"
+                + "Wrong input FRA-LHR-99999999999: For input string: \"99999999999\"", answers.get(0));
+        Assert.assertEquals("#1: NUE-AMS-50", answers.get(1));
+        Assert.assertEquals("ERROR: #2: What are the 0 cheapest connections from NUE to AMS? is not a valid question\n"
+                + "Wrong number of connections in #2: What are the 0 cheapest connections from NUE to AMS?", answers.get(2));
+    }
+
+    @Test
+    public void manyClientsTest() throws Exception {
+        // clients are served one after the other, by the same server
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals("#" + i + ": 70", ask("#" + i + ": What is the price of the connection NUE-FRA-LHR?").get(0));
+        }
+    }
+
+    @Test
+    public void lastLineWithoutEndOfLineTest() throws Exception {
+        final List<String> answers = send("#1: What is the price of the connection NUE-FRA-LHR?\n"
+                + "#2: What is the cheapest connection from NUE to AMS?");
+        Assert.assertEquals(2, answers.size());
+        Assert.assertEquals("#1: 70", answers.get(0));
+        Assert.assertEquals("#2: NUE-FRA-AMS-60", answers.get(1));
+        Assert.assertEquals(Collections.singletonList("#3: 70"), send("#3: What is the price of the connection NUE-FRA-LHR?\r"));
+    }
+
+    @Test
+    public void failedAnswerTest() throws Exception {
+        // searches on a pool that was shut down fail
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        pool.shutdown();
+        graph.setParallelSearch(pool, 1);
+        final List<String> answers = ask(
+                "#9: Find all connections from NUE to LHR below 170 Euros!",
+                "#1: What is the price of the connection NUE-FRA-LHR?");
+        Assert.assertEquals(2, answers.size());
+        Assert.assertTrue(answers.get(0), answers.get(0).startsWith(
+                "ERROR: #9: Find all connections from NUE to LHR below 170 Euros! cannot be answered: "));
+        Assert.assertEquals("#1: 70", answers.get(1));
+        // the server still serves clients
+        Assert.assertEquals("#2: 70", ask("#2: What is the price of the connection NUE-FRA-LHR?").get(0));
+    }
+}
@@ -0,0 +1,34 @@
+package com.flitetrakr.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void percentileTest() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1000; i >= 1; i--) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(1000, histogram.getMax());
+        // values are rounded up to the end of their bucket, by less than 12.5%
+        Assert.assertTrue(histogram.getPercentile(50) >= 500 && histogram.getPercentile(50) < 500 * 1.125);
+        Assert.assertTrue(histogram.getPercentile(99) >= 990 && histogram.getPercentile(99) <= 1000);
+        Assert.assertEquals(1000, histogram.getPercentile(100));
+        Assert.assertEquals(1, histogram.getPercentile(0));
+    }
+
+    @Test
+    public void bucketTest() throws Exception {
+        long previous = -1;
+        for (final long value : new long[]{0, 1, 7, 8, 9, 15, 16, 17, 1000, 1L << 40, Long.MAX_VALUE}) {
+            final int bucket = LatencyHistogram.bucketOf(value);
+            Assert.assertTrue(value <= LatencyHistogram.highestValueOf(bucket));
+            Assert.assertTrue(bucket == 0 || value > LatencyHistogram.highestValueOf(bucket - 1));
+            Assert.assertTrue(bucket >= previous);
+            previous = bucket;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.flitetrakr.metrics;
+
+import com.flitetrakr.model.Airport;
+import com.flitetrakr.model.ConnectionGraph;
+import com.flitetrakr.model.FlightSegment;
+import com.flitetrakr.model.GraphGenerator;
+import com.flitetrakr.model.Trip;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+import java.util.Random;
+
+public class MetricsTest {
+
+    private MetricsRegistry previous;
+
+    @Before
+    public void setUp() throws Exception {
+        previous = Metrics.registry();
+        Metrics.setRegistry(new DefaultMetricsRegistry());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Metrics.setRegistry(previous);
+    }
+
+    @Test
+    public void registryTest() throws Exception {
+        final MetricsRegistry registry = Metrics.registry();
+        registry.counter("b.counter").add(3);
+        registry.counter("a.counter").increment();
+        registry.counter("b.counter").increment();
+        registry.timer("a.timer").record(2000);
+        registry.histogram("a.histogram").record(5);
+        Assert.assertSame(registry.counter("a.counter"), registry.counter("a.counter"));
+        Assert.assertEquals(4, registry.counter("b.counter").get());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Metrics.print(new PrintStream(out, true));
+        Assert.assertEquals(String.format("Metrics:%n  a.counter: 1%n  b.counter: 4%n"
+                + "  a.timer: count 1, p50 2 us, p99 2 us, max 2 us%n"
+                + "  a.histogram: count 1, p50 5, p99 5, max 5%n"), out.toString());
+    }
+
+    @Test
+    public void searchCountersTest() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.NUE, Airport.FRA, 43));
+        graph.addEdge(new FlightSegment(Airport.FRA, Airport.LHR, 27));
+        graph.addEdge(new FlightSegment(Airport.NUE, Airport.LHR, 200));
+        Assert.assertEquals(1, graph.getAllTrips(Airport.NUE, Airport.LHR, false, 100, Integer.MAX_VALUE).size());
+        final MetricsRegistry registry = Metrics.registry();
+        Assert.assertEquals(1, registry.counter("search.trips.searches").get());
+        // NUE-FRA and FRA-LHR are flown, NUE-LHR is too expensive
+        Assert.assertEquals(2, registry.counter("search.trips.expanded").get());
+        Assert.assertEquals(1, registry.counter("search.trips.pruned").get());
+        Assert.assertEquals(1, registry.counter("search.trips.found").get());
+        Assert.assertEquals(1, registry.getTimers().get("graph.index.build").getCount());
+        Assert.assertEquals(1, registry.counter("search.bounds.searches").get());
+
+        graph.getCheapestTrip(Airport.NUE, Airport.LHR);
+        Assert.assertEquals(1, registry.counter("search.cheapest.searches").get());
+        Assert.assertTrue(registry.counter("search.cheapest.settled").get() >= 2);
+    }
+
+    @Test
+    public void prunedSearchTest() throws Exception {
+        // FRA is cheap to fly to, but LHR cannot be reached from it
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.NUE, Airport.FRA, 10));
+        graph.addEdge(new FlightSegment(Airport.FRA, Airport.AMS, 10));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.FRA, 10));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.NUE, 10));
+        graph.addEdge(new FlightSegment(Airport.NUE, Airport.LHR, 50));
+        Assert.assertEquals("[NUE-FRA-AMS-NUE-LHR-80, NUE-LHR-50]",
+                graph.getAllTrips(Airport.NUE, Airport.LHR, true, 100, Integer.MAX_VALUE).toString());
+        final MetricsRegistry registry = Metrics.registry();
+        // NUE-FRA, FRA-AMS, AMS-NUE and NUE-LHR twice: the loops back to FRA cannot reach LHR below 100
+        Assert.assertEquals(5, registry.counter("search.trips.expanded").get());
+        Assert.assertEquals(2, registry.counter("search.trips.found").get());
+    }
+
+    @Test
+    public void bidirectionalSearchTest() throws Exception {
+        // both searches stop about halfway, where far fewer airports are reached than from one end to the other
+        final ConnectionGraph graph = new GraphGenerator(2000, 3, GraphGenerator.PriceDistribution.UNIFORM, 5).generate();
+        final Random random = new Random(5);
+        final MetricsRegistry registry = Metrics.registry();
+        for (int i = 0; i < 50; i++) {
+            final Airport source = GraphGenerator.airport(random.nextInt(2000));
+            final Airport destination = GraphGenerator.airport(random.nextInt(2000));
+            final Optional<Trip> trip = graph.getCheapestTrip(source, destination);
+            graph.setBidirectionalSearch(true);
+            Assert.assertEquals(trip.map(Trip::getPrice), graph.getCheapestTrip(source, destination).map(Trip::getPrice));
+            graph.setBidirectionalSearch(false);
+        }
+        Assert.assertTrue(registry.counter("search.bidirectional.searches").get() > 40);
+        Assert.assertTrue(registry.counter("search.bidirectional.settled").get() * 4 < registry.counter("search.cheapest.settled").get());
+    }
+
+    @Test
+    public void mbeanTest() throws Exception {
+        Metrics.registry().counter("a.counter").add(7);
+        Metrics.registry().timer("a.timer").record(3000);
+        Metrics.registerMBean();
+        Metrics.registerMBean();
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(Metrics.MBEAN_NAME);
+        Assert.assertTrue(server.isRegistered(name));
+        final MetricsMXBean bean = JMX.newMXBeanProxy(server, name, MetricsMXBean.class);
+        Assert.assertEquals(Long.valueOf(7), bean.getCounters().get("a.counter"));
+        Assert.assertEquals(Long.valueOf(3), bean.getTimers().get("a.timer.max"));
+        Assert.assertTrue(bean.getReport().contains("a.counter: 7"));
+    }
+}
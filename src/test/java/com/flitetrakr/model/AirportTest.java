@@ -0,0 +1,31 @@
+package com.flitetrakr.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AirportTest {
+    @Test
+    public void valueOfTest() throws Exception {
+        Assert.assertSame(Airport.NUE, Airport.valueOf("NUE"));
+        Assert.assertEquals("Herzogenaurach", Airport.NUE.getCity());
+
+        final Airport airport = Airport.valueOf("SFO");
+        Assert.assertSame(airport, Airport.valueOf(new String("SFO")));
+        Assert.assertEquals("SFO", airport.getCode());
+        Assert.assertEquals("SFO", airport.getCity());
+        Assert.assertSame(airport, Airport.values()[airport.getId()]);
+        Assert.assertTrue(airport.getId() < Airport.count());
+    }
+
+    @Test
+    public void wrongCodeTest() throws Exception {
+        for (final String code : new String[] {"", "NU", "NUEE", "nue", "N1E"}) {
+            try {
+                Airport.valueOf(code);
+                Assert.fail("Not an airport code: " + code);
+            } catch (final IllegalArgumentException ex) {
+                // expected
+            }
+        }
+    }
+}
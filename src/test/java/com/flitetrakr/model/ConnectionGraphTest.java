@@ -3,9 +3,45 @@ package com.flitetrakr.model;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 public class ConnectionGraphTest {
+    /**
+     * Airports used by random graphs. Other airports can be created by other tests, so they are not used.
+     */
+    private static final Airport[] KNOWN_AIRPORTS = {
+            Airport.NUE, Airport.BOS, Airport.AMS, Airport.FRA, Airport.DXB, Airport.HKG, Airport.PDX, Airport.LHR
+    };
+
+    /**
+     * Creates a graph with random segments between the {@link #KNOWN_AIRPORTS}, none of them from an airport to itself.
+     * @param seed seed of the random segments
+     * @param segments number of segments
+     */
+    private static ConnectionGraph randomGraph(final long seed, final int segments) {
+        final Random random = new Random(seed);
+        final Airport[] airports = KNOWN_AIRPORTS;
+        final ConnectionGraph graph = new ConnectionGraph();
+        for (int i = 0; i < segments; i++) {
+            final int from = random.nextInt(airports.length);
+            final Airport src = airports[from];
+            final Airport dst = airports[(from + 1 + random.nextInt(airports.length - 1)) % airports.length];
+            graph.addEdge(new FlightSegment(src, dst, 100 + random.nextInt(400)));
+        }
+        return graph;
+    }
+
     @Test
     public void getAllTrips() throws Exception {
         final ConnectionGraph graph = new ConnectionGraph();
@@ -18,4 +54,737 @@ public class ConnectionGraphTest {
         Assert.assertEquals(2, trips.size());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void getOutgoingEdges() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 500));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.PDX, 700));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.PDX, 600));
+        final List<FlightSegment> segments = graph.getOutgoingEdges(Airport.AMS);
+        Assert.assertEquals(2, segments.size());
+        Assert.assertEquals(Airport.BOS, segments.get(0).getDestination());
+        Assert.assertEquals(Airport.PDX, segments.get(1).getDestination());
+        Assert.assertTrue(graph.getOutgoingEdges(Airport.HKG).isEmpty());
+    }
+
+    @Test
+    public void getCheapestTrip() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.HKG, 2000));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 500));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.PDX, 700));
+        graph.addEdge(new FlightSegment(Airport.PDX, Airport.HKG, 100));
+        graph.addEdge(new FlightSegment(Airport.HKG, Airport.AMS, 300));
+        final Optional<Trip> trip = graph.getCheapestTrip(Airport.AMS, Airport.HKG);
+        Assert.assertTrue(trip.isPresent());
+        Assert.assertEquals("AMS-BOS-PDX-HKG-1300", trip.get().toString());
+        Assert.assertFalse(graph.getCheapestTrip(Airport.HKG, Airport.NUE).isPresent());
+    }
+
+    @Test
+    public void getCheapestRoundTrip() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 500));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.AMS, 700));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.PDX, 100));
+        graph.addEdge(new FlightSegment(Airport.PDX, Airport.BOS, 100));
+        final Optional<Trip> trip = graph.getCheapestTrip(Airport.AMS, Airport.AMS);
+        Assert.assertTrue(trip.isPresent());
+        Assert.assertEquals("AMS-PDX-BOS-AMS-900", trip.get().toString());
+        Assert.assertFalse(graph.getCheapestTrip(Airport.HKG, Airport.HKG).isPresent());
+    }
+
+    @Test
+    public void countTrips() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 500));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.AMS, 700));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.PDX, 100));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.PDX, 100));
+        // AMS-PDX, AMS-BOS-PDX, AMS-BOS-AMS-PDX, AMS-BOS-AMS-BOS-PDX
+        Assert.assertEquals(4, graph.countTrips(Airport.AMS, Airport.PDX, 1, 4));
+        Assert.assertEquals(2, graph.countTrips(Airport.AMS, Airport.PDX, 3, 4));
+        Assert.assertEquals(graph.getAllTrips(Airport.AMS, Airport.PDX, true, (Trip trip) -> trip.getStopsNumber() < 10).size(),
+                graph.countTrips(Airport.AMS, Airport.PDX, 1, 10));
+        Assert.assertEquals(0, graph.countTrips(Airport.PDX, Airport.AMS, 1, 10));
+        // without loops, the count stops once no more trips can be found
+        graph.removeEdge(new FlightSegment(Airport.BOS, Airport.AMS, 700));
+        Assert.assertEquals(2, graph.countTrips(Airport.AMS, Airport.PDX, 1, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void getAllTripsWithLimits() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 100));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.AMS, 100));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.PDX, 300));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.PDX, 100));
+        Assert.assertEquals(graph.getAllTrips(Airport.AMS, Airport.PDX, true, (Trip trip) -> trip.getPrice() < 700).toString(),
+                graph.getAllTrips(Airport.AMS, Airport.PDX, true, 700, Integer.MAX_VALUE).toString());
+        Assert.assertEquals("[AMS-BOS-PDX-200, AMS-PDX-300]",
+                graph.getAllTrips(Airport.AMS, Airport.PDX, false, Integer.MAX_VALUE, Integer.MAX_VALUE).toString());
+        Assert.assertEquals("[AMS-BOS-AMS-PDX-500, AMS-BOS-PDX-200, AMS-PDX-300]",
+                graph.getAllTrips(Airport.AMS, Airport.PDX, true, Integer.MAX_VALUE, 2).toString());
+    }
+
+    @Test
+    public void getFirstTrips() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 100));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.AMS, 100));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.PDX, 300));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.PDX, 100));
+        final List<Trip> trips = new ArrayList<>();
+        Assert.assertFalse(graph.getAllTrips(Airport.AMS, Airport.PDX, true, 1000, Integer.MAX_VALUE, TripConsumer.limit(2, trips::add)));
+        Assert.assertEquals(graph.getAllTrips(Airport.AMS, Airport.PDX, true, 1000, Integer.MAX_VALUE).subList(0, 2).toString(), trips.toString());
+        trips.clear();
+        Assert.assertFalse(graph.getAllTrips(Airport.AMS, Airport.PDX, true, (Trip trip) -> trip.getPrice() < 1000, TripConsumer.limit(2, trips::add)));
+        Assert.assertEquals(2, trips.size());
+        trips.clear();
+        Assert.assertTrue(graph.getAllTrips(Airport.AMS, Airport.PDX, false, 1000, Integer.MAX_VALUE, trips::add));
+        Assert.assertEquals(2, trips.size());
+    }
+
+    @Test
+    public void getAllTripsInParallel() throws Exception {
+        final ConnectionGraph graph = randomGraph(7, 40);
+        final String sequential = graph.getAllTrips(Airport.NUE, Airport.LHR, true, 1200, Integer.MAX_VALUE).toString();
+        final String sequentialNoLoops = graph.getAllTrips(Airport.NUE, Airport.LHR, false, Integer.MAX_VALUE, 4).toString();
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        for (int splitDepth = 1; splitDepth <= 3; splitDepth++) {
+            graph.setParallelSearch(pool, splitDepth);
+            Assert.assertEquals(sequential, graph.getAllTrips(Airport.NUE, Airport.LHR, true, 1200, Integer.MAX_VALUE).toString());
+            Assert.assertEquals(sequentialNoLoops, graph.getAllTrips(Airport.NUE, Airport.LHR, false, Integer.MAX_VALUE, 4).toString());
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void getAllTripsWithValidatorAsIndexed() throws Exception {
+        final ConnectionGraph graph = randomGraph(11, 30);
+        for (final Airport dst : KNOWN_AIRPORTS) {
+            Assert.assertEquals(graph.getAllTrips(Airport.NUE, dst, true, 1500, Integer.MAX_VALUE).toString(),
+                    graph.getAllTrips(Airport.NUE, dst, true, (Trip trip) -> trip.getPrice() < 1500).toString());
+            Assert.assertEquals(graph.getAllTrips(Airport.NUE, dst, false, Integer.MAX_VALUE, Integer.MAX_VALUE).toString(),
+                    graph.getAllTrips(Airport.NUE, dst, false, (Trip trip) -> true).toString());
+        }
+    }
+
+    @Test
+    public void getAllTripsWithDeepTrips() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.AMS, 1));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.AMS, 1));
+        // far deeper than the stack of a thread allows for a recursive search
+        final int stops = 200000;
+        final List<Trip> trips = new ArrayList<>();
+        Assert.assertTrue(graph.getAllTrips(Airport.AMS, Airport.BOS, true, (Trip trip) -> trip.getStopsNumber() < stops, trips::add));
+        Assert.assertTrue(trips.isEmpty());
+        Assert.assertTrue(graph.getAllTrips(Airport.AMS, Airport.BOS, true, stops + 1, Integer.MAX_VALUE, trips::add));
+        Assert.assertTrue(trips.isEmpty());
+    }
+
+    @Test
+    public void getAllTripsWithSearchLimits() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 100));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.AMS, 100));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.PDX, 300));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.PDX, 100));
+        final String twoSegments = graph.getAllTrips(Airport.AMS, Airport.PDX, true, 1000, 1).toString();
+        final List<Trip> unlimited = graph.getAllTrips(Airport.AMS, Airport.PDX, true, 1000, Integer.MAX_VALUE);
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        for (int splitDepth = 0; splitDepth <= 2; splitDepth++) {
+            graph.setParallelSearch(splitDepth == 0 ? null : pool, Math.max(splitDepth, 1));
+            graph.setSearchLimits(2, Long.MAX_VALUE);
+            Assert.assertEquals(twoSegments, graph.getAllTrips(Airport.AMS, Airport.PDX, true, 1000, Integer.MAX_VALUE).toString());
+            final TruncatedConsumer consumer = new TruncatedConsumer();
+            Assert.assertFalse(graph.getAllTrips(Airport.AMS, Airport.PDX, true, 1000, Integer.MAX_VALUE, consumer));
+            Assert.assertTrue(consumer.truncated);
+            Assert.assertEquals(twoSegments, consumer.trips.toString());
+            // trips shorter than the limit are not truncated
+            final TruncatedConsumer shortTrips = new TruncatedConsumer();
+            Assert.assertTrue(graph.getAllTrips(Airport.AMS, Airport.PDX, true, 1000, 1, shortTrips));
+            Assert.assertFalse(shortTrips.truncated);
+
+            graph.setSearchLimits(Integer.MAX_VALUE, 3);
+            final List<Trip> trips = graph.getAllTrips(Airport.AMS, Airport.PDX, true, 1000, Integer.MAX_VALUE);
+            Assert.assertTrue(trips.size() < unlimited.size());
+            for (final Trip trip : trips) {
+                Assert.assertTrue(unlimited.toString().contains(trip.toString()));
+            }
+            graph.setSearchLimits(Integer.MAX_VALUE, Long.MAX_VALUE);
+        }
+        pool.shutdown();
+    }
+
+    @Test(timeout = 60000)
+    public void getFirstTripsInParallel() throws Exception {
+        // two segments each way, so there are 2^n trips of n segments: only stopping the search ends it
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 1));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 2));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.AMS, 1));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.AMS, 2));
+        final List<Trip> sequential = new ArrayList<>();
+        Assert.assertFalse(graph.getAllTrips(Airport.AMS, Airport.BOS, true, 200, Integer.MAX_VALUE, TripConsumer.limit(3, sequential::add)));
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        for (int splitDepth = 1; splitDepth <= 3; splitDepth++) {
+            graph.setParallelSearch(pool, splitDepth);
+            final List<Trip> trips = new ArrayList<>();
+            Assert.assertFalse(graph.getAllTrips(Airport.AMS, Airport.BOS, true, 200, Integer.MAX_VALUE, TripConsumer.limit(3, trips::add)));
+            Assert.assertEquals(sequential.toString(), trips.toString());
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void getAllTripsInParallelWithSharedBudget() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 100));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.AMS, 100));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.PDX, 300));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.PDX, 100));
+        final String unlimited = graph.getAllTrips(Airport.AMS, Airport.PDX, true, 1500, Integer.MAX_VALUE).toString();
+        // the fewest segments the sequential search flies to find every trip
+        long segments = 1;
+        while (true) {
+            graph.setSearchLimits(Integer.MAX_VALUE, segments);
+            if (graph.getAllTrips(Airport.AMS, Airport.PDX, true, 1500, Integer.MAX_VALUE, (Trip trip) -> true)) {
+                break;
+            }
+            segments++;
+        }
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        for (int splitDepth = 1; splitDepth <= 3; splitDepth++) {
+            graph.setParallelSearch(pool, splitDepth);
+            // the tasks fly as many segments as the sequential search, no more
+            graph.setSearchLimits(Integer.MAX_VALUE, segments);
+            final TruncatedConsumer consumer = new TruncatedConsumer();
+            Assert.assertTrue(graph.getAllTrips(Airport.AMS, Airport.PDX, true, 1500, Integer.MAX_VALUE, consumer));
+            Assert.assertEquals(unlimited, consumer.trips.toString());
+            graph.setSearchLimits(Integer.MAX_VALUE, segments - 1);
+            final TruncatedConsumer truncated = new TruncatedConsumer();
+            Assert.assertFalse(graph.getAllTrips(Airport.AMS, Airport.PDX, true, 1500, Integer.MAX_VALUE, truncated));
+            Assert.assertTrue(truncated.truncated);
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void getAllTripsWithValidatorAndSearchLimits() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 100));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.AMS, 100));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.PDX, 300));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.PDX, 100));
+        final DFSValidator belowPrice = (Trip trip) -> trip.getPrice() < 1000;
+        final String twoSegments = graph.getAllTrips(Airport.AMS, Airport.PDX, true, (Trip trip) -> trip.getStopsNumber() < 2).toString();
+        final List<Trip> unlimited = graph.getAllTrips(Airport.AMS, Airport.PDX, true, belowPrice);
+        graph.setSearchLimits(2, Long.MAX_VALUE);
+        final TruncatedConsumer consumer = new TruncatedConsumer();
+        Assert.assertFalse(graph.getAllTrips(Airport.AMS, Airport.PDX, true, belowPrice, consumer));
+        Assert.assertTrue(consumer.truncated);
+        Assert.assertEquals(twoSegments, consumer.trips.toString());
+
+        graph.setSearchLimits(Integer.MAX_VALUE, 3);
+        final TruncatedConsumer expanded = new TruncatedConsumer();
+        Assert.assertFalse(graph.getAllTrips(Airport.AMS, Airport.PDX, true, belowPrice, expanded));
+        Assert.assertTrue(expanded.truncated);
+        Assert.assertEquals(unlimited.subList(0, expanded.trips.size()).toString(), expanded.trips.toString());
+        // the limits are kept by frozen copies
+        Assert.assertEquals(expanded.trips.toString(), graph.freeze().getAllTrips(Airport.AMS, Airport.PDX, true, belowPrice).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongSearchLimits() throws Exception {
+        new ConnectionGraph().setSearchLimits(0, 10);
+    }
+
+    /**
+     * Collects trips, and tells if the search was truncated.
+     */
+    private static final class TruncatedConsumer implements TripConsumer {
+        private final List<Trip> trips = new ArrayList<>();
+        private boolean truncated = false;
+
+        @Override
+        public boolean accept(final Trip trip) {
+            trips.add(trip);
+            return true;
+        }
+
+        @Override
+        public void truncated() {
+            truncated = true;
+        }
+    }
+
+    @Test
+    public void freeze() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 500));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.PDX, 700));
+        final ConnectionGraph frozen = graph.freeze();
+        Assert.assertTrue(frozen.isFrozen());
+        Assert.assertFalse(graph.isFrozen());
+        Assert.assertSame(frozen, frozen.freeze());
+        Assert.assertEquals(graph.getNodes(), frozen.getNodes());
+        // segments of a frozen graph are grouped by source airport
+        Assert.assertEquals("[BOS-PDX, AMS-BOS]", frozen.getEdges().toString());
+        Assert.assertEquals("[BOS-PDX]", frozen.getOutgoingEdges(Airport.BOS).toString());
+        Assert.assertTrue(frozen.getOutgoingEdges(Airport.PDX).isEmpty());
+        Assert.assertEquals("AMS-BOS-PDX-1200", frozen.getCheapestTrip(Airport.AMS, Airport.PDX).get().toString());
+        Assert.assertEquals("[AMS-BOS-PDX-1200]", frozen.getAllTrips(Airport.AMS, Airport.PDX, false, Integer.MAX_VALUE, 3).toString());
+        // the original graph can still be modified, without changing the frozen one
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.PDX, 100));
+        Assert.assertEquals(2, frozen.getEdges().size());
+        try {
+            frozen.addEdge(new FlightSegment(Airport.AMS, Airport.PDX, 100));
+            Assert.fail("A frozen graph cannot be modified");
+        } catch (final UnsupportedOperationException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void precomputeCheapestTrips() throws Exception {
+        final Airport[] airports = KNOWN_AIRPORTS;
+        final ConnectionGraph graph = randomGraph(11, 20);
+        final ConnectionGraph onDemand = graph.freeze();
+        graph.precomputeCheapestTrips();
+        Assert.assertTrue(graph.hasPrecomputedCheapestTrips());
+        for (final Airport src : airports) {
+            for (final Airport dst : airports) {
+                Assert.assertEquals(onDemand.getCheapestTrip(src, dst).map(Trip::getPrice),
+                        graph.getCheapestTrip(src, dst).map(Trip::getPrice));
+            }
+        }
+        // only the trips affected by a new segment are discarded
+        graph.addEdge(new FlightSegment(Airport.NUE, Airport.LHR, 1));
+        Assert.assertTrue(graph.hasPrecomputedCheapestTrips());
+        Assert.assertEquals("NUE-LHR-1", graph.getCheapestTrip(Airport.NUE, Airport.LHR).get().toString());
+    }
+
+    @Test
+    public void getCheapestTripsFromSource() throws Exception {
+        final Airport[] airports = KNOWN_AIRPORTS;
+        final ConnectionGraph graph = randomGraph(13, 20);
+        final Airport unknown = Airport.valueOf("QQQ");
+        for (final Airport src : airports) {
+            final Map<Airport, Trip> toAll = graph.getCheapestTrips(src);
+            final List<Airport> destinations = new ArrayList<>(Arrays.asList(airports));
+            destinations.add(unknown);
+            destinations.add(src);
+            final Map<Airport, Optional<Trip>> toSome = graph.getCheapestTrips(src, destinations);
+            Assert.assertEquals(airports.length + 1, toSome.size());
+            for (final Airport dst : airports) {
+                final Optional<Integer> price = graph.getCheapestTrip(src, dst).map(Trip::getPrice);
+                Assert.assertEquals(price, Optional.ofNullable(toAll.get(dst)).map(Trip::getPrice));
+                Assert.assertEquals(price, toSome.get(dst).map(Trip::getPrice));
+            }
+            Assert.assertFalse(toSome.get(unknown).isPresent());
+        }
+        // a search for a single destination stops there, and finds the same trip
+        Assert.assertEquals(graph.getCheapestTrip(Airport.NUE, Airport.LHR).toString(),
+                graph.getCheapestTrips(Airport.NUE, Arrays.asList(Airport.LHR)).get(Airport.LHR).toString());
+        Assert.assertTrue(graph.getCheapestTrips(unknown).isEmpty());
+        Assert.assertFalse(graph.getCheapestTrips(unknown, Arrays.asList(Airport.NUE)).get(Airport.NUE).isPresent());
+    }
+
+    @Test
+    public void getCheapestTripBidirectional() throws Exception {
+        final ConnectionGraph graph = new GraphGenerator(500, 2, GraphGenerator.PriceDistribution.EXPONENTIAL, 17).generate();
+        final ConnectionGraph bidirectional = graph.freeze();
+        bidirectional.setBidirectionalSearch(true);
+        assertSameCheapestTrips(graph, bidirectional, 500, 17);
+    }
+
+    @Test
+    public void getCheapestTripContractionHierarchy() throws Exception {
+        for (final GraphGenerator.Topology topology : GraphGenerator.Topology.values()) {
+            // dense enough to leave a core of airports that are not contracted
+            final ConnectionGraph graph = new GraphGenerator(500, 12, GraphGenerator.PriceDistribution.EXPONENTIAL, topology, 23).generate();
+            final ConnectionGraph contracted = graph.freeze();
+            contracted.buildContractionHierarchy();
+            Assert.assertTrue(contracted.hasContractionHierarchy());
+            assertSameCheapestTrips(graph, contracted, 500, 23);
+        }
+    }
+
+    /**
+     * Checks that a graph searching cheapest trips in another way finds trips as cheap as the reference graph,
+     * between random airports of a {@link GraphGenerator} graph, made of segments of the graph.
+     * @param reference graph searching cheapest trips with the usual search
+     * @param candidate graph with the same segments, searching cheapest trips in another way
+     * @param airports number of airports of the graphs
+     * @param seed seed of the random airports
+     */
+    private static void assertSameCheapestTrips(final ConnectionGraph reference,
+                                                final ConnectionGraph candidate,
+                                                final int airports,
+                                                final long seed) {
+        final Random random = new Random(seed);
+        for (int i = 0; i < 300; i++) {
+            final Airport src = GraphGenerator.airport(random.nextInt(airports));
+            final Airport dst = i % 50 == 0 ? src : GraphGenerator.airport(random.nextInt(airports));
+            final Optional<Trip> expected = reference.getCheapestTrip(src, dst);
+            final Optional<Trip> trip = candidate.getCheapestTrip(src, dst);
+            Assert.assertEquals(src + "-" + dst, expected.map(Trip::getPrice), trip.map(Trip::getPrice));
+            if (trip.isPresent()) {
+                Assert.assertEquals(src, trip.get().getSource().get());
+                Assert.assertEquals(dst, trip.get().getDestination().get());
+                for (final FlightSegment segment : trip.get().getSegments()) {
+                    Assert.assertTrue(candidate.getOutgoingEdges(segment.getSource()).stream().anyMatch(edge ->
+                            edge.getDestination() == segment.getDestination() && edge.getPrice() == segment.getPrice()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void contractionHierarchyDiscardedOnChange() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.NUE, Airport.FRA, 50));
+        graph.addEdge(new FlightSegment(Airport.FRA, Airport.AMS, 50));
+        graph.addEdge(new FlightSegment(Airport.NUE, Airport.AMS, 200));
+        graph.buildContractionHierarchy();
+        Assert.assertEquals("NUE-FRA-AMS-100", graph.getCheapestTrip(Airport.NUE, Airport.AMS).get().toString());
+        Assert.assertTrue(graph.freeze().hasContractionHierarchy());
+
+        Assert.assertTrue(graph.updatePrice(graph.getOutgoingEdges(Airport.NUE).get(1), 80));
+        Assert.assertFalse(graph.hasContractionHierarchy());
+        Assert.assertEquals("NUE-AMS-80", graph.getCheapestTrip(Airport.NUE, Airport.AMS).get().toString());
+    }
+
+    @Test
+    public void getKCheapestTrips() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 100));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.AMS, 100));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.PDX, 300));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.PDX, 100));
+        Assert.assertEquals("[AMS-BOS-PDX-200, AMS-PDX-300, AMS-BOS-AMS-BOS-PDX-400]",
+                graph.getCheapestTrips(Airport.AMS, Airport.PDX, 3, true).toString());
+        Assert.assertEquals("[AMS-BOS-PDX-200, AMS-PDX-300]",
+                graph.getCheapestTrips(Airport.AMS, Airport.PDX, 5, false).toString());
+        Assert.assertEquals("[AMS-BOS-AMS-200, AMS-BOS-AMS-BOS-AMS-400]",
+                graph.getCheapestTrips(Airport.AMS, Airport.AMS, 2, true).toString());
+        Assert.assertTrue(graph.getCheapestTrips(Airport.AMS, Airport.AMS, 2, false).isEmpty());
+        Assert.assertTrue(graph.getCheapestTrips(Airport.PDX, Airport.AMS, 2, true).isEmpty());
+        Assert.assertTrue(graph.getCheapestTrips(Airport.AMS, Airport.PDX, 0, true).isEmpty());
+    }
+
+    @Test
+    public void getKCheapestTripsWithSearchLimits() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 100));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.AMS, 100));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.PDX, 300));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.PDX, 100));
+        graph.setSearchLimits(10, 1000);
+        TruncatedConsumer consumer = new TruncatedConsumer();
+        Assert.assertTrue(graph.getCheapestTrips(Airport.AMS, Airport.PDX, 3, true, consumer));
+        Assert.assertEquals("[AMS-BOS-PDX-200, AMS-PDX-300, AMS-BOS-AMS-BOS-PDX-400]", consumer.trips.toString());
+        Assert.assertFalse(consumer.truncated);
+
+        // the trip of 4 segments is cut short
+        graph.setSearchLimits(2, Long.MAX_VALUE);
+        consumer = new TruncatedConsumer();
+        Assert.assertFalse(graph.getCheapestTrips(Airport.AMS, Airport.PDX, 3, true, consumer));
+        Assert.assertEquals("[AMS-BOS-PDX-200, AMS-PDX-300]", consumer.trips.toString());
+        Assert.assertTrue(consumer.truncated);
+        // without loops, the cheapest trip has 2 segments
+        graph.setSearchLimits(1, Long.MAX_VALUE);
+        consumer = new TruncatedConsumer();
+        Assert.assertFalse(graph.getCheapestTrips(Airport.AMS, Airport.PDX, 3, false, consumer));
+        Assert.assertEquals("[AMS-PDX-300]", consumer.trips.toString());
+        Assert.assertTrue(consumer.truncated);
+
+        // the search stops when it would fly AMS-BOS-AMS-BOS
+        graph.setSearchLimits(Integer.MAX_VALUE, 4);
+        consumer = new TruncatedConsumer();
+        Assert.assertFalse(graph.getCheapestTrips(Airport.AMS, Airport.PDX, 3, true, consumer));
+        Assert.assertEquals("[AMS-BOS-PDX-200, AMS-PDX-300]", consumer.trips.toString());
+        Assert.assertTrue(consumer.truncated);
+        graph.setSearchLimits(Integer.MAX_VALUE, 1);
+        consumer = new TruncatedConsumer();
+        Assert.assertFalse(graph.getCheapestTrips(Airport.AMS, Airport.PDX, 3, false, consumer));
+        Assert.assertTrue(consumer.trips.isEmpty());
+        Assert.assertTrue(consumer.truncated);
+    }
+
+    @Test
+    public void getKCheapestTripsAsSortedTrips() throws Exception {
+        for (final GraphGenerator.Topology topology : GraphGenerator.Topology.values()) {
+            final ConnectionGraph graph = new GraphGenerator(60, 3, GraphGenerator.PriceDistribution.EXPONENTIAL, topology, 29).generate();
+            final Random random = new Random(29);
+            for (int i = 0; i < 100; i++) {
+                final Airport src = GraphGenerator.airport(random.nextInt(60));
+                final Airport dst = i % 20 == 0 ? src : GraphGenerator.airport(random.nextInt(60));
+                final boolean loopsAllowed = i % 2 == 0;
+                final int count = 1 + random.nextInt(20);
+                final List<Trip> trips = graph.getCheapestTrips(src, dst, count, loopsAllowed);
+                final String message = topology + ": " + src + "-" + dst + " " + count + (loopsAllowed ? "" : " without loops");
+                Assert.assertTrue(message, trips.size() <= count);
+                if (trips.isEmpty()) {
+                    Assert.assertTrue(message, !loopsAllowed && src == dst || !graph.getCheapestTrip(src, dst).isPresent());
+                    continue;
+                }
+                // the trips costing as much as the last one at most, sorted by price
+                final int priceLimit = trips.get(trips.size() - 1).getPrice() + 1;
+                final List<Trip> expected = graph.getAllTrips(src, dst, loopsAllowed, priceLimit, Integer.MAX_VALUE);
+                expected.sort((first, second) -> Integer.compare(first.getPrice(), second.getPrice()));
+                Assert.assertEquals(message, Math.min(count, expected.size()), trips.size());
+                final List<String> unmatched = new ArrayList<>();
+                for (final Trip trip : expected) {
+                    unmatched.add(trip.toString());
+                }
+                for (int j = 0; j < trips.size(); j++) {
+                    Assert.assertEquals(message, expected.get(j).getPrice(), trips.get(j).getPrice());
+                    Assert.assertTrue(message + ": " + trips.get(j), unmatched.remove(trips.get(j).toString()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void addNodeAfterIndex() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.NUE, Airport.FRA, 50));
+        Assert.assertEquals(1, graph.countTrips(Airport.NUE, Airport.FRA, 1, 2));
+        // created after the index was built
+        final Airport added = Airport.valueOf("ZQZ");
+        graph.addNode(added);
+        Assert.assertEquals(0, graph.countTrips(added, Airport.FRA, 1, 2));
+        Assert.assertTrue(graph.getAllTrips(added, Airport.FRA, true, 1000, Integer.MAX_VALUE).isEmpty());
+        Assert.assertTrue(graph.getAllTrips(Airport.NUE, added, true, 1000, Integer.MAX_VALUE).isEmpty());
+        Assert.assertFalse(graph.getCheapestTrip(added, Airport.FRA).isPresent());
+        Assert.assertFalse(graph.getCheapestTrip(Airport.NUE, added).isPresent());
+        Assert.assertTrue(graph.getCheapestTrips(added).isEmpty());
+        Assert.assertFalse(graph.getCheapestTrips(Airport.NUE, Arrays.asList(added)).get(added).isPresent());
+        Assert.assertTrue(graph.getCheapestTrips(added, Airport.FRA, 3, true).isEmpty());
+    }
+
+    @Test
+    public void updateEdges() throws Exception {
+        // few segments, so that some trips do not change
+        final Airport[] airports = KNOWN_AIRPORTS;
+        final ConnectionGraph graph = randomGraph(5, 9);
+        final Random random = new Random(5);
+        graph.precomputeCheapestTrips();
+        int unchanged = 0;
+        for (int i = 0; i < 60; i++) {
+            final long version = graph.getVersion();
+            final ConnectionGraph before = graph.freeze();
+            final FlightSegment segment = graph.getEdges().get(random.nextInt(graph.getEdges().size()));
+            switch (i % 3) {
+                case 0:
+                    Assert.assertTrue(graph.updatePrice(segment, 50 + random.nextInt(500)));
+                    break;
+                case 1:
+                    Assert.assertTrue(graph.removeEdge(segment));
+                    break;
+                default:
+                    final int from = random.nextInt(airports.length);
+                    graph.addEdge(new FlightSegment(airports[from], airports[(from + 1 + random.nextInt(airports.length - 1)) % airports.length],
+                            100 + random.nextInt(400)));
+            }
+            Assert.assertNotEquals(version, graph.getVersion());
+
+            // a graph built from scratch has the same cheapest trips
+            final ConnectionGraph rebuilt = new ConnectionGraph();
+            for (final FlightSegment edge : graph.getEdges()) {
+                rebuilt.addEdge(edge);
+            }
+            for (final Airport src : airports) {
+                for (final Airport dst : airports) {
+                    final Optional<Integer> price = rebuilt.getCheapestTrip(src, dst).map(Trip::getPrice);
+                    Assert.assertEquals(price, graph.getCheapestTrip(src, dst).map(Trip::getPrice));
+                    if (!graph.mayHaveChangedTrips(src, dst, version)) {
+                        unchanged++;
+                        Assert.assertEquals(price, before.getCheapestTrip(src, dst).map(Trip::getPrice));
+                        Assert.assertEquals(rebuilt.countTrips(src, dst, 1, 4), before.countTrips(src, dst, 1, 4));
+                    }
+                }
+            }
+        }
+        Assert.assertTrue(unchanged > 0);
+        Assert.assertFalse(graph.removeEdge(new FlightSegment(Airport.NUE, Airport.NUE, 1)));
+        Assert.assertTrue(graph.mayHaveChangedTrips(Airport.NUE, Airport.LHR, new ConnectionGraph().getVersion()));
+    }
+
+    @Test
+    public void getAllTripsPrunedByPrice() throws Exception {
+        // trips are pruned by the price left to the destination, which must not change the trips found
+        final ConnectionGraph graph = new GraphGenerator(300, 3, GraphGenerator.PriceDistribution.UNIFORM, 11).generate();
+        final Random random = new Random(11);
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        for (int i = 0; i < 20; i++) {
+            final Trip trip = GraphGenerator.randomTrip(graph, 1 + random.nextInt(3), random);
+            final Airport src = trip.getSource().get();
+            final Airport dst = trip.getDestination().get();
+            final int limit = graph.getCheapestTrip(src, dst).get().getPrice() + 1 + random.nextInt(400);
+            final String expected = graph.getAllTrips(src, dst, true, (Trip t) -> t.getPrice() < limit).toString();
+            graph.setParallelSearch(null, 1);
+            Assert.assertEquals(expected, graph.getAllTrips(src, dst, true, limit, Integer.MAX_VALUE).toString());
+            graph.setParallelSearch(pool, 2);
+            Assert.assertEquals(expected, graph.getAllTrips(src, dst, true, limit, Integer.MAX_VALUE).toString());
+        }
+        graph.setParallelSearch(null, 1);
+        pool.shutdown();
+        Assert.assertTrue(graph.getAllTrips(GraphGenerator.airport(0), GraphGenerator.airport(1), true, 10, Integer.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void getAllTripsWithManyAirports() throws Exception {
+        // more airports than bits in a long, in a line: AAA-AAB-...-ACX
+        final ConnectionGraph graph = new ConnectionGraph();
+        final List<Airport> line = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            line.add(Airport.valueOf("A" + (char) ('A' + i / 26) + (char) ('A' + i % 26)));
+        }
+        for (int i = 1; i < line.size(); i++) {
+            graph.addEdge(new FlightSegment(line.get(i - 1), line.get(i), 1));
+        }
+        // and back to the start, so a search without loops has to tell every airport apart
+        graph.addEdge(new FlightSegment(line.get(line.size() - 1), line.get(0), 1));
+        final Airport first = line.get(0);
+        final Airport last = line.get(line.size() - 1);
+        Assert.assertEquals(1, graph.getAllTrips(first, last, false, Integer.MAX_VALUE, Integer.MAX_VALUE).size());
+        Assert.assertEquals(2, graph.getAllTrips(first, last, true, 200, Integer.MAX_VALUE).size());
+        Assert.assertEquals(100, graph.getCheapestTrip(first, first).get().getPrice());
+        Assert.assertEquals(0, graph.countTrips(first, Airport.valueOf("ZZZ"), 1, 10));
+    }
+
+    @Test
+    public void snapshot() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.BOS, 500));
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.PDX, 700));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.valueOf("SFO"), 600));
+        graph.addNode(Airport.HKG);
+        final File file = File.createTempFile("graph", ".snapshot");
+        file.deleteOnExit();
+        graph.writeSnapshot(file);
+
+        final ConnectionGraph snapshot = ConnectionGraph.readSnapshot(file);
+        Assert.assertTrue(snapshot.isFrozen());
+        Assert.assertEquals(graph.getNodes(), snapshot.getNodes());
+        Assert.assertEquals(graph.freeze().getEdges().toString(), snapshot.getEdges().toString());
+        Assert.assertEquals("AMS-BOS-PDX-1200", snapshot.getCheapestTrip(Airport.AMS, Airport.PDX).get().toString());
+        Assert.assertEquals(600, snapshot.getOutgoingEdges(Airport.AMS).get(1).getPrice());
+    }
+
+    @Test
+    public void snapshotWithContractionHierarchy() throws Exception {
+        final ConnectionGraph graph = new GraphGenerator(300, 3, GraphGenerator.PriceDistribution.UNIFORM, 29).generate();
+        graph.buildContractionHierarchy();
+        final File file = File.createTempFile("graph", ".snapshot");
+        file.deleteOnExit();
+        graph.writeSnapshot(file);
+
+        final ConnectionGraph snapshot = ConnectionGraph.readSnapshot(file);
+        Assert.assertTrue(snapshot.hasContractionHierarchy());
+        final Random random = new Random(29);
+        for (int i = 0; i < 100; i++) {
+            final Airport src = GraphGenerator.airport(random.nextInt(300));
+            final Airport dst = GraphGenerator.airport(random.nextInt(300));
+            Assert.assertEquals(graph.getCheapestTrip(src, dst).map(Trip::toString), snapshot.getCheapestTrip(src, dst).map(Trip::toString));
+        }
+    }
+
+    @Test
+    public void snapshotWithOtherIdsAndContractionHierarchy() throws Exception {
+        // a snapshot written when LHR had id 0, FRA id 1 and NUE id 2, with the segments LHR-FRA-10 and FRA-NUE-20,
+        // FRA ranked first and a shortcut from LHR to NUE
+        final ByteBuffer buffer = ByteBuffer.allocate(24 + 9 + 12 + 16 + 8 + 8 + 12 + 3 * 24);
+        buffer.putInt(0x464c544b).putInt(2).putInt(3).putInt(3).putInt(2).putInt(3);
+        buffer.put("LHRFRANUE".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(0).putInt(1).putInt(2);
+        buffer.putInt(0).putInt(1).putInt(2).putInt(2);
+        buffer.putInt(1).putInt(2);
+        buffer.putInt(10).putInt(20);
+        buffer.putInt(1).putInt(0).putInt(2);
+        buffer.putInt(0).putInt(1).putInt(0);
+        buffer.putInt(1).putInt(2).putInt(2);
+        buffer.putInt(-1).putInt(-2).putInt(0);
+        buffer.putInt(-1).putInt(-1).putInt(1);
+        buffer.putLong(10).putLong(20).putLong(30);
+        final File file = File.createTempFile("graph", ".snapshot");
+        file.deleteOnExit();
+        Files.write(file.toPath(), buffer.array());
+
+        final ConnectionGraph snapshot = ConnectionGraph.readSnapshot(file);
+        Assert.assertTrue(snapshot.hasContractionHierarchy());
+        Assert.assertEquals("[LHR, FRA, NUE]", snapshot.getNodes().toString());
+        Assert.assertEquals("LHR-FRA-NUE-30", snapshot.getCheapestTrip(Airport.LHR, Airport.NUE).get().toString());
+        Assert.assertEquals("FRA-NUE-20", snapshot.getCheapestTrip(Airport.FRA, Airport.NUE).get().toString());
+        Assert.assertFalse(snapshot.getCheapestTrip(Airport.NUE, Airport.LHR).isPresent());
+    }
+
+    @Test
+    public void corruptedSnapshot() throws Exception {
+        final ConnectionGraph graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.LHR, Airport.FRA, 10));
+        graph.addEdge(new FlightSegment(Airport.FRA, Airport.NUE, 20));
+        graph.addEdge(new FlightSegment(Airport.NUE, Airport.LHR, 30));
+        graph.buildContractionHierarchy();
+        final File file = File.createTempFile("graph", ".snapshot");
+        file.deleteOnExit();
+        graph.writeSnapshot(file);
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        final ByteBuffer header = ByteBuffer.wrap(bytes);
+        final int airports = header.getInt(8);
+        final int segments = header.getInt(16);
+        final int edges = header.getInt(20);
+        final int firstSegment = 24 + 3 * airports + 4 * header.getInt(12);
+        final int destinations = firstSegment + 4 * (airports + 1);
+        final int edgeFirst = destinations + 8 * segments + 4 * airports + 8 * edges;
+        final int edgeSecond = edgeFirst + 4 * edges;
+
+        // a destination that is not an airport
+        assertCorrupted(file, bytes, destinations, airports);
+        // segments of the last airport before those of the one before it
+        assertCorrupted(file, bytes, firstSegment + 4 * (airports - 1), segments + 1);
+        // an edge made of itself
+        assertCorrupted(file, bytes, edgeFirst, 0);
+        assertCorrupted(file, bytes, edgeSecond + 4 * (edges - 1), edges);
+    }
+
+    /**
+     * Writes a snapshot with an int changed, and checks that it cannot be read.
+     */
+    private static void assertCorrupted(final File file, final byte[] bytes, final int position, final int value) throws Exception {
+        final ByteBuffer corrupted = ByteBuffer.wrap(bytes.clone());
+        corrupted.putInt(position, value);
+        Files.write(file.toPath(), corrupted.array());
+        try {
+            ConnectionGraph.readSnapshot(file);
+            Assert.fail("A corrupted snapshot cannot be read");
+        } catch (final IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void snapshotWithOtherIds() throws Exception {
+        // a snapshot written when LHR had id 0 and NUE id 1, with the segment LHR-NUE-42
+        final ByteBuffer buffer = ByteBuffer.allocate(20 + 6 + 8 + 12 + 8);
+        buffer.putInt(0x464c544b).putInt(1).putInt(2).putInt(2).putInt(1);
+        buffer.put("LHRNUE".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(0).putInt(1);
+        buffer.putInt(0).putInt(1).putInt(1);
+        buffer.putInt(1).putInt(42);
+        final File file = File.createTempFile("graph", ".snapshot");
+        file.deleteOnExit();
+        Files.write(file.toPath(), buffer.array());
+
+        final ConnectionGraph snapshot = ConnectionGraph.readSnapshot(file);
+        Assert.assertEquals("[LHR, NUE]", snapshot.getNodes().toString());
+        Assert.assertEquals("LHR-NUE-42", snapshot.getCheapestTrip(Airport.LHR, Airport.NUE).get().toString());
+        Assert.assertEquals("[LHR-NUE]", snapshot.getOutgoingEdges(Airport.LHR).toString());
+        Assert.assertTrue(snapshot.getOutgoingEdges(Airport.NUE).isEmpty());
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.flitetrakr.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class GraphGeneratorTest {
+    @Test
+    public void generateTest() throws Exception {
+        final GraphGenerator generator = new GraphGenerator(50, 3.5, GraphGenerator.PriceDistribution.EXPONENTIAL, 7);
+        final ConnectionGraph graph = generator.generate();
+        Assert.assertEquals(175, graph.getEdges().size());
+        for (final FlightSegment segment : graph.getEdges()) {
+            Assert.assertNotSame(segment.getSource(), segment.getDestination());
+            Assert.assertTrue(segment.getPrice() >= GraphGenerator.MIN_PRICE && segment.getPrice() <= GraphGenerator.MAX_PRICE);
+            Assert.assertTrue(segment.getSource().getCode().compareTo("AAA") >= 0 && segment.getSource().getCode().compareTo("AC") < 0);
+        }
+        // the same seed gives the same graph
+        Assert.assertEquals(graph.getEdges().toString(), generator.generate().getEdges().toString());
+    }
+
+    @Test
+    public void topologyTest() throws Exception {
+        for (final GraphGenerator.Topology topology : GraphGenerator.Topology.values()) {
+            final ConnectionGraph graph = new GraphGenerator(200, 4, GraphGenerator.PriceDistribution.UNIFORM, topology, 3).generate();
+            Assert.assertEquals(800, graph.getEdges().size());
+            int maxDegree = 0;
+            for (final Airport airport : graph.getNodes()) {
+                maxDegree = Math.max(maxDegree, graph.getOutgoingEdges(airport).size());
+            }
+            for (final FlightSegment segment : graph.getEdges()) {
+                Assert.assertNotSame(segment.getSource(), segment.getDestination());
+            }
+            if (topology == GraphGenerator.Topology.RANDOM) {
+                Assert.assertTrue(maxDegree < 15);
+            } else {
+                // hubs have most of the segments
+                Assert.assertTrue(topology + " " + maxDegree, maxDegree >= 25);
+            }
+        }
+        // a hub is joined to its spokes
+        final ConnectionGraph hubAndSpoke = new GraphGenerator(200, 4, GraphGenerator.PriceDistribution.UNIFORM,
+                GraphGenerator.Topology.HUB_AND_SPOKE, 3).generate();
+        for (final FlightSegment segment : hubAndSpoke.getOutgoingEdges(GraphGenerator.airport(GraphGenerator.SPOKES_PER_HUB + 1))) {
+            Assert.assertSame(GraphGenerator.airport(GraphGenerator.SPOKES_PER_HUB), segment.getDestination());
+        }
+    }
+
+    @Test
+    public void airportTest() throws Exception {
+        Assert.assertEquals("AAA", GraphGenerator.airport(0).getCode());
+        Assert.assertEquals("ABA", GraphGenerator.airport(26).getCode());
+        Assert.assertEquals("ZZZ", GraphGenerator.airport(GraphGenerator.MAX_AIRPORTS - 1).getCode());
+    }
+
+    @Test
+    public void randomTripTest() throws Exception {
+        final ConnectionGraph graph = new GraphGenerator(100, 4, GraphGenerator.PriceDistribution.UNIFORM, 1).generate();
+        final Trip trip = GraphGenerator.randomTrip(graph, 5, new Random(1));
+        Assert.assertEquals(4, trip.getStopsNumber());
+        Assert.assertFalse(trip.containsLoops());
+        Assert.assertTrue(graph.getEdges().containsAll(trip.getSegments()));
+    }
+}
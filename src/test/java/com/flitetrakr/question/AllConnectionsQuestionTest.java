@@ -8,6 +8,8 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.List;
 import java.util.Optional;
 
@@ -49,4 +51,30 @@ public class AllConnectionsQuestionTest {
         Assert.assertEquals("#78: No connections found!", question.get().toString(answer));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void printAnswerTest() throws Exception {
+        for (final String line : new String[]{"#5: Find all connections from FRA to LHR below 2500 Euros!",
+                "#6: Find all connections from FRA to LHR below 300 Euros!"}) {
+            final Optional<Question> question = QuestionFactory.getQuestion(line);
+            Assert.assertTrue(question.isPresent());
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            question.get().printAnswer(graph, new PrintStream(out, true));
+            Assert.assertEquals(question.get().toString(question.get().processQuestion(graph)), out.toString().trim());
+        }
+    }
+
+    @Test
+    public void truncatedTest() throws Exception {
+        final Optional<Question> question = QuestionFactory.getQuestion("#7: Find all connections from FRA to LHR below 2500 Euros!");
+        Assert.assertTrue(question.isPresent());
+        graph.setSearchLimits(1, Long.MAX_VALUE);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        question.get().printAnswer(graph, new PrintStream(out, true));
+        Assert.assertEquals("#7: No connections found!" + AllConnectionsQuestion.TRUNCATED, out.toString().trim());
+        graph.setSearchLimits(2, Long.MAX_VALUE);
+        out.reset();
+        question.get().printAnswer(graph, new PrintStream(out, true));
+        Assert.assertEquals("#7: FRA-NUE-LHR-1100" + AllConnectionsQuestion.TRUNCATED, out.toString().trim());
+    }
+}
@@ -0,0 +1,93 @@
+package com.flitetrakr.question;
+
+import com.flitetrakr.model.Airport;
+import com.flitetrakr.model.ConnectionGraph;
+import com.flitetrakr.model.FlightSegment;
+import com.flitetrakr.model.Trip;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Optional;
+
+public class CheapestConnectionsQuestionTest {
+
+    private ConnectionGraph graph;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.LHR, 300));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.FRA, 400));
+        graph.addEdge(new FlightSegment(Airport.FRA, Airport.NUE, 500));
+        graph.addEdge(new FlightSegment(Airport.NUE, Airport.LHR, 600));
+        graph.addEdge(new FlightSegment(Airport.LHR, Airport.NUE, 500));
+    }
+
+    @Test
+    public void cheapestConnectionsTest() throws Exception {
+        final String line = "#12: What are the 3 cheapest connections from AMS to LHR?";
+        final Optional<Question> question = QuestionFactory.getQuestion(line);
+        Assert.assertTrue(question.isPresent());
+        Assert.assertTrue(question.get() instanceof CheapestConnectionsQuestion);
+        final List<Trip> answer = question.get().processQuestion(graph);
+        Assert.assertEquals(3, answer.size());
+        Assert.assertEquals("#12: AMS-LHR-300, AMS-LHR-NUE-LHR-1400, AMS-FRA-NUE-LHR-1500", question.get().toString(answer));
+    }
+
+    @Test
+    public void withoutLoopsTest() throws Exception {
+        final String line = "#13: What are the 3 cheapest connections from AMS to LHR without loops?";
+        final Optional<Question> question = QuestionFactory.getQuestion(line);
+        Assert.assertTrue(question.isPresent());
+        Assert.assertTrue(question.get() instanceof CheapestConnectionsQuestion);
+        final List<Trip> answer = question.get().processQuestion(graph);
+        Assert.assertEquals(2, answer.size());
+        Assert.assertEquals("#13: AMS-LHR-300, AMS-FRA-NUE-LHR-1500", question.get().toString(answer));
+    }
+
+    @Test
+    public void noConnectionsTest() throws Exception {
+        final String line = "#14: What are the 10 cheapest connections from LHR to AMS?";
+        final Optional<Question> question = QuestionFactory.getQuestion(line);
+        Assert.assertTrue(question.isPresent());
+        final List<Trip> answer = question.get().processQuestion(graph);
+        Assert.assertEquals(0, answer.size());
+        Assert.assertEquals("#14: No connections found!", question.get().toString(answer));
+    }
+
+    @Test
+    public void wrongNumberTest() throws Exception {
+        Assert.assertFalse(QuestionFactory.getQuestion("#15: What are the 0 cheapest connections from AMS to LHR?").isPresent());
+        Assert.assertFalse(QuestionFactory.getQuestion("#16: What are the 99999999999 cheapest connections from AMS to LHR?").isPresent());
+        Assert.assertFalse(QuestionFactory.getQuestion("#17: What are the 2147483647 cheapest connections from AMS to LHR?").isPresent());
+        Assert.assertFalse(QuestionFactory.getQuestionWithPatterns("#18: What are the 1001 cheapest connections from AMS to LHR?", System.out).isPresent());
+        Assert.assertTrue(QuestionFactory.getQuestion("#19: What are the 1000 cheapest connections from AMS to LHR?").isPresent());
+    }
+
+    @Test
+    public void searchLimitsTest() throws Exception {
+        final ConnectionGraph cycles = new ConnectionGraph();
+        cycles.addEdge(new FlightSegment(Airport.NUE, Airport.FRA, 43));
+        cycles.addEdge(new FlightSegment(Airport.FRA, Airport.NUE, 10));
+        cycles.addEdge(new FlightSegment(Airport.NUE, Airport.AMS, 67));
+        cycles.addEdge(new FlightSegment(Airport.AMS, Airport.FRA, 20));
+        cycles.setSearchLimits(10, 1000);
+        final Question question = QuestionFactory.getQuestion("#20: What are the 1000 cheapest connections from NUE to AMS?").get();
+        final ByteArrayOutputStream answer = new ByteArrayOutputStream();
+        question.printAnswer(cycles, new PrintStream(answer, true));
+        Assert.assertTrue(answer.toString(), answer.toString().startsWith("#20: NUE-AMS-67, NUE-FRA-NUE-AMS-120, "));
+        Assert.assertTrue(answer.toString(), answer.toString().trim().endsWith(AllConnectionsQuestion.TRUNCATED));
+    }
+
+    @Test
+    public void keyTest() throws Exception {
+        Assert.assertEquals(QuestionFactory.getQuestion("#1: What are the 1 cheapest connection from AMS to LHR?").get().getKey(),
+                QuestionFactory.getQuestion("#2: What are the 1 cheapest connections from AMS to LHR?").get().getKey());
+        Assert.assertNotEquals(QuestionFactory.getQuestion("#1: What are the 2 cheapest connections from AMS to LHR?").get().getKey(),
+                QuestionFactory.getQuestion("#2: What are the 2 cheapest connections from AMS to LHR without loops?").get().getKey());
+    }
+}
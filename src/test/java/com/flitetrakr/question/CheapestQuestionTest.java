@@ -1,5 +1,6 @@
 package com.flitetrakr.question;
 
+import com.flitetrakr.metrics.Metrics;
 import com.flitetrakr.model.Airport;
 import com.flitetrakr.model.ConnectionGraph;
 import com.flitetrakr.model.FlightSegment;
@@ -8,6 +9,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -66,4 +68,38 @@ public class CheapestQuestionTest {
         Assert.assertTrue( answer.isEmpty());
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void answerBySourceTest() throws Exception {
+        final List<Question> questions = new ArrayList<>();
+        for (final String line : new String[]{
+                "#1: What is the cheapest connection from AMS to NUE?",
+                "#2: What is the cheapest connection from LHR to NUE?",
+                "#3: What is the cheapest connection from NUE to LHR?",
+                "#4: What is the cheapest connection from NUE to NUE?",
+                "#5: What is the cheapest connection from AMS to LHR?",
+                "#6: What is the cheapest connection from NUE to AMS?",
+                "#7: What is the price of the connection NUE-LHR?"}) {
+            questions.add(QuestionFactory.getQuestion(line).get());
+        }
+        final List<String> expected = new ArrayList<>();
+        for (final Question question : questions) {
+            expected.add(question.toString(question.processQuestion(graph)));
+        }
+
+        // one search for the questions from AMS, another one for those from NUE
+        final long searches = Metrics.registry().counter("search.cheapest.searches").get();
+        Assert.assertEquals(5, CheapestQuestionPlanner.answerBySource(graph, questions));
+        Assert.assertEquals(searches + 2, Metrics.registry().counter("search.cheapest.searches").get());
+        for (int i = 0; i < questions.size(); i++) {
+            if (i != 1) {
+                Assert.assertEquals(expected.get(i), questions.get(i).toString(questions.get(i).processQuestion(graph)));
+            }
+        }
+        Assert.assertEquals(searches + 2, Metrics.registry().counter("search.cheapest.searches").get());
+
+        // answers found on another version of the graph are not used
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.NUE, 1));
+        Assert.assertEquals("#1: AMS-NUE-1", questions.get(0).toString(questions.get(0).processQuestion(graph)));
+    }
+}
@@ -10,6 +10,8 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.List;
 import java.util.Optional;
 
@@ -79,4 +81,41 @@ public class DifferentConnectionsQuestionTest {
         final List<Trip> answer = question.get().processQuestion(graph);
         Assert.assertTrue(answer.isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void boundedMinimumConnectionsTest() {
+        final String line = "#2: How many different connections with minimum 2 stops and maximum 3 stops exist between AMS and FRA?";
+        final Optional<Question> question = QuestionFactory.getQuestion(line);
+        Assert.assertTrue(question.isPresent());
+        Assert.assertTrue(question.get() instanceof DifferentConnectionsQuestion);
+        final List<Trip> answer = question.get().processQuestion(graph);
+        Assert.assertEquals("[AMS-LHR-NUE-LHR-FRA-1600, AMS-FRA-NUE-LHR-FRA-1700]", answer.toString());
+        Assert.assertEquals("#2: 2", question.get().toString(answer));
+    }
+
+    @Test
+    public void largeMaximumStopsTest() {
+        final String line = "#4: How many different connections with minimum 1 stop and maximum 1000 stops exist between AMS and FRA?";
+        final Optional<Question> question = QuestionFactory.getQuestion(line);
+        Assert.assertTrue(question.isPresent());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        question.get().printAnswer(graph, new PrintStream(out, true));
+        Assert.assertEquals("#4: Too many connections to be counted", out.toString().trim());
+
+        for (final String maximum : new String[] {"1001", "2147483647", "99999999999"}) {
+            final String wrongLine = "#5: How many different connections with minimum 1 stop and maximum " + maximum + " stops exist between AMS and FRA?";
+            Assert.assertFalse(wrongLine, QuestionFactory.getQuestion(wrongLine).isPresent());
+            Assert.assertFalse(wrongLine, QuestionFactory.getQuestionWithPatterns(wrongLine, System.out).isPresent());
+        }
+    }
+
+    @Test
+    public void printAnswerCountsTrips() {
+        final String line = "#3: How many different connections with maximum 5 stops exist between AMS and LHR?";
+        final Optional<Question> question = QuestionFactory.getQuestion(line);
+        Assert.assertTrue(question.isPresent());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        question.get().printAnswer(graph, new PrintStream(out, true));
+        Assert.assertEquals(question.get().toString(question.get().processQuestion(graph)), out.toString().trim());
+    }
+}
@@ -0,0 +1,90 @@
+package com.flitetrakr.question;
+
+import com.flitetrakr.model.Airport;
+import com.flitetrakr.model.ConnectionGraph;
+import com.flitetrakr.model.FlightSegment;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+public class QuestionCacheTest {
+
+    private ConnectionGraph graph;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new ConnectionGraph();
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.LHR, 300));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.FRA, 400));
+        graph.addEdge(new FlightSegment(Airport.FRA, Airport.NUE, 500));
+        graph.addEdge(new FlightSegment(Airport.NUE, Airport.LHR, 600));
+        graph.addEdge(new FlightSegment(Airport.LHR, Airport.NUE, 500));
+    }
+
+    private String answer(final QuestionCache cache, final String line) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.printAnswer(QuestionFactory.getQuestion(line).get(), graph, new PrintStream(out, true));
+        return out.toString().trim();
+    }
+
+    @Test
+    public void sameQuestionTest() throws Exception {
+        final QuestionCache cache = new QuestionCache(10);
+        Assert.assertEquals("#1: AMS-LHR-NUE-800", answer(cache, "#1: What is the cheapest connection from AMS to NUE?"));
+        Assert.assertEquals("#2: AMS-LHR-NUE-800", answer(cache, "#2: What is the cheapest connection from AMS to NUE?"));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        // same range of stops, asked differently
+        Assert.assertEquals("#3: 3", answer(cache, "#3: How many different connections with maximum 2 stops exist between AMS and LHR?"));
+        Assert.assertEquals("#4: 3", answer(cache, "#4: How many different connections with minimum 0 stops and maximum 2 stops exist between AMS and LHR?"));
+        Assert.assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void graphChangeTest() throws Exception {
+        final QuestionCache cache = new QuestionCache(10);
+        Assert.assertEquals("#1: 800", answer(cache, "#1: What is the price of the connection AMS-LHR-NUE?"));
+        graph.addEdge(new FlightSegment(Airport.AMS, Airport.NUE, 100));
+        Assert.assertEquals("#1: AMS-NUE-100", answer(cache, "#1: What is the cheapest connection from AMS to NUE?"));
+        // the new segment is not part of this connection, so its price is still cached
+        Assert.assertEquals("#2: 800", answer(cache, "#2: What is the price of the connection AMS-LHR-NUE?"));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void unrelatedChangeTest() throws Exception {
+        final QuestionCache cache = new QuestionCache(10);
+        Assert.assertEquals("#1: AMS-LHR-NUE-800", answer(cache, "#1: What is the cheapest connection from AMS to NUE?"));
+        Assert.assertEquals("#2: 800", answer(cache, "#2: What is the price of the connection AMS-LHR-NUE?"));
+        // nothing can be reached from BOS, so no answer changes
+        graph.addEdge(new FlightSegment(Airport.BOS, Airport.DXB, 100));
+        Assert.assertEquals("#3: AMS-LHR-NUE-800", answer(cache, "#3: What is the cheapest connection from AMS to NUE?"));
+        Assert.assertEquals("#4: 800", answer(cache, "#4: What is the price of the connection AMS-LHR-NUE?"));
+        Assert.assertEquals(2, cache.getHits());
+        // a cheaper segment on the way changes both answers
+        graph.updatePrice(new FlightSegment(Airport.LHR, Airport.NUE, 500), 100);
+        Assert.assertEquals("#5: AMS-LHR-NUE-400", answer(cache, "#5: What is the cheapest connection from AMS to NUE?"));
+        Assert.assertEquals("#6: 400", answer(cache, "#6: What is the price of the connection AMS-LHR-NUE?"));
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void evictionTest() throws Exception {
+        final QuestionCache cache = new QuestionCache(2);
+        answer(cache, "#1: What is the cheapest connection from AMS to NUE?");
+        answer(cache, "#2: What is the cheapest connection from AMS to LHR?");
+        answer(cache, "#3: What is the cheapest connection from AMS to NUE?");
+        // evicts AMS to LHR, the least recently used
+        answer(cache, "#4: What is the cheapest connection from FRA to NUE?");
+        Assert.assertEquals(2, cache.size());
+        answer(cache, "#5: What is the cheapest connection from AMS to NUE?");
+        answer(cache, "#6: What is the cheapest connection from AMS to LHR?");
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(4, cache.getMisses());
+    }
+}
@@ -0,0 +1,74 @@
+package com.flitetrakr.question;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Optional;
+
+public class QuestionFactoryTest {
+    /**
+     * Questions in the usual form, parsed without patterns.
+     */
+    private static final String[] QUESTIONS = {
+            "#1: What is the price of the connection NUE-FRA-LHR?",
+            "#2: What is the price of the connection NUE-AMS-PDX-FRA-HKG-LHR?",
+            "#3: What is the cheapest connection from AMS to HKG?",
+            "#4: What is the cheapest connection from HKG to HKG?",
+            "#5: How many different connections with maximum 3 stops exist between NUE and LHR?",
+            "#6: How many different connections with minimum 1 stop exist between FRA and LHR?",
+            "#7: How many different connections with exactly 2 stops exist between DXB and DXB?",
+            "#8: How many different connections with minimum 1 stop and maximum 3 stops exist between FRA and LHR?",
+            "#9: Find all connections from AMS to LHR below 2500 Euros!",
+            "#10: Find all connections from SFO to JFK below 70 Euros!",
+            "#11: What are the 10 cheapest connections from NUE to LHR?",
+            "#12: What are the 1 cheapest connection from NUE to NUE without loops?",
+    };
+
+    /**
+     * Lines that are not in the usual form, matched with the patterns.
+     */
+    private static final String[] OTHER_LINES = {
+            "Question #1: What is the price of the connection NUE-FRA-LHR?",
+            "#2: What is the price of the connection NUE-FRA-LHR? #3: What is the cheapest connection from AMS to HKG?",
+            "#3:\tWhat is the cheapest connection from AMS to HKG?",
+            "#4: What is the cheapest connection from AMS to HKG? ",
+            "#5: What is the cheapest connection from AMS to HKG to NUE?",
+            "#6: What is the price of the connection NUE-FRA-?",
+            "#7: How many different connections with maximum 12 stops exist between NUE and LHR?",
+            "#8: Find all connections from AMS to LHR below 2500 Euros!!",
+            "#9: Find all connections from AMS to LHR below 99999999999 Euros!",
+            "#10: Find all connections from AMS below 2500 Euros!",
+            "#11: How much is the connection NUE-FRA?",
+            "#12: What are the 10 cheapest connections from NUE to LHR to AMS?",
+            "#13: What are the 10 cheapest connections from NUE to LHR without loops ?",
+    };
+
+    @Test
+    public void parseQuestionTest() throws Exception {
+        for (final String line : QUESTIONS) {
+            final Optional<Question> question = QuestionFactory.parseQuestion(line, System.out);
+            Assert.assertNotNull(line, question);
+            assertSameQuestion(line, QuestionFactory.getQuestionWithPatterns(line, System.out), question);
+        }
+    }
+
+    @Test
+    public void otherLinesTest() throws Exception {
+        for (final String line : OTHER_LINES) {
+            Assert.assertNull(line, QuestionFactory.parseQuestion(line, System.out));
+            try {
+                assertSameQuestion(line, QuestionFactory.getQuestionWithPatterns(line, System.out), QuestionFactory.getQuestion(line));
+            } catch (final NumberFormatException ex) {
+                // prices that do not fit in an int are not supported by the patterns either
+            }
+        }
+    }
+
+    private static void assertSameQuestion(final String line, final Optional<Question> expected, final Optional<Question> actual) {
+        Assert.assertEquals(line, expected.isPresent(), actual.isPresent());
+        if (expected.isPresent()) {
+            Assert.assertEquals(line, expected.get().getQuestionNumber(), actual.get().getQuestionNumber());
+            Assert.assertEquals(line, expected.get().getKey(), actual.get().getKey());
+        }
+    }
+}
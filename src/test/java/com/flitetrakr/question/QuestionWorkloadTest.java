@@ -0,0 +1,50 @@
+package com.flitetrakr.question;
+
+import com.flitetrakr.model.ConnectionGraph;
+import com.flitetrakr.model.GraphGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+public class QuestionWorkloadTest {
+    @Test
+    public void mixTest() throws Exception {
+        final ConnectionGraph graph = new GraphGenerator(100, 3, GraphGenerator.PriceDistribution.UNIFORM, 5).generate();
+        final Map<QuestionWorkload.Type, Integer> mix = new EnumMap<>(QuestionWorkload.Type.class);
+        for (final QuestionWorkload.Type type : QuestionWorkload.Type.values()) {
+            mix.put(type, 1);
+        }
+        final QuestionWorkload workload = new QuestionWorkload(graph, mix, 5);
+        final Map<Class<?>, Integer> types = new HashMap<>();
+        for (int i = 1; i <= 200; i++) {
+            final String line = workload.nextQuestion(i);
+            final Optional<Question> question = QuestionFactory.getQuestion(line);
+            Assert.assertTrue(line, question.isPresent());
+            Assert.assertEquals(i, question.get().getQuestionNumber());
+            types.merge(question.get().getClass(), 1, Integer::sum);
+            // every question has an answer
+            final ByteArrayOutputStream answer = new ByteArrayOutputStream();
+            question.get().printAnswer(graph, new PrintStream(answer, true));
+            Assert.assertFalse(line + " " + answer, answer.toString().contains("No "));
+        }
+        Assert.assertEquals(QuestionWorkload.Type.values().length, types.size());
+        // the same seed gives the same questions
+        Assert.assertEquals(new QuestionWorkload(graph, mix, 5).nextQuestion(1), new QuestionWorkload(graph, mix, 5).nextQuestion(1));
+    }
+
+    @Test
+    public void oneTypeTest() throws Exception {
+        final ConnectionGraph graph = new GraphGenerator(100, 3, GraphGenerator.PriceDistribution.UNIFORM, 5).generate();
+        final QuestionWorkload workload = new QuestionWorkload(graph, Collections.singletonMap(QuestionWorkload.Type.CHEAPEST, 2), 5);
+        for (int i = 1; i <= 20; i++) {
+            Assert.assertTrue(QuestionFactory.getQuestion(workload.nextQuestion(i)).get() instanceof CheapestQuestion);
+        }
+    }
+}